@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.util.Base64;
+
+import com.android.emailcommon.mail.MessagingException;
+import com.android.emailcommon.mail.TransferableBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The in-memory counterpart of {@link BinaryTempFileBody}, used by {@link BodyStore} for parts
+ * too small to be worth a temp file. Unlike the temp file body it can be read any number of
+ * times, until the store that created it is released.
+ */
+public class BinaryMemoryBody implements TransferableBody {
+    private byte[] mData;
+    private final int mLength;
+
+    /**
+     * @param data the decoded content, which is not copied
+     * @param length the number of bytes of <code>data</code> that are used
+     */
+    public BinaryMemoryBody(byte[] data, int length) {
+        mData = data;
+        mLength = length;
+    }
+
+    @Override
+    public InputStream getInputStream() throws MessagingException {
+        return new ByteArrayInputStream(getData(), 0, mLength);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException, MessagingException {
+        // Same output as the Base64OutputStream used by BinaryTempFileBody
+        out.write(Base64.encode(getData(), 0, mLength, Base64.CRLF));
+    }
+
+    @Override
+    public long getSize() {
+        return mLength;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(getData(), 0, mLength).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(getData(), 0, mLength);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        return mLength;
+    }
+
+    /**
+     * Gives up the data, which the store may hand out again.
+     *
+     * @return the data array
+     */
+    byte[] release() {
+        final byte[] data = mData;
+        mData = null;
+        return data;
+    }
+
+    private byte[] getData() {
+        if (mData == null) {
+            throw new IllegalStateException("Body has been released");
+        }
+        return mData;
+    }
+}
@@ -17,8 +17,8 @@
 package com.android.emailcommon.internet;
 
 import com.android.emailcommon.TempDirectory;
-import com.android.emailcommon.mail.Body;
 import com.android.emailcommon.mail.MessagingException;
+import com.android.emailcommon.mail.TransferableBody;
 
 import org.apache.commons.io.IOUtils;
 
@@ -32,15 +32,24 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * A Body that is backed by a temp file. The Body exposes a getOutputStream method that allows
  * the user to write to the temp file. After the write the body is available via getInputStream
  * and writeTo one time. After writeTo is called, or the InputStream returned from
  * getInputStream is closed the file is deleted and the Body should be considered disposed of.
+ * The {@link TransferableBody} methods can be used any number of times before that.
+ * <p>
+ * Bodies created by a {@link BodyStore} are not disposed of by reading them; the store deletes
+ * their files when it is released.
  */
-public class BinaryTempFileBody implements Body {
+public class BinaryTempFileBody implements TransferableBody {
     private File mFile;
+    private boolean mOwnedByStore;
 
     /**
      * An alternate way to put data into a BinaryTempFileBody is to simply supply an already-
@@ -74,7 +83,60 @@ public class BinaryTempFileBody implements Body {
             out, Base64.CRLF | Base64.NO_CLOSE);
         IOUtils.copy(in, base64Out);
         base64Out.close();
-        mFile.delete();
+        if (!mOwnedByStore) {
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Leaves deleting the file to {@link #delete()}.
+     */
+    void setOwnedByStore() {
+        mOwnedByStore = true;
+    }
+
+    void delete() {
+        if (mFile != null) {
+            mFile.delete();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return mFile.length();
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            final FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            file.close();
+        }
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException {
+        final FileInputStream in = new FileInputStream(mFile);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                final long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    // Only happens if the file was truncated underneath us
+                    break;
+                }
+                position += transferred;
+            }
+            return position;
+        } finally {
+            in.close();
+        }
     }
 
     class BinaryTempFileBodyInputStream extends FilterInputStream {
@@ -85,7 +147,9 @@ public class BinaryTempFileBody implements Body {
         @Override
         public void close() throws IOException {
             super.close();
-            mFile.delete();
+            if (!mOwnedByStore) {
+                mFile.delete();
+            }
         }
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.util.Base64DataException;
+
+import com.android.emailcommon.mail.Body;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Decides where the decoded bodies of parsed parts are kept. Parts up to the memory threshold
+ * stay in memory, and anything larger is spilled to a temp file.
+ * <p>
+ * Parts that fit in a single {@link #CHUNK_SIZE} chunk, which is most text parts, are kept in
+ * chunks from a shared pool. The store owns every body it creates: reading a body doesn't
+ * dispose of it, and {@link #release()} returns the chunks to the pool and deletes the temp
+ * files. Nothing parsed with the store may be used after that.
+ */
+public class BodyStore {
+    /** Parts up to this many decoded bytes are kept in memory by default. */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 16 * 1024;
+
+    @VisibleForTesting
+    static final int CHUNK_SIZE = 4 * 1024;
+    /** Chunks kept for reuse. Any more are left to the garbage collector. */
+    private static final int MAX_POOLED_CHUNKS = 16;
+    private static final ArrayDeque<byte[]> sChunkPool = new ArrayDeque<byte[]>();
+
+    /**
+     * Store behind {@link MimeUtility#decodeBody}. Parts are still read into pooled chunks, but
+     * its bodies get their own copy of the bytes, and its temp files are deleted once read, as
+     * they always have been. Its bodies therefore outlive the store, which never needs releasing.
+     */
+    static final BodyStore UNMANAGED = new BodyStore(DEFAULT_MEMORY_THRESHOLD, false);
+
+    private final int mMemoryThreshold;
+    private final boolean mManaged;
+
+    // Guarded by this
+    private ArrayList<BinaryMemoryBody> mPooledBodies = Lists.newArrayList();
+    private ArrayList<BinaryTempFileBody> mTempFileBodies = Lists.newArrayList();
+
+    public BodyStore() {
+        this(DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * @param memoryThreshold the largest decoded size, in bytes, of a part that is kept in memory
+     */
+    public BodyStore(int memoryThreshold) {
+        this(memoryThreshold, true);
+    }
+
+    private BodyStore(int memoryThreshold, boolean managed) {
+        if (memoryThreshold < 0 || memoryThreshold == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid memory threshold " + memoryThreshold);
+        }
+        mMemoryThreshold = memoryThreshold;
+        mManaged = managed;
+    }
+
+    /**
+     * Removes any content transfer encoding from the stream and returns a Body.
+     */
+    public Body decodeBody(InputStream in, String contentTransferEncoding) throws IOException {
+        /*
+         * We'll remove any transfer encoding by wrapping the stream.
+         */
+        in = MimeUtility.getInputStreamForContentTransferEncoding(in, contentTransferEncoding);
+
+        // Reading one byte past the threshold tells whether the part fits in memory
+        final int limit = mMemoryThreshold + 1;
+        final byte[] chunk = obtainChunk();
+        byte[] buffer = chunk;
+        int count = 0;
+        boolean complete = false;
+        try {
+            while (count < limit) {
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, limit));
+                }
+                final int read = in.read(buffer, count, Math.min(buffer.length, limit) - count);
+                if (read == -1) {
+                    complete = true;
+                    break;
+                }
+                count += read;
+            }
+        } catch (Base64DataException bde) {
+            // Keep what could be decoded, as for the parts that go to a temp file
+            complete = true;
+        }
+
+        if (buffer != chunk) {
+            // The part outgrew the chunk, whose contents were copied
+            recycleChunk(chunk);
+        }
+
+        if (complete) {
+            if (buffer != chunk) {
+                return new BinaryMemoryBody(
+                        count == buffer.length ? buffer : Arrays.copyOf(buffer, count), count);
+            }
+            if (!mManaged) {
+                // Copied before the chunk goes back to the pool, where another thread may take it
+                final byte[] data = Arrays.copyOf(chunk, count);
+                recycleChunk(chunk);
+                return new BinaryMemoryBody(data, count);
+            }
+            final BinaryMemoryBody body = new BinaryMemoryBody(chunk, count);
+            synchronized (this) {
+                mPooledBodies.add(body);
+            }
+            return body;
+        }
+
+        final BinaryTempFileBody tempBody = new BinaryTempFileBody();
+        OutputStream out = null;
+        try {
+            out = tempBody.getOutputStream();
+            if (mManaged) {
+                tempBody.setOwnedByStore();
+                synchronized (this) {
+                    mTempFileBodies.add(tempBody);
+                }
+            }
+            out.write(buffer, 0, count);
+            IOUtils.copy(in, out);
+        } catch (Base64DataException bde) {
+            // TODO Need to fix this somehow
+            //String warning = "\n\n" + Email.getMessageDecodeErrorString();
+            //out.write(warning.getBytes());
+        } finally {
+            if (buffer == chunk) {
+                recycleChunk(chunk);
+            }
+            if (out != null) {
+                out.close();
+            }
+        }
+        return tempBody;
+    }
+
+    /**
+     * Disposes of every body created by this store.
+     */
+    public void release() {
+        final ArrayList<BinaryMemoryBody> pooledBodies;
+        final ArrayList<BinaryTempFileBody> tempFileBodies;
+        synchronized (this) {
+            pooledBodies = mPooledBodies;
+            tempFileBodies = mTempFileBodies;
+            mPooledBodies = Lists.newArrayList();
+            mTempFileBodies = Lists.newArrayList();
+        }
+        for (BinaryMemoryBody body : pooledBodies) {
+            recycleChunk(body.release());
+        }
+        for (BinaryTempFileBody body : tempFileBodies) {
+            body.delete();
+        }
+    }
+
+    private static byte[] obtainChunk() {
+        synchronized (sChunkPool) {
+            final byte[] chunk = sChunkPool.pollFirst();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return new byte[CHUNK_SIZE];
+    }
+
+    private static void recycleChunk(byte[] chunk) {
+        if (chunk == null) {
+            return;
+        }
+        synchronized (sChunkPool) {
+            if (sChunkPool.size() < MAX_POOLED_CHUNKS) {
+                sChunkPool.addFirst(chunk);
+            }
+        }
+    }
+}
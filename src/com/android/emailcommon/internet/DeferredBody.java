@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.MessagingException;
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.EOLConvertingInputStream;
+
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The body of a part of a message parsed for its structure only, see
+ * {@link MimeMessage#MimeMessage(Source, int)}. The body only knows where its content is in the
+ * message, and decodes it from a new stream over the message each time it is read.
+ * <p>
+ * Offsets are in the message with its line endings converted to CRLF, the way it is parsed, so
+ * reading a body has to read the message up to it. Nothing is decoded or written out on the way.
+ */
+public class DeferredBody implements Body {
+    /**
+     * Where the message comes from.
+     */
+    public interface Source {
+        /**
+         * Opens a new stream over the whole message, which the caller closes.
+         */
+        InputStream open() throws IOException;
+    }
+
+    private final Source mSource;
+    private final long mOffset;
+    private final long mLength;
+    private final String mContentTransferEncoding;
+    private final byte[] mPreview;
+
+    /**
+     * @param source the message the body is in
+     * @param offset the offset of the body in the message
+     * @param length the length of the body, still transfer encoded
+     * @param contentTransferEncoding the transfer encoding of the body
+     * @param preview the first bytes of the body, still transfer encoded
+     */
+    public DeferredBody(Source source, long offset, long length, String contentTransferEncoding,
+            byte[] preview) {
+        mSource = source;
+        mOffset = offset;
+        mLength = length;
+        mContentTransferEncoding = contentTransferEncoding;
+        mPreview = preview;
+    }
+
+    public long getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Returns the length of the body as it is in the message, before it is decoded.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * Returns the decoded first bytes of the body, as many as were kept when the message was
+     * parsed. Decoding stops at the first error, which may come from cutting the body short.
+     */
+    public byte[] getPreview() {
+        final InputStream in = MimeUtility.getInputStreamForContentTransferEncoding(
+                new ByteArrayInputStream(mPreview), mContentTransferEncoding);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(mPreview.length);
+        final byte[] buffer = new byte[256];
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException ioe) {
+            // Keep what could be decoded
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Opens the body as it is in the message, before it is decoded.
+     */
+    public InputStream getRawInputStream() throws IOException {
+        final InputStream in = new EOLConvertingInputStream(mSource.open());
+        boolean success = false;
+        try {
+            ByteStreams.skipFully(in, mOffset);
+            success = true;
+        } finally {
+            if (!success) {
+                in.close();
+            }
+        }
+        return ByteStreams.limit(in, mLength);
+    }
+
+    @Override
+    public InputStream getInputStream() throws MessagingException {
+        try {
+            return MimeUtility.getInputStreamForContentTransferEncoding(getRawInputStream(),
+                    mContentTransferEncoding);
+        } catch (IOException ioe) {
+            throw new MessagingException("Unable to open body", ioe);
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException, MessagingException {
+        // Same output as BinaryTempFileBody
+        final InputStream in = getInputStream();
+        try {
+            final Base64OutputStream base64Out = new Base64OutputStream(
+                    out, Base64.CRLF | Base64.NO_CLOSE);
+            IOUtils.copy(in, base64Out);
+            base64Out.close();
+        } finally {
+            in.close();
+        }
+    }
+}
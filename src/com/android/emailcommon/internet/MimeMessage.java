@@ -25,12 +25,13 @@ import com.android.emailcommon.mail.Multipart;
 import com.android.emailcommon.mail.Part;
 import com.android.mail.utils.LogUtils;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.BodyDescriptor;
 import org.apache.james.mime4j.ContentHandler;
 import org.apache.james.mime4j.EOLConvertingInputStream;
 import org.apache.james.mime4j.MimeStreamParser;
 import org.apache.james.mime4j.field.DateTimeField;
-import org.apache.james.mime4j.field.Field;
+import org.apache.james.mime4j.field.datetime.parser.ParseException;
 
 import android.text.TextUtils;
 
@@ -69,6 +70,10 @@ public class MimeMessage extends Message {
     protected int mSize;
     private boolean mInhibitLocalMessageId = false;
     private boolean mComplete = true;
+    /** Where parsed bodies are kept, or null to use {@link MimeUtility#decodeBody}. */
+    private BodyStore mBodyStore;
+    /** Where the message was parsed from, when only its structure was parsed. */
+    private DeferredBody.Source mSource;
 
     // Shared random source for generating local message-id values
     private static final java.util.Random sRandom = new java.util.Random();
@@ -121,6 +126,46 @@ public class MimeMessage extends Message {
         parse(in);
     }
 
+    /**
+     * Parse the given InputStream using Apache Mime4J to build a MimeMessage, keeping the bodies
+     * of its parts in the given store. The message can only be used until the store is released.
+     *
+     * @param in InputStream providing message content
+     * @param bodyStore the store for the decoded bodies, which the caller must release
+     * @throws IOException
+     * @throws MessagingException
+     */
+    public MimeMessage(InputStream in, BodyStore bodyStore)
+            throws IOException, MessagingException {
+        mBodyStore = bodyStore;
+        parse(in);
+    }
+
+    /**
+     * Parse only the headers and the structure of the message from the given source. Bodies are
+     * skipped and become {@link DeferredBody DeferredBodies}, which keep the first bytes of the
+     * body and read the rest from the source when needed.
+     *
+     * @param source the message, which must give the same content every time it is opened
+     * @param previewSize how many bytes of each body to keep
+     * @throws IOException
+     * @throws MessagingException
+     */
+    public MimeMessage(DeferredBody.Source source, int previewSize)
+            throws IOException, MessagingException {
+        mSource = source;
+        final MimeStreamParser parser = init();
+        parser.setStructureOnly(true);
+        parser.setPreviewSize(previewSize);
+        final InputStream in = source.open();
+        try {
+            parser.parse(new EOLConvertingInputStream(in));
+        } finally {
+            in.close();
+        }
+        mComplete = !parser.getPrematureEof();
+    }
+
     private MimeStreamParser init() {
         // Before parsing the input stream, clear all local fields that may be superceded by
         // the new incoming message.
@@ -171,31 +216,33 @@ public class MimeMessage extends Message {
     @Override
     public Date getSentDate() throws MessagingException {
         if (mSentDate == null) {
-            try {
-                DateTimeField field = (DateTimeField)Field.parse("Date: "
-                        + MimeUtility.unfoldAndDecode(getFirstHeader("Date")));
-                mSentDate = field.getDate();
-                // TODO: We should make it more clear what exceptions can be thrown here,
-                // and whether they reflect a normal or error condition.
-            } catch (Exception e) {
-                LogUtils.v(LogUtils.TAG, "Message missing Date header");
-            }
+            mSentDate = parseDateHeader("Date");
         }
         if (mSentDate == null) {
             // If we still don't have a date, fall back to "Delivery-date"
-            try {
-                DateTimeField field = (DateTimeField)Field.parse("Date: "
-                        + MimeUtility.unfoldAndDecode(getFirstHeader("Delivery-date")));
-                mSentDate = field.getDate();
-                // TODO: We should make it more clear what exceptions can be thrown here,
-                // and whether they reflect a normal or error condition.
-            } catch (Exception e) {
-                LogUtils.v(LogUtils.TAG, "Message also missing Delivery-Date header");
-            }
+            mSentDate = parseDateHeader("Delivery-date");
         }
         return mSentDate;
     }
 
+    /**
+     * Returns the date in the first header with the given name, or null if there is no such
+     * header or it can't be parsed.
+     */
+    private Date parseDateHeader(String name) throws MessagingException {
+        final String value = getFirstHeader(name);
+        if (value == null) {
+            LogUtils.v(LogUtils.TAG, "Message missing %s header", name);
+            return null;
+        }
+        try {
+            return DateTimeField.parseDate(MimeUtility.unfoldAndDecode(value));
+        } catch (ParseException e) {
+            LogUtils.v(LogUtils.TAG, "Message has invalid %s header", name);
+            return null;
+        }
+    }
+
     @Override
     public void setSentDate(Date sentDate) throws MessagingException {
         setHeader("Date", DATE_FORMAT.format(sentDate));
@@ -519,11 +566,7 @@ public class MimeMessage extends Message {
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
         final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
-        // Force creation of local message-id
-        getMessageId();
-        getMimeHeaders().writeTo(out);
-        // mExtendedHeader will not be write out to external output stream,
-        // because it is intended to internal use.
+        writeHeaderTo(out);
         writer.write("\r\n");
         writer.flush();
         if (mBody != null) {
@@ -531,9 +574,23 @@ public class MimeMessage extends Message {
         }
     }
 
+    /**
+     * Write the message header, without the blank line that ends it.
+     */
+    void writeHeaderTo(OutputStream out) throws IOException, MessagingException {
+        // Force creation of local message-id
+        getMessageId();
+        getMimeHeaders().writeTo(out);
+        // mExtendedHeader will not be write out to external output stream,
+        // because it is intended to internal use.
+    }
+
+    /**
+     * Returns the message in the form {@link #writeTo} writes it, generated as it is read.
+     */
     @Override
     public InputStream getInputStream() throws MessagingException {
-        return null;
+        return new MimePartInputStream(this);
     }
 
     class MimeMessageBuilder implements ContentHandler {
@@ -609,7 +666,15 @@ public class MimeMessage extends Message {
         @Override
         public void body(BodyDescriptor bd, InputStream in) throws IOException {
             expect(Part.class);
-            final Body body = MimeUtility.decodeBody(in, bd.getTransferEncoding());
+            final Body body;
+            if (mSource != null && bd.getBodyLength() >= 0) {
+                body = new DeferredBody(mSource, bd.getBodyOffset(), bd.getBodyLength(),
+                        bd.getTransferEncoding(), IOUtils.toByteArray(in));
+            } else {
+                body = mBodyStore != null
+                        ? mBodyStore.decodeBody(in, bd.getTransferEncoding())
+                        : MimeUtility.decodeBody(in, bd.getTransferEncoding());
+            }
             try {
                 ((Part)stack.peek()).setBody(body);
             } catch (MessagingException me) {
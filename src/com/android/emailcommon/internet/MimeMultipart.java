@@ -102,9 +102,12 @@ public class MimeMultipart extends Multipart {
         writer.flush();
     }
 
+    /**
+     * Returns the multipart in the form {@link #writeTo} writes it, generated as it is read.
+     */
     @Override
     public InputStream getInputStream() throws MessagingException {
-        return null;
+        return new MimePartInputStream(this);
     }
 
     public String getSubTypeForTest() {
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.util.Base64;
+
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.MessagingException;
+import com.android.emailcommon.mail.Part;
+import com.android.emailcommon.mail.TransferableBody;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Reads a message, body part or multipart in the form its <code>writeTo()</code> writes it. The
+ * output is generated as it is read, one header block or a few KB of encoded body at a time, so
+ * sending a message with large attachments never holds the whole message, or a whole attachment,
+ * in memory. Bodies are Base64 encoded straight from their own streams.
+ * <p>
+ * Parts and bodies of types this class doesn't know are written out with their
+ * <code>writeTo()</code> into memory when they are reached.
+ */
+public class MimePartInputStream extends InputStream {
+    /** Bytes read from a body at a time, a whole number of 76 character Base64 lines. */
+    private static final int ENCODE_CHUNK_SIZE = 57 * 64;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * What is left to generate, next first: byte arrays, parts, bodies and the streams of bodies
+     * being encoded.
+     */
+    private final ArrayDeque<Object> mPending = new ArrayDeque<Object>();
+    private byte[] mBuffer = EMPTY;
+    private int mBufferPos;
+    private int mBufferEnd;
+    private byte[] mChunk;
+    private boolean mClosed;
+
+    public MimePartInputStream(MimeMessage message) {
+        mPending.push(message);
+    }
+
+    public MimePartInputStream(MimeBodyPart part) {
+        mPending.push(part);
+    }
+
+    public MimePartInputStream(MimeMultipart multipart) {
+        mPending.push(multipart);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (mBufferPos == mBufferEnd && !fill()) {
+            return -1;
+        }
+        return mBuffer[mBufferPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            if (mBufferPos == mBufferEnd && !fill()) {
+                break;
+            }
+            final int n = Math.min(len - count, mBufferEnd - mBufferPos);
+            System.arraycopy(mBuffer, mBufferPos, b, off + count, n);
+            mBufferPos += n;
+            count += n;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public int available() {
+        return mBufferEnd - mBufferPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        mBuffer = EMPTY;
+        mBufferPos = mBufferEnd = 0;
+        IOException exception = null;
+        while (!mPending.isEmpty()) {
+            final Object next = mPending.pop();
+            if (next instanceof InputStream) {
+                try {
+                    ((InputStream) next).close();
+                } catch (IOException ioe) {
+                    exception = ioe;
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Generates the next bytes into the buffer.
+     *
+     * @return false at the end of the output
+     */
+    private boolean fill() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        try {
+            while (!mPending.isEmpty()) {
+                final Object next = mPending.pop();
+                if (next instanceof byte[]) {
+                    final byte[] bytes = (byte[]) next;
+                    if (bytes.length > 0) {
+                        setBuffer(bytes, bytes.length);
+                        return true;
+                    }
+                } else if (next instanceof InputStream) {
+                    if (encodeChunk((InputStream) next)) {
+                        return true;
+                    }
+                } else if (next instanceof MimeMessage) {
+                    final MimeMessage message = (MimeMessage) next;
+                    final ByteArrayOutputStream header = new ByteArrayOutputStream(1024);
+                    message.writeHeaderTo(header);
+                    header.write(CRLF);
+                    pushBody(message.getBody());
+                    setBuffer(header.toByteArray(), header.size());
+                    return true;
+                } else if (next instanceof MimeBodyPart) {
+                    final MimeBodyPart part = (MimeBodyPart) next;
+                    final ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+                    part.mHeader.writeTo(header);
+                    header.write(CRLF);
+                    pushBody(part.getBody());
+                    setBuffer(header.toByteArray(), header.size());
+                    return true;
+                } else if (next instanceof MimeMultipart) {
+                    pushMultipart((MimeMultipart) next);
+                } else if (next instanceof TextBody) {
+                    mPending.push(new ByteArrayInputStream(
+                            ((TextBody) next).getText().getBytes("UTF-8")));
+                } else if (next instanceof TransferableBody || next instanceof DeferredBody) {
+                    mPending.push(((Body) next).getInputStream());
+                } else {
+                    // Only the part or body knows how to write itself
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    if (next instanceof Part) {
+                        ((Part) next).writeTo(out);
+                    } else {
+                        ((Body) next).writeTo(out);
+                    }
+                    if (out.size() > 0) {
+                        setBuffer(out.toByteArray(), out.size());
+                        return true;
+                    }
+                }
+            }
+        } catch (MessagingException me) {
+            throw new IOException(me);
+        }
+        return false;
+    }
+
+    private void pushBody(Body body) {
+        if (body != null) {
+            mPending.push(body);
+        }
+    }
+
+    /**
+     * Queues the multipart's boundaries and parts, in the same order as
+     * {@link MimeMultipart#writeTo}.
+     */
+    private void pushMultipart(MimeMultipart multipart) throws IOException, MessagingException {
+        final String boundary = multipart.mBoundary;
+        mPending.push(("--" + boundary + "--\r\n").getBytes("UTF-8"));
+        final byte[] delimiter = ("--" + boundary + "\r\n").getBytes("UTF-8");
+        for (int i = multipart.getCount() - 1; i >= 0; i--) {
+            mPending.push(CRLF);
+            mPending.push(multipart.getBodyPart(i));
+            mPending.push(delimiter);
+        }
+        if (multipart.mPreamble != null) {
+            mPending.push((multipart.mPreamble + "\r\n").getBytes("UTF-8"));
+        }
+    }
+
+    /**
+     * Encodes the next chunk of the body stream into the buffer, and leaves the stream queued if
+     * there may be more. Chunks are a whole number of lines, so they encode to the same output as
+     * the whole body at once.
+     *
+     * @return false if the stream had nothing left
+     */
+    private boolean encodeChunk(InputStream in) throws IOException {
+        if (mChunk == null) {
+            mChunk = new byte[ENCODE_CHUNK_SIZE];
+        }
+        final int count;
+        try {
+            count = ByteStreams.read(in, mChunk, 0, mChunk.length);
+        } catch (IOException ioe) {
+            in.close();
+            throw ioe;
+        }
+        if (count == mChunk.length) {
+            mPending.push(in);
+        } else {
+            in.close();
+        }
+        if (count == 0) {
+            return false;
+        }
+        final byte[] encoded = Base64.encode(mChunk, 0, count, Base64.CRLF);
+        setBuffer(encoded, encoded.length);
+        return true;
+    }
+
+    private void setBuffer(byte[] buffer, int end) {
+        mBuffer = buffer;
+        mBufferPos = 0;
+        mBufferEnd = end;
+    }
+}
@@ -18,7 +18,6 @@ package com.android.emailcommon.internet;
 
 import android.text.TextUtils;
 import android.util.Base64;
-import android.util.Base64DataException;
 import android.util.Base64InputStream;
 import android.util.Log;
 
@@ -28,6 +27,7 @@ import com.android.emailcommon.mail.Message;
 import com.android.emailcommon.mail.MessagingException;
 import com.android.emailcommon.mail.Multipart;
 import com.android.emailcommon.mail.Part;
+import com.android.emailcommon.mail.TransferableBody;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.codec.EncoderUtil;
@@ -38,7 +38,8 @@ import org.apache.james.mime4j.util.CharsetUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -215,6 +216,15 @@ public class MimeUtility {
         return null;
     }
 
+    /**
+     * Lets the buffered text be decoded with a {@link Charset} without copying it first.
+     */
+    private static class DecodableByteArrayOutputStream extends ByteArrayOutputStream {
+        public String toString(Charset charset) {
+            return new String(buf, 0, count, charset);
+        }
+    }
+
     /**
      * Reads the Part's body and returns a String based on any charset conversion that needed
      * to be done.
@@ -226,39 +236,50 @@ public class MimeUtility {
      */
     public static String getTextFromPart(Part part, ArrayList<InputStream> outInputStreams) {
         InputStream in = null;
-        ByteArrayOutputStream out = null;
+        DecodableByteArrayOutputStream out = null;
         try {
             if (part != null && part.getBody() != null) {
-                in = part.getBody().getInputStream();
+                final Body body = part.getBody();
+                in = body.getInputStream();
                 String mimeType = part.getMimeType();
                 if (mimeType != null && MimeUtility.mimeTypeMatches(mimeType, "text/*")) {
                     /*
                      * Now we read the part into a buffer for further processing. Because
                      * the stream is now wrapped we'll remove any transfer encoding at this point.
+                     * A body that is already decoded is used where it is, in memory or mapped
+                     * from its temp file.
                      */
-                    out = new ByteArrayOutputStream();
-                    IOUtils.copy(in, out);
+                    ByteBuffer bytes = null;
+                    if (body instanceof TransferableBody) {
+                        bytes = ((TransferableBody) body).getByteBuffer();
+                    } else {
+                        out = new DecodableByteArrayOutputStream();
+                        IOUtils.copy(in, out);
+                    }
 
                     /*
                      * We've got a text part, so let's see if it needs to be processed further.
                      */
-                    String charset = getHeaderParameter(part.getContentType(), "charset");
-                    if (charset != null) {
+                    final String mimeCharset = getHeaderParameter(part.getContentType(), "charset");
+                    Charset charset = null;
+                    if (mimeCharset != null) {
                         /*
                          * See if there is conversion from the MIME charset to the Java one.
                          */
-                        charset = CharsetUtil.toJavaCharset(charset);
+                        charset = CharsetUtil.lookupCharset(mimeCharset);
                     }
                     /*
-                     * No encoding, so use us-ascii, which is the standard.
+                     * No encoding, or one we can't decode, so use us-ascii, which is the
+                     * standard.
                      */
                     if (charset == null) {
-                        charset = "ASCII";
+                        charset = CharsetUtil.US_ASCII;
                     }
                     /*
                      * Convert and return as new String
                      */
-                    return out.toString(charset);
+                    return bytes != null ? charset.decode(bytes).toString()
+                            : out.toString(charset);
                 }
             }
 
@@ -346,22 +367,7 @@ public class MimeUtility {
      */
     public static Body decodeBody(InputStream in, String contentTransferEncoding)
             throws IOException {
-        /*
-         * We'll remove any transfer encoding by wrapping the stream.
-         */
-        in = getInputStreamForContentTransferEncoding(in, contentTransferEncoding);
-        BinaryTempFileBody tempBody = new BinaryTempFileBody();
-        OutputStream out = tempBody.getOutputStream();
-        try {
-            IOUtils.copy(in, out);
-        } catch (Base64DataException bde) {
-            // TODO Need to fix this somehow
-            //String warning = "\n\n" + Email.getMessageDecodeErrorString();
-            //out.write(warning.getBytes());
-        } finally {
-            out.close();
-        }
-        return tempBody;
+        return BodyStore.UNMANAGED.decodeBody(in, contentTransferEncoding);
     }
 
     /**
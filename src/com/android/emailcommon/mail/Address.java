@@ -28,6 +28,7 @@ import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.james.mime4j.codec.EncoderUtil;
 import org.apache.james.mime4j.decoder.DecoderUtil;
+import org.apache.james.mime4j.field.address.AddressListScanner;
 
 import java.util.ArrayList;
 import java.util.regex.Pattern;
@@ -153,7 +154,10 @@ public class Address implements Parcelable {
     }
 
     public void setAddress(String address) {
-        mAddress = REMOVE_OPTIONAL_BRACKET.matcher(address).replaceAll("$1");
+        if (address.indexOf('<') >= 0 || address.indexOf('>') >= 0) {
+            address = REMOVE_OPTIONAL_BRACKET.matcher(address).replaceAll("$1");
+        }
+        mAddress = address;
     }
 
     /**
@@ -183,8 +187,11 @@ public class Address implements Parcelable {
      */
     public static String decodeAddressPersonal(String personal) {
         if (personal != null) {
-            personal = REMOVE_OPTIONAL_DQUOTE.matcher(personal).replaceAll("$1");
-            personal = UNQUOTE.matcher(personal).replaceAll("$1");
+            // Both patterns leave strings without quotes or backslashes unchanged
+            if (personal.indexOf('"') >= 0 || personal.indexOf('\\') >= 0) {
+                personal = REMOVE_OPTIONAL_DQUOTE.matcher(personal).replaceAll("$1");
+                personal = UNQUOTE.matcher(personal).replaceAll("$1");
+            }
             personal = DecoderUtil.decodeEncodedWords(personal);
             if (personal.length() == 0) {
                 personal = null;
@@ -225,6 +232,10 @@ public class Address implements Parcelable {
         if (addressList == null || addressList.length() == 0) {
             return EMPTY_ADDRESS_ARRAY;
         }
+        final AddressListScanner scanner = AddressListScanner.scan(addressList);
+        if (scanner != null) {
+            return parse(scanner);
+        }
         Rfc822Token[] tokens = Rfc822Tokenizer.tokenize(addressList);
         ArrayList<Address> addresses = new ArrayList<Address>();
         for (int i = 0, length = tokens.length; i < length; ++i) {
@@ -243,6 +254,62 @@ public class Address implements Parcelable {
         return addresses.toArray(new Address[addresses.size()]);
     }
 
+    /**
+     * Builds the same addresses as the {@link Rfc822Tokenizer} path for a list accepted by
+     * {@link AddressListScanner}.
+     */
+    private static Address[] parse(AddressListScanner scanner) {
+        final ArrayList<Address> addresses = new ArrayList<Address>(scanner.size());
+        for (int i = 0, length = scanner.size(); i < length; ++i) {
+            final String domain = scanner.getDomain(i);
+            if (!isValidSimpleDomain(domain)) {
+                continue;
+            }
+            String name = scanner.getName(i);
+            if (name != null && !scanner.isQuotedName(i)) {
+                // Rfc822Tokenizer collapses the spaces between words
+                name = collapseSpaces(name);
+            }
+            if (TextUtils.isEmpty(name)) {
+                name = null;
+            }
+            addresses.add(new Address(scanner.getAddress(i), name));
+        }
+        return addresses.toArray(new Address[addresses.size()]);
+    }
+
+    /**
+     * Same check as {@link #EMAIL_ADDRESS} for the domain of a scanned address, which is already
+     * known to be dot-separated non-empty ASCII parts.
+     */
+    private static boolean isValidSimpleDomain(String domain) {
+        boolean hasDot = false;
+        for (int i = 0, length = domain.length(); i < length; i++) {
+            final char c = domain.charAt(i);
+            if (c == '.') {
+                hasDot = true;
+            } else if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return hasDot;
+    }
+
+    private static String collapseSpaces(String s) {
+        if (s.indexOf("  ") < 0) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0, length = s.length(); i < length; i++) {
+            final char c = s.charAt(i);
+            if (c != ' ' || s.charAt(i - 1) != ' ') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Checks whether a string email address is valid.
      * E.g. name@domain.com is valid.
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.mail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link Body} whose decoded content is already complete, in memory or in a file, and can be
+ * handed over without copying it through {@link #getInputStream()}.
+ * <p>
+ * Neither method consumes the body: a body that is disposed of when its input stream is closed
+ * must still be disposed of that way.
+ */
+public interface TransferableBody extends Body {
+    /**
+     * Returns the size of the decoded content in bytes.
+     */
+    public long getSize();
+
+    /**
+     * Returns a read-only buffer over the decoded content. For a file this is a mapping of the
+     * file, so the content isn't read into the Java heap.
+     */
+    public ByteBuffer getByteBuffer() throws IOException;
+
+    /**
+     * Writes the decoded content to the channel. Writing to a {@link java.nio.channels.FileChannel}
+     * from a file lets the kernel copy the data.
+     *
+     * @return the number of bytes written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException;
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.provider.ContactsContract.Contacts;
+
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * What {@link SenderInfoLoader} has learned from the contacts provider about each sender: which
+ * contact and photo the email address maps to, that the contact has no photo, or that it maps to
+ * no contact at all, which is the case for most newsletters. The photos are kept too, so that a
+ * sender looked up before, even in an earlier run of the app, doesn't need a query.
+ * <p>
+ * Entries expire after {@link #TTL_MILLIS}, and all of them are dropped shortly after the
+ * contacts change. Everything is kept in a directory in the cache directory, which is deleted as
+ * soon as the app is found to have lost {@link Manifest.permission#READ_CONTACTS}. All methods
+ * may read or write it, so must be called on a background thread; the files are never accessed
+ * while holding the lock that guards the entries.
+ */
+class SenderInfoCache {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /** Email maps to no contact. */
+    static final long NO_CONTACT = -1;
+    /** The contact has no photo. */
+    static final long NO_PHOTO = -1;
+
+    /** Covers the contacts changing while the app isn't running to observe them. */
+    private static final long TTL_MILLIS = 24 * 3600 * 1000;
+
+    /**
+     * How long to wait for the contacts to stop changing before dropping the entries, so that a
+     * sync, or the contact update that follows each sent message, drops them only once.
+     */
+    private static final long CLEAR_DELAY_MS = 5000;
+
+    private static final String DIRECTORY = "sender_info";
+    private static final String INDEX_FILE = "index";
+    private static final String PHOTO_SUFFIX = ".photo";
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * A sender looked up in the contacts provider.
+     */
+    static class Entry {
+        final long contactId;
+        final long photoId;
+        /** Names the file of the photo, or null if there is none. */
+        final String photoHash;
+        final long time;
+
+        private Entry(long contactId, long photoId, String photoHash, long time) {
+            this.contactId = contactId;
+            this.photoId = photoId;
+            this.photoHash = photoHash;
+            this.time = time;
+        }
+    }
+
+    private static SenderInfoCache sInstance;
+
+    private final File mDirectory;
+    private final long mClearDelayMs;
+    private final Handler mHandler;
+    private final ContentObserver mObserver;
+    private ContentResolver mResolver;
+
+    /** Serializes reading and writing the files. */
+    private final Object mFileLock = new Object();
+
+    // Guarded by this
+    private HashMap<String, Entry> mEntries;
+    private boolean mDirty;
+    private int mGeneration;
+    private boolean mClosed;
+
+    private final Runnable mClearRunnable = new Runnable() {
+        @Override
+        public void run() {
+            clear();
+        }
+    };
+
+    /**
+     * Returns the cache, or null if the app may not read the contacts, in which case whatever was
+     * cached before is deleted.
+     */
+    static synchronized SenderInfoCache getInstance(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (!canReadContacts(appContext)) {
+            if (sInstance != null) {
+                sInstance.close();
+                sInstance = null;
+            }
+            deleteFiles(new File(appContext.getCacheDir(), DIRECTORY));
+            return null;
+        }
+        if (sInstance == null) {
+            sInstance = new SenderInfoCache(new File(appContext.getCacheDir(), DIRECTORY),
+                    CLEAR_DELAY_MS);
+            sInstance.observe(appContext.getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private static boolean canReadContacts(Context context) {
+        return context.checkPermission(Manifest.permission.READ_CONTACTS, Process.myPid(),
+                Process.myUid()) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @VisibleForTesting
+    SenderInfoCache(File directory, long clearDelayMs) {
+        mDirectory = directory;
+        mClearDelayMs = clearDelayMs;
+        final HandlerThread thread = new HandlerThread("SenderInfoCache",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onContactsChanged();
+            }
+        };
+    }
+
+    private void observe(ContentResolver resolver) {
+        mResolver = resolver;
+        resolver.registerContentObserver(Contacts.CONTENT_URI, true, mObserver);
+    }
+
+    /**
+     * Keeps what is being looked up now from being cached, and drops all the entries once the
+     * contacts have stopped changing for {@link #CLEAR_DELAY_MS}.
+     */
+    @VisibleForTesting
+    void onContactsChanged() {
+        synchronized (this) {
+            mGeneration++;
+        }
+        mHandler.removeCallbacks(mClearRunnable);
+        mHandler.postDelayed(mClearRunnable, mClearDelayMs);
+    }
+
+    /**
+     * Returns the generation of the entries, which changes whenever the contacts do. Pass it to
+     * {@link #put} so that what was looked up before the contacts changed isn't cached.
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns the entry of the email, or null if it hasn't been looked up or has expired.
+     */
+    Entry get(String email) {
+        ensureLoaded();
+        synchronized (this) {
+            final Entry entry = mEntries.get(email);
+            if (entry == null) {
+                return null;
+            }
+            final long age = System.currentTimeMillis() - entry.time;
+            if (age < 0 || age > TTL_MILLIS) {
+                mEntries.remove(email);
+                mDirty = true;
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Returns the photo of the entry, or null if it can't be read.
+     */
+    byte[] getPhoto(Entry entry) {
+        try {
+            return Files.toByteArray(new File(mDirectory, entry.photoHash + PHOTO_SUFFIX));
+        } catch (IOException e) {
+            LogUtils.d(LOG_TAG, "Unable to read cached sender photo %s", entry.photoHash);
+            return null;
+        }
+    }
+
+    /**
+     * Records what the email was found to map to.
+     *
+     * @param contactId the contact, or {@link #NO_CONTACT}
+     * @param photoId the contact's photo, or {@link #NO_PHOTO}
+     * @param photo the bytes of the photo, or null if there is none
+     */
+    void put(int generation, String email, long contactId, long photoId, byte[] photo) {
+        if (!isCurrent(generation)) {
+            return;
+        }
+        String photoHash = null;
+        if (photo != null) {
+            photoHash = Hashing.sha1().hashBytes(photo).toString();
+            final File file = new File(mDirectory, photoHash + PHOTO_SUFFIX);
+            if (!file.exists()) {
+                try {
+                    mDirectory.mkdirs();
+                    Files.write(photo, file);
+                } catch (IOException e) {
+                    LogUtils.w(LOG_TAG, e, "Unable to cache sender photo");
+                    file.delete();
+                    return;
+                }
+            }
+        }
+        ensureLoaded();
+        synchronized (this) {
+            if (mClosed || generation != mGeneration) {
+                return;
+            }
+            mEntries.put(email, new Entry(contactId, photoId, photoHash,
+                    System.currentTimeMillis()));
+            mDirty = true;
+        }
+    }
+
+    private synchronized boolean isCurrent(int generation) {
+        return !mClosed && generation == mGeneration;
+    }
+
+    /**
+     * Writes the entries out, if they have changed, and deletes the photos no entry refers to.
+     */
+    void save() {
+        synchronized (mFileLock) {
+            final HashMap<String, Entry> entries;
+            synchronized (this) {
+                if (!mDirty || mClosed) {
+                    return;
+                }
+                mDirty = false;
+                entries = Maps.newHashMap(mEntries);
+            }
+            write(entries);
+        }
+    }
+
+    /**
+     * Drops all the entries, e.g. because the contacts have changed.
+     */
+    @VisibleForTesting
+    void clear() {
+        synchronized (this) {
+            LogUtils.d(LOG_TAG, "Contacts changed, dropping %d cached senders",
+                    mEntries != null ? mEntries.size() : 0);
+            mEntries = Maps.newHashMap();
+            mGeneration++;
+            mDirty = true;
+        }
+        save();
+    }
+
+    /**
+     * Stops caching and deletes everything cached, e.g. because the contacts may no longer be
+     * read.
+     */
+    private void close() {
+        synchronized (this) {
+            mEntries = Maps.newHashMap();
+            mGeneration++;
+            mClosed = true;
+        }
+        if (mResolver != null) {
+            mResolver.unregisterContentObserver(mObserver);
+        }
+        mHandler.removeCallbacks(mClearRunnable);
+        mHandler.getLooper().quit();
+        synchronized (mFileLock) {
+            deleteFiles(mDirectory);
+        }
+    }
+
+    private void ensureLoaded() {
+        synchronized (this) {
+            if (mEntries != null) {
+                return;
+            }
+        }
+        final HashMap<String, Entry> entries;
+        synchronized (mFileLock) {
+            entries = load();
+        }
+        synchronized (this) {
+            // Unless they were dropped in the meantime
+            if (mEntries == null) {
+                mEntries = entries;
+            }
+        }
+    }
+
+    // Requires mFileLock
+    private void write(HashMap<String, Entry> entries) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        final File index = new File(mDirectory, INDEX_FILE);
+        final File temp = new File(mDirectory, INDEX_FILE + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                final Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.contactId);
+                out.writeLong(entry.photoId);
+                out.writeUTF(entry.photoHash != null ? entry.photoHash : "");
+                out.writeLong(entry.time);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(index)) {
+                throw new IOException("Unable to replace " + index);
+            }
+        } catch (IOException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to save sender info");
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+
+        final HashSet<String> photos = Sets.newHashSet();
+        for (Entry entry : entries.values()) {
+            if (entry.photoHash != null) {
+                photos.add(entry.photoHash + PHOTO_SUFFIX);
+            }
+        }
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(PHOTO_SUFFIX) && !photos.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    // Requires mFileLock
+    private HashMap<String, Entry> load() {
+        final HashMap<String, Entry> entries = Maps.newHashMap();
+        final File index = new File(mDirectory, INDEX_FILE);
+        if (!index.exists()) {
+            return entries;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            if (in.readInt() != INDEX_VERSION) {
+                return entries;
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                final String email = in.readUTF();
+                final long contactId = in.readLong();
+                final long photoId = in.readLong();
+                final String photoHash = in.readUTF();
+                final long time = in.readLong();
+                entries.put(email, new Entry(contactId, photoId,
+                        photoHash.isEmpty() ? null : photoHash, time));
+            }
+        } catch (IOException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to load sender info");
+            entries.clear();
+        } finally {
+            closeQuietly(in);
+        }
+        return entries;
+    }
+
+    private static void deleteFiles(File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LogUtils.e(LOG_TAG, e, "Failed to close sender info");
+            }
+        }
+    }
+}
@@ -34,12 +34,16 @@ import android.provider.ContactsContract.Data;
 import android.util.Pair;
 
 import com.android.bitmap.util.Trace;
+import com.android.mail.utils.LongObjectHashMap;
 import com.android.mail.utils.Utils;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -92,13 +96,13 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
             return null;
         }
 
-        return loadContactPhotos(
-                getContext().getContentResolver(), mSenders, true /* decodeBitmaps */);
+        return loadContactPhotos(getContext(), mSenders, true /* decodeBitmaps */);
     }
 
     /**
      * Loads contact photos from the ContentProvider.
-     * @param resolver {@link ContentResolver} to use in queries to the ContentProvider.
+     * @param context {@link Context} whose {@link ContentResolver} to use in queries to the
+     *                ContentProvider.
      * @param emails The email addresses of the sender images to return.
      * @param decodeBitmaps If {@code true}, decode the bitmaps and put them into
      *                      {@link ContactInfo}. Otherwise, just put the raw bytes of the photo
@@ -112,9 +116,80 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
      *     <li>Both {@link ContactInfo#photoBytes} and {@link ContactInfo#photo} are null -
      *     Photo load failed.</li>
      * </ul>
+     * Senders looked up recently are answered from {@link SenderInfoCache} without a query.
      */
     public static ImmutableMap<String, ContactInfo> loadContactPhotos(
-            final ContentResolver resolver, final Set<String> emails, final boolean decodeBitmaps) {
+            final Context context, final Set<String> emails, final boolean decodeBitmaps) {
+        return loadContactPhotos(context.getContentResolver(),
+                SenderInfoCache.getInstance(context), emails, decodeBitmaps);
+    }
+
+    @VisibleForTesting
+    static ImmutableMap<String, ContactInfo> loadContactPhotos(final ContentResolver resolver,
+            final SenderInfoCache cache, final Set<String> emails, final boolean decodeBitmaps) {
+        if (cache == null) {
+            return queryContactPhotos(resolver, emails, decodeBitmaps, null, 0);
+        }
+
+        Trace.beginSection("load cached contact photos");
+        final int generation = cache.getGeneration();
+        final Map<String, ContactInfo> results = Maps.newHashMap();
+        final Set<String> uncached = new LinkedHashSet<String>();
+        for (String email : emails) {
+            final ContactInfo cached = getCachedContactInfo(cache, email, decodeBitmaps);
+            if (cached != null) {
+                results.put(email, cached);
+            } else {
+                uncached.add(email);
+            }
+        }
+        Trace.endSection();
+        if (uncached.isEmpty()) {
+            return ImmutableMap.copyOf(results);
+        }
+
+        final ImmutableMap<String, ContactInfo> queried =
+                queryContactPhotos(resolver, uncached, decodeBitmaps, cache, generation);
+        cache.save();
+        if (queried == null) {
+            return null;
+        }
+        results.putAll(queried);
+        return ImmutableMap.copyOf(results);
+    }
+
+    private static ContactInfo getCachedContactInfo(SenderInfoCache cache, String email,
+            boolean decodeBitmaps) {
+        final SenderInfoCache.Entry entry = cache.get(email);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.contactId == SenderInfoCache.NO_CONTACT) {
+            return new ContactInfo(null);
+        }
+        final Uri contactUri = ContentUris.withAppendedId(Contacts.CONTENT_URI, entry.contactId);
+        if (entry.photoHash == null) {
+            return new ContactInfo(contactUri);
+        }
+        final byte[] photoBytes = cache.getPhoto(entry);
+        if (photoBytes == null) {
+            // Look it up again
+            return null;
+        }
+        if (decodeBitmaps) {
+            return new ContactInfo(contactUri,
+                    BitmapFactory.decodeByteArray(photoBytes, 0, photoBytes.length));
+        }
+        return new ContactInfo(contactUri, photoBytes);
+    }
+
+    /**
+     * Queries the contacts provider as described for {@link #loadContactPhotos}, and records what
+     * it finds in the cache, if there is one.
+     */
+    private static ImmutableMap<String, ContactInfo> queryContactPhotos(
+            final ContentResolver resolver, final Set<String> emails, final boolean decodeBitmaps,
+            final SenderInfoCache cache, final int generation) {
         Trace.beginSection("load contact photos util");
         Cursor cursor = null;
 
@@ -122,9 +197,12 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
         Map<String, ContactInfo> results = Maps.newHashMap();
 
         // temporary structures
-        Map<Long, Pair<String, ContactInfo>> photoIdMap = Maps.newHashMap();
+        LongObjectHashMap<Pair<String, ContactInfo>> photoIdMap =
+                new LongObjectHashMap<Pair<String, ContactInfo>>();
         ArrayList<String> photoIdsAsStrings = new ArrayList<String>();
         ArrayList<String> emailsList = getTruncatedQueryParams(emails);
+        // The emails whose photo the second query looks for
+        final Set<String> photoEmails = new LinkedHashSet<String>();
 
         // Build first query
         StringBuilder query = new StringBuilder()
@@ -162,6 +240,7 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
                     long photoId = cursor.getLong(DATA_PHOTO_ID_COLUMN);
                     photoIdsAsStrings.add(Long.toString(photoId));
                     photoIdMap.put(photoId, Pair.create(email, result));
+                    photoEmails.add(email);
                 }
                 results.put(email, result);
             }
@@ -177,6 +256,18 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
                 }
             }
 
+            if (cache != null) {
+                // The photos are cached once they are found below
+                for (String email : emailsList) {
+                    if (!photoEmails.contains(email)) {
+                        final Uri contactUri = results.get(email).contactUri;
+                        cache.put(generation, email, contactUri != null
+                                ? ContentUris.parseId(contactUri) : SenderInfoCache.NO_CONTACT,
+                                SenderInfoCache.NO_PHOTO, null);
+                    }
+                }
+            }
+
             if (photoIdsAsStrings.isEmpty()) {
                 Trace.endSection();
                 return ImmutableMap.copyOf(results);
@@ -203,6 +294,7 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
             }
 
             Trace.beginSection("get photo blob");
+            final Set<String> emailsWithPhotos = new HashSet<String>();
             i = -1;
             while (cursor.moveToPosition(++i)) {
                 byte[] photoBytes = cursor.getBlob(PHOTO_PHOTO_COLUMN);
@@ -215,6 +307,12 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
                 String email = prev.first;
                 ContactInfo prevResult = prev.second;
 
+                if (cache != null) {
+                    cache.put(generation, email, ContentUris.parseId(prevResult.contactUri),
+                            photoId, photoBytes);
+                    emailsWithPhotos.add(email);
+                }
+
                 if (decodeBitmaps) {
                     Trace.beginSection("decode bitmap");
                     Bitmap photo = BitmapFactory.decodeByteArray(photoBytes, 0, photoBytes.length);
@@ -226,6 +324,19 @@ public class SenderInfoLoader extends AsyncTaskLoader<ImmutableMap<String, Conta
                     results.put(email, new ContactInfo(prevResult.contactUri, photoBytes));
                 }
             }
+
+            if (cache != null) {
+                // The contacts whose photo was looked up but has no row, or an empty one
+                for (String photoId : photoIdsAsStrings) {
+                    final Pair<String, ContactInfo> prev =
+                            photoIdMap.get(Long.parseLong(photoId));
+                    if (!emailsWithPhotos.contains(prev.first)) {
+                        cache.put(generation, prev.first,
+                                ContentUris.parseId(prev.second.contactUri),
+                                SenderInfoCache.NO_PHOTO, null);
+                    }
+                }
+            }
             Trace.endSection();
         } finally {
             if (cursor != null) {
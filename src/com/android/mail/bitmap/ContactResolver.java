@@ -17,10 +17,11 @@
 
 package com.android.mail.bitmap;
 
-import android.content.ContentResolver;
+import android.content.Context;
 import android.os.AsyncTask;
 import android.os.AsyncTask.Status;
 import android.os.Handler;
+import android.os.Looper;
 
 import com.android.bitmap.BitmapCache;
 import com.android.bitmap.DecodeTask;
@@ -33,9 +34,14 @@ import com.android.mail.bitmap.ContactRequest.ContactRequestHolder;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -44,7 +50,13 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Batches up ContactRequests so we can efficiently query the contacts provider. Kicks off a
- * ContactResolverTask to query for contact images in the background.
+ * ContactResolverTask to query for contact images in the background, and decodes the photos it
+ * finds on a small pool of threads, one decode per email address however many drawables show it.
+ * <p>
+ * Only drawables that are drawn add requests, so every request is for a visible view. Photos are
+ * looked up and decoded in the order their requests were added, which is top down for a layout
+ * pass. A request that is removed, e.g. because its row was recycled, is dropped if its decode
+ * hasn't started.
  */
 public class ContactResolver implements Runnable {
 
@@ -54,12 +66,16 @@ public class ContactResolver implements Runnable {
     private static final int MAXIMUM_PHOTO_SIZE = 96;
     private static final int HALF_MAXIMUM_PHOTO_SIZE = 48;
 
-    protected final ContentResolver mResolver;
+    protected final Context mContext;
     private final BitmapCache mCache;
-    /** Insertion ordered set allows us to work from the top down. */
+    /**
+     * The requests waiting for a photo. Insertion ordered set allows us to work from the top down.
+     */
     private final LinkedHashSet<ContactRequestHolder> mBatch;
+    /** The decodes the requests of {@link #mBatch} in the current or a past batch are part of. */
+    private final HashMap<ContactRequestHolder, DecodeJob> mInFlight = Maps.newHashMap();
 
-    private final Handler mHandler = new Handler();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
     private ContactResolverTask mTask;
 
 
@@ -68,14 +84,27 @@ public class ContactResolver implements Runnable {
             1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
     private static final Executor EXECUTOR = SMALL_POOL_EXECUTOR;
 
+    /**
+     * Decodes are short and mostly CPU bound, so a few threads are enough to keep up with a fling.
+     */
+    private static final int DECODE_POOL_SIZE = Math.max(1,
+            Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+    private static final ThreadPoolExecutor DECODE_EXECUTOR = new ThreadPoolExecutor(
+            DECODE_POOL_SIZE, DECODE_POOL_SIZE, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    static {
+        DECODE_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     public interface ContactDrawableInterface {
         public void onDecodeComplete(final RequestKey key, final ReusableBitmap result);
         public int getDecodeWidth();
         public int getDecodeHeight();
     }
 
-    public ContactResolver(final ContentResolver resolver, final BitmapCache cache) {
-        mResolver = resolver;
+    public ContactResolver(final Context context, final BitmapCache cache) {
+        mContext = context != null ? context.getApplicationContext() : null;
         mCache = cache;
         mBatch = new LinkedHashSet<ContactRequestHolder>();
     }
@@ -83,7 +112,7 @@ public class ContactResolver implements Runnable {
     @Override
     public void run() {
         // Start to process a new batch.
-        if (mBatch.isEmpty()) {
+        if (mBatch.size() == mInFlight.size()) {
             return;
         }
 
@@ -95,8 +124,22 @@ public class ContactResolver implements Runnable {
         Trace.beginSection("ContactResolver run");
         LogUtils.d(TAG, "ContactResolver >> batch start");
 
-        // Make a copy of the batch.
-        LinkedHashSet<ContactRequestHolder> batch = new LinkedHashSet<ContactRequestHolder>(mBatch);
+        // Group the new requests of the batch by email.
+        final LinkedHashMap<String, DecodeJob> jobs = new LinkedHashMap<String, DecodeJob>();
+        for (ContactRequestHolder request : mBatch) {
+            if (mInFlight.containsKey(request)) {
+                continue;
+            }
+            final String email = request.getEmail();
+            DecodeJob job = jobs.get(email);
+            if (job == null) {
+                job = new DecodeJob(request.contactRequest);
+                jobs.put(email, job);
+            }
+            job.add(request);
+            mInFlight.put(request, job);
+        }
+        final ArrayList<DecodeJob> batch = new ArrayList<DecodeJob>(jobs.values());
 
         if (mTask != null) {
             mTask.cancel(true);
@@ -107,9 +150,8 @@ public class ContactResolver implements Runnable {
         Trace.endSection();
     }
 
-    protected ContactResolverTask getContactResolverTask(
-            LinkedHashSet<ContactRequestHolder> batch) {
-        return new ContactResolverTask(batch, mResolver, mCache, this);
+    protected ContactResolverTask getContactResolverTask(List<DecodeJob> batch) {
+        return new ContactResolverTask(batch, mContext, mCache, this);
     }
 
     public BitmapCache getCache() {
@@ -122,7 +164,13 @@ public class ContactResolver implements Runnable {
     }
 
     public void remove(final ContactRequest request, final ContactDrawableInterface drawable) {
-        mBatch.remove(new ContactRequestHolder(request, drawable));
+        final ContactRequestHolder holder = new ContactRequestHolder(request, drawable);
+        mBatch.remove(holder);
+        final DecodeJob job = mInFlight.remove(holder);
+        if (job != null && job.remove(holder)) {
+            // Nobody is waiting for this photo any more.
+            DECODE_EXECUTOR.remove(job);
+        }
     }
 
     /**
@@ -144,29 +192,146 @@ public class ContactResolver implements Runnable {
     }
 
     /**
-     * This is not a very traditional AsyncTask, in the sense that we do not care about what gets
-     * returned in doInBackground(). Instead, we signal traditional "return values" through
-     * publishProgress().
-     *
-     * <p/>
-     * The reason we do this is because this task is responsible for decoding an entire batch of
-     * ContactRequests. But, we do not want to have to wait to decode all of them before updating
-     * any views. So we must do all the work in doInBackground(),
-     * but upon finishing each individual task, we need to jump out to the UI thread and update
-     * that view.
+     * Called on the UI thread with the result of a decode, or null if there is no photo. Every
+     * request waiting for it gets its own reference to the bitmap.
      */
-    public static class ContactResolverTask extends AsyncTask<Void, Result, Void> {
+    private void onDecodeComplete(final DecodeJob job, final ReusableBitmap bitmap) {
+        final List<ContactRequestHolder> requests = job.takeRequests();
+        for (ContactRequestHolder request : requests) {
+            mInFlight.remove(request);
+        }
+
+        // DecodeTask does not add null results to the cache.
+        if (bitmap == null && mCache != null) {
+            // Cache null result.
+            mCache.put(job.mKey, null);
+        }
+        if (bitmap != null) {
+            if (requests.isEmpty()) {
+                // All the requests were removed while the photo was decoded.
+                bitmap.releaseReference();
+            }
+            for (int i = 1; i < requests.size(); i++) {
+                bitmap.acquireReference();
+            }
+        }
 
-        private final Set<ContactRequestHolder> mContactRequests;
-        private final ContentResolver mResolver;
+        for (ContactRequestHolder request : requests) {
+            request.destination.onDecodeComplete(request.contactRequest, bitmap);
+        }
+    }
+
+    /**
+     * Called on the UI thread when the query couldn't look up the job's email in this batch.
+     */
+    private void onSkipped(final DecodeJob job) {
+        for (ContactRequestHolder request : job.takeRequests()) {
+            // Try again next batch.
+            mInFlight.remove(request);
+        }
+    }
+
+    /**
+     * The decode of the photo for one email address, for all the requests in a batch that show
+     * it. The requests are only touched on the UI thread.
+     */
+    public static class DecodeJob implements Runnable {
+        /** The key the decoded bitmap is cached with. */
+        private final ContactRequest mKey;
+        private final ArrayList<ContactRequestHolder> mRequests = Lists.newArrayList();
+        private int mDecodeWidth;
+        private int mDecodeHeight;
+
+        // Set by the query, before the job is executed.
+        private ContactResolver mResolver;
+        private BitmapCache mCache;
+        private byte[] mPhoto;
+
+        private volatile boolean mCancelled;
+
+        private DecodeJob(final ContactRequest request) {
+            // Its own key, so that its photo bytes aren't shared with a drawable's request.
+            mKey = new ContactRequest(request.getDisplayName(), request.getEmail());
+        }
+
+        private void add(final ContactRequestHolder request) {
+            mRequests.add(request);
+            mDecodeWidth = Math.max(mDecodeWidth, request.destination.getDecodeWidth());
+            mDecodeHeight = Math.max(mDecodeHeight, request.destination.getDecodeHeight());
+        }
+
+        /**
+         * @return whether that was the last request, which cancels the job
+         */
+        private boolean remove(final ContactRequestHolder request) {
+            mRequests.remove(request);
+            mCancelled = mRequests.isEmpty();
+            return mCancelled;
+        }
+
+        private List<ContactRequestHolder> takeRequests() {
+            final List<ContactRequestHolder> requests = new ArrayList<ContactRequestHolder>(
+                    mRequests);
+            mRequests.clear();
+            return requests;
+        }
+
+        public String getEmail() {
+            return mKey.getEmail();
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                // Whether there is a photo is still unknown, so nothing to cache.
+                LogUtils.d(TAG, "ContactResolver  x dropped %s", getEmail());
+                return;
+            }
+            Trace.beginSection("decode");
+            final int width = HALF_MAXIMUM_PHOTO_SIZE >= mDecodeWidth
+                    ? HALF_MAXIMUM_PHOTO_SIZE : MAXIMUM_PHOTO_SIZE;
+            final int height = HALF_MAXIMUM_PHOTO_SIZE >= mDecodeHeight
+                    ? HALF_MAXIMUM_PHOTO_SIZE : MAXIMUM_PHOTO_SIZE;
+            final DecodeTask.DecodeOptions opts = new DecodeTask.DecodeOptions(
+                    width, height, 1 / 2f, DecodeTask.DecodeOptions.STRATEGY_ROUND_NEAREST);
+            mKey.bytes = mPhoto;
+            final ReusableBitmap result = new DecodeTask(mKey, opts, null, null, mCache).decode();
+            mKey.bytes = null;
+            mPhoto = null;
+            Trace.endSection();
+
+            // Decode success.
+            post(result);
+        }
+
+        private void post(final ReusableBitmap result) {
+            final ContactResolver resolver = mResolver;
+            resolver.mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    resolver.onDecodeComplete(DecodeJob.this, result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queries the contacts provider for the photos of a batch of emails in the background, and
+     * hands each photo found to {@link #DECODE_EXECUTOR}, so that views are updated as soon as
+     * their own photo is decoded rather than when the whole batch is.
+     */
+    public static class ContactResolverTask extends AsyncTask<Void, Void, Void> {
+
+        private final List<DecodeJob> mJobs;
+        private final Context mContext;
         private final BitmapCache mCache;
         private final ContactResolver mCallback;
 
-        public ContactResolverTask(final Set<ContactRequestHolder> contactRequests,
-                final ContentResolver resolver, final BitmapCache cache,
+        public ContactResolverTask(final List<DecodeJob> jobs,
+                final Context context, final BitmapCache cache,
                 final ContactResolver callback) {
-            mContactRequests = contactRequests;
-            mResolver = resolver;
+            mJobs = jobs;
+            mContext = context;
             mCache = cache;
             mCallback = callback;
         }
@@ -174,10 +339,10 @@ public class ContactResolver implements Runnable {
         @Override
         protected Void doInBackground(final Void... params) {
             Trace.beginSection("set up");
-            final Set<String> emails = new HashSet<String>(mContactRequests.size());
-            for (ContactRequestHolder request : mContactRequests) {
-                final String email = request.getEmail();
-                emails.add(email);
+            // In the order they were requested, top down.
+            final Set<String> emails = new LinkedHashSet<String>(mJobs.size());
+            for (DecodeJob job : mJobs) {
+                emails.add(job.getEmail());
             }
             Trace.endSection();
 
@@ -186,14 +351,14 @@ public class ContactResolver implements Runnable {
             final ImmutableMap<String, ContactInfo> contactInfos = loadContactPhotos(emails);
             Trace.endSection();
 
-            for (ContactRequestHolder request : mContactRequests) {
-                Trace.beginSection("decode");
-                final String email = request.getEmail();
+            for (final DecodeJob job : mJobs) {
+                final String email = job.getEmail();
+                job.mResolver = mCallback;
+                job.mCache = mCache;
                 if (contactInfos == null) {
                     // Query failed.
                     LogUtils.d(TAG, "ContactResolver -- failed  %s", email);
-                    publishProgress(new Result(request, null));
-                    Trace.endSection();
+                    job.post(null);
                     continue;
                 }
 
@@ -201,7 +366,12 @@ public class ContactResolver implements Runnable {
                 if (contactInfo == null) {
                     // Request skipped. Try again next batch.
                     LogUtils.d(TAG, "ContactResolver  = skipped %s", email);
-                    Trace.endSection();
+                    mCallback.mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mCallback.onSkipped(job);
+                        }
+                    });
                     continue;
                 }
 
@@ -210,80 +380,30 @@ public class ContactResolver implements Runnable {
                 if (photo == null) {
                     // No photo bytes found.
                     LogUtils.d(TAG, "ContactResolver -- failed  %s", email);
-                    publishProgress(new Result(request, null));
-                    Trace.endSection();
+                    job.post(null);
                     continue;
                 }
 
                 // Query succeeded. Photo bytes found.
-                request.contactRequest.bytes = photo;
-
-                // Start decode.
                 LogUtils.d(TAG, "ContactResolver ++ found   %s", email);
-                // Synchronously decode the photo bytes. We are already in a background
-                // thread, and we want decodes to finish in order. The decodes are blazing
-                // fast so we don't need to kick off multiple threads.
-                final int width = HALF_MAXIMUM_PHOTO_SIZE >= request.destination.getDecodeWidth()
-                        ? HALF_MAXIMUM_PHOTO_SIZE : MAXIMUM_PHOTO_SIZE;
-                final int height = HALF_MAXIMUM_PHOTO_SIZE >= request.destination.getDecodeHeight()
-                        ? HALF_MAXIMUM_PHOTO_SIZE : MAXIMUM_PHOTO_SIZE;
-                final DecodeTask.DecodeOptions opts = new DecodeTask.DecodeOptions(
-                        width, height, 1 / 2f, DecodeTask.DecodeOptions.STRATEGY_ROUND_NEAREST);
-                final ReusableBitmap result = new DecodeTask(request.contactRequest, opts, null,
-                        null, mCache).decode();
-                request.contactRequest.bytes = null;
-
-                // Decode success.
-                publishProgress(new Result(request, result));
-                Trace.endSection();
+                job.mPhoto = photo;
+                DECODE_EXECUTOR.execute(job);
             }
 
             return null;
         }
 
         protected ImmutableMap<String, ContactInfo> loadContactPhotos(Set<String> emails) {
-            if (mResolver == null) {
+            if (mContext == null) {
                 return null;
             }
-            return SenderInfoLoader.loadContactPhotos(mResolver, emails, false /* decodeBitmaps */);
-        }
-
-        /**
-         * We use progress updates to jump to the UI thread so we can decode the batch
-         * incrementally.
-         */
-        @Override
-        protected void onProgressUpdate(final Result... values) {
-            final ContactRequestHolder request = values[0].request;
-            final ReusableBitmap bitmap = values[0].bitmap;
-
-            // DecodeTask does not add null results to the cache.
-            if (bitmap == null && mCache != null) {
-                // Cache null result.
-                mCache.put(request.contactRequest, null);
-            }
-
-            request.destination.onDecodeComplete(request.contactRequest, bitmap);
+            return SenderInfoLoader.loadContactPhotos(mContext, emails, false /* decodeBitmaps */);
         }
 
         @Override
         protected void onPostExecute(final Void aVoid) {
-            // Batch completed. Start next batch.
+            // Batch queried. Start next batch.
             mCallback.notifyBatchReady();
         }
     }
-
-    /**
-     * Wrapper for the ContactRequest and its decoded bitmap. This class is used to pass results
-     * to onProgressUpdate().
-     */
-    private static class Result {
-        public final ContactRequestHolder request;
-        public final ReusableBitmap bitmap;
-
-        private Result(final ContactRequestHolder request, final ReusableBitmap bitmap) {
-            this.request = request;
-            this.bitmap = bitmap;
-        }
-    }
 }
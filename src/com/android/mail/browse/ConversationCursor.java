@@ -23,7 +23,6 @@ import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.CharArrayBuffer;
 import android.database.ContentObserver;
 import android.database.Cursor;
@@ -33,12 +32,12 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.RemoteException;
 import android.os.SystemClock;
 import androidx.collection.SparseArrayCompat;
 import android.text.TextUtils;
 
 import com.android.mail.content.ThreadSafeCursorWrapper;
+import com.android.mail.perf.Metrics;
 import com.android.mail.providers.Conversation;
 import com.android.mail.providers.Folder;
 import com.android.mail.providers.FolderList;
@@ -55,7 +54,6 @@ import com.android.mail.utils.Utils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
@@ -101,6 +99,14 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
     private static final boolean DEBUG_DUPLICATE_KEYS = true;
 
+    /** Columns whose pending updates to one conversation can be merged, last value wins. */
+    private static final ImmutableSet<String> COALESCABLE_COLUMNS = ImmutableSet.of(
+            UIProvider.ConversationColumns.READ,
+            UIProvider.ConversationColumns.SEEN,
+            UIProvider.ConversationColumns.STARRED,
+            UIProvider.ConversationColumns.PRIORITY,
+            UIProvider.ConversationColumns.VIEWED);
+
     /** The resolver for the cursor instantiator's context */
     private final ContentResolver mResolver;
 
@@ -251,8 +257,12 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         }
     }
 
-    public Set<Long> getConversationIds() {
-        return mUnderlyingCursor != null ? mUnderlyingCursor.conversationIds() : null;
+    /**
+     * Returns true if the underlying cursor has a row for the conversation. Without an
+     * underlying cursor nothing is known, so every conversation is assumed to be present.
+     */
+    public boolean containsConversationId(long conversationId) {
+        return mUnderlyingCursor == null || mUnderlyingCursor.getPosition(conversationId) >= 0;
     }
 
     private static class UnderlyingRowData {
@@ -366,11 +376,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         private final NewCursorUpdateObserver mCursorUpdateObserver;
         private boolean mUpdateObserverRegistered = false;
 
-        // Ideally these two objects could be combined into a Map from
-        // conversationId -> position, but the cached values uses the conversation
-        // uri as a key.
-        private final Map<String, Integer> mConversationUriPositionMap;
-        private final Map<Long, Integer> mConversationIdPositionMap;
+        /** Conversation id and uri to position, built on the query thread. */
+        private final ConversationPositionIndex mPositionIndex;
         private final List<UnderlyingRowData> mRowCache;
 
         private boolean mCursorUpdated = false;
@@ -390,8 +397,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             }
 
             final long start = SystemClock.uptimeMillis();
-            final Map<String, Integer> uriPositionMap;
-            final Map<Long, Integer> idPositionMap;
+            final ConversationPositionIndex positionIndex;
             final UnderlyingRowData[] cache;
             final int count;
             Utils.traceBeginSection("blockingCaching");
@@ -400,8 +406,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 cache = new UnderlyingRowData[count];
                 int i = 0;
 
-                uriPositionMap = Maps.newHashMapWithExpectedSize(count);
-                idPositionMap = Maps.newHashMapWithExpectedSize(count);
+                final ConversationPositionIndex.Builder indexBuilder =
+                        new ConversationPositionIndex.Builder(count);
 
                 do {
                     final String innerUriString;
@@ -410,47 +416,31 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                     innerUriString = super.getString(URI_COLUMN_INDEX);
                     convId = super.getLong(UIProvider.CONVERSATION_ID_COLUMN);
 
-                    if (DEBUG_DUPLICATE_KEYS) {
-                        if (uriPositionMap.containsKey(innerUriString)) {
-                            LogUtils.e(LOG_TAG, "Inserting duplicate conversation uri key: %s. " +
-                                    "Cursor position: %d, iteration: %d map position: %d",
-                                    innerUriString, getPosition(), i,
-                                    uriPositionMap.get(innerUriString));
-                        }
-                        if (idPositionMap.containsKey(convId)) {
-                            LogUtils.e(LOG_TAG, "Inserting duplicate conversation id key: %d" +
-                                    "Cursor position: %d, iteration: %d map position: %d",
-                                    convId, getPosition(), i, idPositionMap.get(convId));
-                        }
-                    }
-
-                    uriPositionMap.put(innerUriString, i);
-                    idPositionMap.put(convId, i);
+                    indexBuilder.add(convId, innerUriString);
 
                     cache[i] = new UnderlyingRowData(
                             innerUriString,
                             null /* conversation */);
                 } while (super.moveToPosition(++i));
 
-                if (uriPositionMap.size() != count || idPositionMap.size() != count) {
+                positionIndex = indexBuilder.build();
+                if (positionIndex.uriCount() != count || positionIndex.idCount() != count) {
                     if (DEBUG_DUPLICATE_KEYS)  {
                         throw new IllegalStateException("Unexpected map sizes: cursorN=" + count
-                                + " uriN=" + uriPositionMap.size() + " idN="
-                                + idPositionMap.size());
+                                + " uriN=" + positionIndex.uriCount() + " idN="
+                                + positionIndex.idCount());
                     } else {
                         LogUtils.e(LOG_TAG, "Unexpected map sizes.  Cursor size: %d, " +
                                 "uri position map size: %d, id position map size: %d", count,
-                                uriPositionMap.size(), idPositionMap.size());
+                                positionIndex.uriCount(), positionIndex.idCount());
                     }
                 }
             } else {
                 count = 0;
                 cache = new UnderlyingRowData[0];
-                uriPositionMap = Maps.newHashMap();
-                idPositionMap = Maps.newHashMap();
+                positionIndex = ConversationPositionIndex.EMPTY;
             }
-            mConversationUriPositionMap = Collections.unmodifiableMap(uriPositionMap);
-            mConversationIdPositionMap = Collections.unmodifiableMap(idPositionMap);
+            mPositionIndex = positionIndex;
 
             mRowCache = Collections.unmodifiableList(Arrays.asList(cache));
             final long end = SystemClock.uptimeMillis();
@@ -497,21 +487,15 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         }
 
         public boolean contains(String uri) {
-            return mConversationUriPositionMap.containsKey(uri);
-        }
-
-        public Set<Long> conversationIds() {
-            return mConversationIdPositionMap.keySet();
+            return mPositionIndex.contains(uri);
         }
 
         public int getPosition(long conversationId) {
-            final Integer position = mConversationIdPositionMap.get(conversationId);
-            return position != null ? position.intValue() : -1;
+            return mPositionIndex.getPosition(conversationId);
         }
 
         public int getPosition(String conversationUri) {
-            final Integer position = mConversationUriPositionMap.get(conversationUri);
-            return position != null ? position.intValue() : -1;
+            return mPositionIndex.getPosition(conversationUri);
         }
 
         public String getInnerUri() {
@@ -586,10 +570,12 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             if (DEBUG) {
                 LogUtils.i(LOG_TAG, "[Start refresh of %s: %d]", mName, hashCode());
             }
+            final long start = System.nanoTime();
             // Get new data
             final UnderlyingCursorWrapper result = doQuery(false);
             // Make sure window is full
             result.getCount();
+            Metrics.CONVERSATION_CURSOR_REFRESH.recordSince(start);
             return result;
         }
 
@@ -650,6 +636,17 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         return new UnderlyingCursorWrapper(result, mCachingEnabled);
     }
 
+    /**
+     * Starts sending the operations queued by any ConversationCursor to the underlying providers,
+     * rather than after the batching delay. Called when the activity leaves the foreground, after
+     * which the process may be killed.
+     */
+    public static void flushPendingOperations() {
+        if (sProvider != null) {
+            sProvider.flushPendingOperationsSoon();
+        }
+    }
+
     static boolean offUiThread() {
         return Looper.getMainLooper().getThread() != Thread.currentThread();
     }
@@ -895,6 +892,46 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         return Uri.decode(underlyingUri.toString());
     }
 
+    /**
+     * Returns the values this cursor currently shows for some columns of a conversation,
+     * including any cached ones, or null if the conversation or a column isn't in the cursor.
+     */
+    private ContentValues getCurrentValues(Conversation conversation, Set<String> columnNames) {
+        final String uriString = uriStringFromCachingUri(conversation.uri);
+        final ContentValues values = new ContentValues();
+        synchronized (mCacheMapLock) {
+            final ContentValues cached = mCacheMap.get(uriString);
+            final int position = mUnderlyingCursor != null
+                    ? mUnderlyingCursor.getPosition(conversation.id) : -1;
+            final int oldPosition = position >= 0 ? mUnderlyingCursor.getPosition() : -1;
+            try {
+                for (String columnName : columnNames) {
+                    if (cached != null && cached.containsKey(columnName)) {
+                        putInValues(values, columnName, cached.get(columnName));
+                        continue;
+                    }
+                    final int columnIndex = position >= 0
+                            ? mUnderlyingCursor.getColumnIndex(columnName) : -1;
+                    if (columnIndex < 0 || !mUnderlyingCursor.moveToPosition(position)) {
+                        return null;
+                    }
+                    if (mUnderlyingCursor.getType(columnIndex) == Cursor.FIELD_TYPE_INTEGER) {
+                        values.put(columnName, mUnderlyingCursor.getLong(columnIndex));
+                    } else if (mUnderlyingCursor.isNull(columnIndex)) {
+                        values.putNull(columnName);
+                    } else {
+                        values.put(columnName, mUnderlyingCursor.getString(columnIndex));
+                    }
+                }
+            } finally {
+                if (position >= 0) {
+                    mUnderlyingCursor.moveToPosition(oldPosition);
+                }
+            }
+        }
+        return values;
+    }
+
     public void setConversationColumn(Uri conversationUri, String columnName, Object value) {
         final String uriStr = uriStringFromCachingUri(conversationUri);
         synchronized (mCacheMapLock) {
@@ -1069,7 +1106,9 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             }
             mRefreshTask = null;
             mRefreshReady = false;
+            final long start = System.nanoTime();
             resetCursor(mRequeryCursor);
+            Metrics.CONVERSATION_CURSOR_SYNC.recordSince(start);
             mRequeryCursor = null;
         }
         notifyDataChanged();
@@ -1092,6 +1131,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         if (DEBUG) LogUtils.i(LOG_TAG, "[refresh() this=%s]", this);
         synchronized(mCacheMapLock) {
             if (mRefreshTask != null) {
+                Metrics.CONVERSATION_CURSOR_REFRESHES_SKIPPED.increment();
                 if (DEBUG) {
                     LogUtils.i(LOG_TAG, "[refresh() %s returning; already running %d]",
                             mName, mRefreshTask.hashCode());
@@ -1424,6 +1464,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         public static String sUriPrefix;
         public static final String URI_SEPARATOR = "://";
         private ContentResolver mResolver;
+        private ConversationOperationBatcher mBatcher;
 
         /**
          * Allows the implementing provider to specify the authority that should be used.
@@ -1436,6 +1477,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             AUTHORITY = getAuthority();
             sUriPrefix = "content://" + AUTHORITY + "/";
             mResolver = getContext().getContentResolver();
+            mBatcher = new ConversationOperationBatcher(mResolver);
             return true;
         }
 
@@ -1597,24 +1639,28 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
         public int apply(Collection<ConversationOperation> ops,
                 ConversationCursor conversationCursor) {
-            final HashMap<String, ArrayList<ContentProviderOperation>> batchMap =
-                    new HashMap<String, ArrayList<ContentProviderOperation>>();
             // Increment sequence count
             sSequence++;
 
-            // Execute locally and build CPO's for underlying provider
+            // Execute locally and queue CPO's for underlying provider
             boolean recalibrateRequired = false;
             for (ConversationOperation op: ops) {
                 Uri underlyingUri = uriFromCachingUri(op.mUri);
                 String authority = underlyingUri.getAuthority();
-                ArrayList<ContentProviderOperation> authOps = batchMap.get(authority);
-                if (authOps == null) {
-                    authOps = new ArrayList<ContentProviderOperation>();
-                    batchMap.put(authority, authOps);
-                }
+                final boolean coalescable = op.isCoalescable();
+                // Read what the columns hold before the operation caches its own values
+                final ContentValues originals = coalescable
+                        ? conversationCursor.getCurrentValues(op.mConversation,
+                                op.mValues.keySet())
+                        : null;
                 ContentProviderOperation cpo = op.execute(underlyingUri);
                 if (cpo != null) {
-                    authOps.add(cpo);
+                    if (coalescable) {
+                        mBatcher.enqueueUpdate(authority, underlyingUri, cpo.getUri(), op.mValues,
+                                originals);
+                    } else {
+                        mBatcher.enqueue(authority, underlyingUri, cpo);
+                    }
                 }
                 // Keep track of whether our operations require recalibrating the cursor position
                 if (op.mRecalibrateRequired) {
@@ -1630,31 +1676,30 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             // Notify listeners that data has changed
             conversationCursor.notifyDataChanged();
 
-            // Send changes to underlying provider
-            final boolean notUiThread = offUiThread();
-            for (final String authority: batchMap.keySet()) {
-                final ArrayList<ContentProviderOperation> opList = batchMap.get(authority);
-                if (notUiThread) {
-                    try {
-                        mResolver.applyBatch(authority, opList);
-                    } catch (RemoteException e) {
-                    } catch (OperationApplicationException e) {
-                    }
-                } else {
-                    new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                mResolver.applyBatch(authority, opList);
-                            } catch (RemoteException e) {
-                            } catch (OperationApplicationException e) {
-                            }
-                        }
-                    }).start();
-                }
+            // On the UI thread, changes reach the underlying provider when the batcher flushes,
+            // merged with any other operations that arrive in the meantime. Other threads can
+            // afford to wait for them, so nothing is left queued if the process dies.
+            if (offUiThread()) {
+                mBatcher.flush();
             }
             return sSequence;
         }
+
+        /**
+         * Sends all queued operations to the underlying providers now. Must not be called on the
+         * UI thread.
+         */
+        public void flushPendingOperations() {
+            mBatcher.flush();
+        }
+
+        /**
+         * Starts sending all queued operations to the underlying providers in the background,
+         * without waiting for more to join them.
+         */
+        public void flushPendingOperationsSoon() {
+            mBatcher.flushSoon();
+        }
     }
 
     void setMostlyDead(String uriString, Conversation conv) {
@@ -1748,6 +1793,23 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             mMostlyDead = conv.isMostlyDead();
         }
 
+        /**
+         * Whether the provider side of this operation is a plain value update that can be merged
+         * with other updates to the same conversation before it is sent. Only columns where the
+         * last written value is all that matters qualify; folder changes are deltas and don't.
+         */
+        private boolean isCoalescable() {
+            if (mType != UPDATE || mMostlyDead || mLocalDeleteOnUpdate || mValues == null) {
+                return false;
+            }
+            for (String columnName : mValues.keySet()) {
+                if (!COALESCABLE_COLUMNS.contains(columnName)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private ContentProviderOperation execute(Uri underlyingUri) {
             Uri uri = underlyingUri.buildUpon()
                     .appendQueryParameter(UIProvider.SEQUENCE_QUERY_PARAMETER,
@@ -2179,6 +2241,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         new Thread(new Runnable() {
             @Override
             public void run() {
+                // The operations being undone must have reached the provider first
+                sProvider.flushPendingOperations();
                 Cursor c = context.getContentResolver().query(undoUri, UIProvider.UNDO_PROJECTION,
                         null, null, null);
                 if (c != null) {
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.android.mail.perf.Metrics;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind queue for the provider side of {@link ConversationCursor.ConversationOperation}s.
+ * <p>
+ * The local effect of an operation (the cached values in {@link ConversationCursor}) is applied
+ * immediately by the caller; only the {@link ContentProviderOperation}s are queued here. Plain
+ * value updates to the same conversation are merged while they wait, so they end up as a single
+ * update carrying the final values and the newest sequence number, and a column that is set back
+ * to the value it had before the first pending update isn't sent at all. The queue is flushed as one {@link ContentResolver#applyBatch} per authority after {@link #FLUSH_DELAY_MS},
+ * or right away once {@link #MAX_PENDING_OPERATIONS} are queued.
+ * <p>
+ * Queued operations are lost if the process dies before they are flushed, so callers that can
+ * block should {@link #flush()} right after queueing, and the UI thread should call
+ * {@link #flushSoon()} when the app goes to the background. Anything that needs the provider to
+ * be up to date (e.g. undo) must call {@link #flush()} first.
+ */
+public class ConversationOperationBatcher {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /** How long the first queued operation may wait for others to join its batch. */
+    @VisibleForTesting
+    static final long FLUSH_DELAY_MS = 150;
+    /** Queue size at which we flush without waiting for the deadline. */
+    @VisibleForTesting
+    static final int MAX_PENDING_OPERATIONS = 64;
+
+    /**
+     * A queued operation. Mergeable updates keep their values around so that later updates can
+     * be folded into them, along with the values their columns had before the first of those
+     * updates; everything else is an opaque, already built operation.
+     */
+    private static final class PendingOperation {
+        final Uri key;
+        Uri uri;
+        final ContentValues values;
+        final Map<String, Object> originals;
+        final ContentProviderOperation operation;
+
+        PendingOperation(Uri key, Uri uri, ContentValues values, ContentValues originals) {
+            this.key = key;
+            this.uri = uri;
+            this.values = new ContentValues(values);
+            this.originals = Maps.newHashMap();
+            if (originals != null) {
+                for (String column : values.keySet()) {
+                    if (originals.containsKey(column)) {
+                        this.originals.put(column, normalize(originals.get(column)));
+                    }
+                }
+            }
+            this.operation = null;
+        }
+
+        PendingOperation(Uri key, ContentProviderOperation operation) {
+            this.key = key;
+            this.uri = null;
+            this.values = null;
+            this.originals = null;
+            this.operation = operation;
+        }
+
+        /**
+         * Folds a later update into this one, which then goes out with the later update's uri.
+         * Columns this update already set, and that are now set back to their original values,
+         * are dropped. Returns false if that leaves nothing to send.
+         */
+        boolean merge(Uri newUri, ContentValues newValues, ContentValues newOriginals) {
+            final Set<String> pendingColumns = Sets.newHashSet(values.keySet());
+            for (String column : newValues.keySet()) {
+                if (!pendingColumns.contains(column) && newOriginals != null
+                        && newOriginals.containsKey(column)) {
+                    originals.put(column, normalize(newOriginals.get(column)));
+                }
+            }
+            uri = newUri;
+            values.putAll(newValues);
+            for (String column : newValues.keySet()) {
+                if (pendingColumns.contains(column) && originals.containsKey(column)
+                        && Objects.equal(originals.get(column), normalize(values.get(column)))) {
+                    values.remove(column);
+                    originals.remove(column);
+                }
+            }
+            return values.size() > 0;
+        }
+
+        boolean isMergeable() {
+            return operation == null;
+        }
+
+        ContentProviderOperation build() {
+            return operation != null ? operation
+                    : ContentProviderOperation.newUpdate(uri).withValues(values).build();
+        }
+
+        /** Maps the ways a value can be written or read back (e.g. true, 1, 1L) to one object. */
+        private static Object normalize(Object value) {
+            if (value instanceof Boolean) {
+                return ((Boolean) value) ? 1L : 0L;
+            } else if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).longValue();
+            }
+            return value;
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+    private final long mFlushDelayMs;
+
+    private final Object mLock = new Object();
+    /** Serializes flushes so batches reach the providers in the order they were queued. */
+    private final Object mFlushLock = new Object();
+
+    // All fields below are guarded by mLock
+    /** Pending operations per authority, in queue order. */
+    private LinkedHashMap<String, List<PendingOperation>> mPending = Maps.newLinkedHashMap();
+    /** The last pending operation for each conversation, so updates can be merged into it. */
+    private Map<Uri, PendingOperation> mLastPendingByKey = Maps.newHashMap();
+    private int mPendingCount;
+    private long mFirstPendingTime;
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public ConversationOperationBatcher(ContentResolver resolver) {
+        this(resolver, FLUSH_DELAY_MS);
+    }
+
+    @VisibleForTesting
+    ConversationOperationBatcher(ContentResolver resolver, long flushDelayMs) {
+        mResolver = resolver;
+        mFlushDelayMs = flushDelayMs;
+        final HandlerThread thread = new HandlerThread("ConversationOperationBatcher",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queues an update of plain column values. If the same conversation already has a pending
+     * update and nothing queued for it since, the values are merged into that update, which
+     * moves to the end of the queue and takes this update's uri (and so its sequence number).
+     * Merged columns that end up back at their original values are dropped, and so is the whole
+     * update once nothing is left in it.
+     *
+     * @param key the conversation's underlying uri, without query parameters
+     * @param uri the uri to send the update to
+     * @param originals the values the updated columns have before this update, or null if they
+     *        aren't known (an update to a column with no known original is never dropped)
+     */
+    public void enqueueUpdate(String authority, Uri key, Uri uri, ContentValues values,
+            ContentValues originals) {
+        Metrics.CONVERSATION_OPERATIONS_QUEUED.increment();
+        synchronized (mLock) {
+            final PendingOperation last = mLastPendingByKey.get(key);
+            if (last != null && last.isMergeable()) {
+                final List<PendingOperation> ops = mPending.get(authority);
+                ops.remove(last);
+                if (last.merge(uri, values, originals)) {
+                    ops.add(last);
+                    Metrics.CONVERSATION_OPERATIONS_COALESCED.increment();
+                } else {
+                    mLastPendingByKey.remove(key);
+                    mPendingCount--;
+                    Metrics.CONVERSATION_OPERATIONS_CANCELLED.increment();
+                }
+                return;
+            }
+            addLocked(authority, new PendingOperation(key, uri, values, originals));
+        }
+    }
+
+    /**
+     * Queues an operation that can't be merged with anything, such as a delete or an archive.
+     * Later updates to the same conversation are queued after it.
+     */
+    public void enqueue(String authority, Uri key, ContentProviderOperation operation) {
+        Metrics.CONVERSATION_OPERATIONS_QUEUED.increment();
+        synchronized (mLock) {
+            addLocked(authority, new PendingOperation(key, operation));
+        }
+    }
+
+    private void addLocked(String authority, PendingOperation op) {
+        List<PendingOperation> ops = mPending.get(authority);
+        if (ops == null) {
+            ops = Lists.newArrayList();
+            mPending.put(authority, ops);
+        }
+        ops.add(op);
+        mLastPendingByKey.put(op.key, op);
+        if (mPendingCount++ == 0) {
+            mFirstPendingTime = SystemClock.uptimeMillis();
+        }
+
+        if (mPendingCount >= MAX_PENDING_OPERATIONS) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.post(mFlushRunnable);
+            mFlushScheduled = true;
+        } else if (!mFlushScheduled) {
+            mHandler.postDelayed(mFlushRunnable, mFlushDelayMs);
+            mFlushScheduled = true;
+        }
+    }
+
+    /**
+     * Sends everything queued so far to the providers, on the calling thread. Must not be
+     * called on the UI thread.
+     */
+    public void flush() {
+        synchronized (mFlushLock) {
+            final LinkedHashMap<String, List<PendingOperation>> pending;
+            synchronized (mLock) {
+                mHandler.removeCallbacks(mFlushRunnable);
+                mFlushScheduled = false;
+                if (mPendingCount == 0) {
+                    return;
+                }
+                pending = mPending;
+                Metrics.CONVERSATION_OPERATIONS_QUEUE_WAIT.record(
+                        (SystemClock.uptimeMillis() - mFirstPendingTime) * 1000);
+                mPending = Maps.newLinkedHashMap();
+                mLastPendingByKey = Maps.newHashMap();
+                mPendingCount = 0;
+            }
+
+            for (Map.Entry<String, List<PendingOperation>> entry : pending.entrySet()) {
+                final List<PendingOperation> ops = entry.getValue();
+                final ArrayList<ContentProviderOperation> cpos =
+                        Lists.newArrayListWithCapacity(ops.size());
+                for (PendingOperation op : ops) {
+                    cpos.add(op.build());
+                }
+                final long start = System.nanoTime();
+                try {
+                    applyBatch(entry.getKey(), cpos);
+                } catch (RemoteException e) {
+                    LogUtils.w(LOG_TAG, e, "Failed to apply %d conversation operations",
+                            cpos.size());
+                    Metrics.CONVERSATION_OPERATION_BATCHES_FAILED.increment();
+                } catch (OperationApplicationException e) {
+                    LogUtils.w(LOG_TAG, e, "Failed to apply %d conversation operations",
+                            cpos.size());
+                    Metrics.CONVERSATION_OPERATION_BATCHES_FAILED.increment();
+                }
+                Metrics.CONVERSATION_OPERATION_BATCHES.recordSince(start);
+                Metrics.CONVERSATION_OPERATIONS_APPLIED.add(cpos.size());
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void applyBatch(String authority, ArrayList<ContentProviderOperation> operations)
+            throws RemoteException, OperationApplicationException {
+        mResolver.applyBatch(authority, operations);
+    }
+
+    /**
+     * Asks the batcher thread to flush now rather than at the deadline. Safe to call from the UI
+     * thread.
+     */
+    public void flushSoon() {
+        synchronized (mLock) {
+            if (mPendingCount > 0) {
+                mHandler.removeCallbacks(mFlushRunnable);
+                mHandler.post(mFlushRunnable);
+                mFlushScheduled = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import java.util.Arrays;
+
+/**
+ * An immutable index from conversation id and from conversation uri to the position of the row
+ * in an underlying conversation cursor.
+ * <p>
+ * The index is filled row by row on the query thread, while the cursor window is walked anyway,
+ * and is then stored as sorted primitive arrays. Lookups are binary searches, and a 20k row
+ * folder costs a few arrays instead of 40k boxed map entries. When a key appears more than once
+ * the last row wins, as it would with a map.
+ */
+final class ConversationPositionIndex {
+    static final ConversationPositionIndex EMPTY = new Builder(0).build();
+
+    /** Conversation ids, sorted and unique. */
+    private final long[] mSortedIds;
+    /** Position of the row for the id at the same index of {@link #mSortedIds}. */
+    private final int[] mIdPositions;
+    /** Sorted entries of <code>(uri.hashCode() << 32) | position</code>, one per row. */
+    private final long[] mSortedUriHashes;
+    /** Conversation uri of every row, by position; used to resolve hash collisions. */
+    private final String[] mUris;
+    private final int mUniqueUriCount;
+
+    private ConversationPositionIndex(long[] sortedIds, int[] idPositions,
+            long[] sortedUriHashes, String[] uris, int uniqueUriCount) {
+        mSortedIds = sortedIds;
+        mIdPositions = idPositions;
+        mSortedUriHashes = sortedUriHashes;
+        mUris = uris;
+        mUniqueUriCount = uniqueUriCount;
+    }
+
+    /**
+     * Returns the position of the row for the conversation id, or -1.
+     */
+    int getPosition(long conversationId) {
+        final int index = Arrays.binarySearch(mSortedIds, conversationId);
+        return index >= 0 ? mIdPositions[index] : -1;
+    }
+
+    /**
+     * Returns the position of the row for the conversation uri, or -1.
+     */
+    int getPosition(String conversationUri) {
+        if (conversationUri == null) {
+            return -1;
+        }
+        final long hash = ((long) conversationUri.hashCode()) << 32;
+        int index = Arrays.binarySearch(mSortedUriHashes, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        // Entries with the same hash are ordered by position, keep the last match
+        int found = -1;
+        for (; index < mSortedUriHashes.length; index++) {
+            final long entry = mSortedUriHashes[index];
+            if ((entry & 0xffffffff00000000L) != hash) {
+                break;
+            }
+            final int position = (int) entry;
+            if (conversationUri.equals(mUris[position])) {
+                found = position;
+            }
+        }
+        return found;
+    }
+
+    boolean contains(String conversationUri) {
+        return getPosition(conversationUri) >= 0;
+    }
+
+    /**
+     * Number of distinct conversation ids. Less than the row count if ids are duplicated.
+     */
+    int idCount() {
+        return mSortedIds.length;
+    }
+
+    /**
+     * Number of distinct conversation uris. Less than the row count if uris are duplicated.
+     */
+    int uriCount() {
+        return mUniqueUriCount;
+    }
+
+    static final class Builder {
+        private final long[] mIds;
+        private final String[] mUris;
+        private int mCount;
+
+        /**
+         * @param rowCount the exact number of rows that will be added
+         */
+        Builder(int rowCount) {
+            mIds = new long[rowCount];
+            mUris = new String[rowCount];
+        }
+
+        /**
+         * Adds the next row. Rows must be added in cursor order.
+         */
+        void add(long conversationId, String conversationUri) {
+            mIds[mCount] = conversationId;
+            mUris[mCount] = conversationUri;
+            mCount++;
+        }
+
+        ConversationPositionIndex build() {
+            if (mCount != mIds.length) {
+                throw new IllegalStateException("Expected " + mIds.length + " rows, got "
+                        + mCount);
+            }
+
+            final long[] sortedIds = mIds.clone();
+            Arrays.sort(sortedIds);
+            int uniqueIds = 0;
+            for (int i = 0; i < sortedIds.length; i++) {
+                if (i == 0 || sortedIds[i] != sortedIds[uniqueIds - 1]) {
+                    sortedIds[uniqueIds++] = sortedIds[i];
+                }
+            }
+            final long[] uniqueSortedIds = uniqueIds == sortedIds.length
+                    ? sortedIds : Arrays.copyOf(sortedIds, uniqueIds);
+            final int[] idPositions = new int[uniqueIds];
+            // Walking the rows in order means that a later duplicate overwrites an earlier one
+            for (int position = 0; position < mCount; position++) {
+                idPositions[Arrays.binarySearch(uniqueSortedIds, mIds[position])] = position;
+            }
+
+            final long[] sortedUriHashes = new long[mCount];
+            for (int position = 0; position < mCount; position++) {
+                final int hash = mUris[position] != null ? mUris[position].hashCode() : 0;
+                sortedUriHashes[position] = (((long) hash) << 32) | position;
+            }
+            Arrays.sort(sortedUriHashes);
+
+            return new ConversationPositionIndex(uniqueSortedIds, idPositions, sortedUriHashes,
+                    mUris, countUniqueUris(sortedUriHashes));
+        }
+
+        private int countUniqueUris(long[] sortedUriHashes) {
+            int unique = 0;
+            for (int i = 0; i < sortedUriHashes.length; i++) {
+                final String uri = mUris[(int) sortedUriHashes[i]];
+                boolean duplicate = false;
+                // Only rows with the same hash can have the same uri
+                for (int j = i - 1; j >= 0 && (sortedUriHashes[j] >>> 32)
+                        == (sortedUriHashes[i] >>> 32); j--) {
+                    final String other = mUris[(int) sortedUriHashes[j]];
+                    if (uri == null ? other == null : uri.equals(other)) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+                if (!duplicate) {
+                    unique++;
+                }
+            }
+            return unique;
+        }
+    }
+}
@@ -23,13 +23,13 @@ import android.content.Intent;
 import android.net.Uri;
 
 import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.internet.BodyStore;
 import com.android.emailcommon.internet.MimeMessage;
 import com.android.emailcommon.mail.MessagingException;
 import com.android.mail.ui.MailAsyncTaskLoader;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,10 +60,12 @@ public class EmlMessageLoader extends MailAsyncTaskLoader<ConversationMessage> {
             return null;
         }
 
+        // The message is only needed until its text and attachments have been copied out
+        final BodyStore bodyStore = new BodyStore();
         final MimeMessage mimeMessage;
         ConversationMessage convMessage;
         try {
-            mimeMessage = new MimeMessage(stream);
+            mimeMessage = new MimeMessage(stream, bodyStore);
             convMessage = new ConversationMessage(context, mimeMessage, mEmlFileUri);
         } catch (IOException e) {
             LogUtils.e(LOG_TAG, e, "Could not read eml file");
@@ -79,15 +81,7 @@ public class EmlMessageLoader extends MailAsyncTaskLoader<ConversationMessage> {
             }
 
             // delete temp files created during parsing
-            final File[] cacheFiles = TempDirectory.getTempDirectory().listFiles();
-            for (final File file : cacheFiles) {
-                if (file.getName().startsWith("body")) {
-                    final boolean deleted = file.delete();
-                    if (!deleted) {
-                        LogUtils.d(LOG_TAG, "Failed to delete temp file" + file.getName());
-                    }
-                }
-            }
+            bodyStore.release();
         }
 
         return convMessage;
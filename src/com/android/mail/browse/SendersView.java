@@ -30,6 +30,7 @@ import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.CharacterStyle;
 import android.text.style.TextAppearanceSpan;
+import android.util.SparseIntArray;
 
 import com.android.mail.R;
 import com.android.mail.providers.Account;
@@ -82,16 +83,16 @@ public class SendersView {
     private static final int MAX_PRIORITY_LENGTH_MAP_LIST = 2;
 
     // Cache of priority to length maps.  We can't just use a single instance as it may be
-    // modified from different threads
-    private static final ObjectCache<Map<Integer, Integer>> PRIORITY_LENGTH_MAP_CACHE =
-            new ObjectCache<Map<Integer, Integer>>(
-                    new ObjectCache.Callback<Map<Integer, Integer>>() {
+    // modified from different threads. SparseIntArray keeps priorities and lengths unboxed.
+    private static final ObjectCache<SparseIntArray> PRIORITY_LENGTH_MAP_CACHE =
+            new ObjectCache<SparseIntArray>(
+                    new ObjectCache.Callback<SparseIntArray>() {
                         @Override
-                        public Map<Integer, Integer> newInstance() {
-                            return Maps.newHashMap();
+                        public SparseIntArray newInstance() {
+                            return new SparseIntArray();
                         }
                         @Override
-                        public void onObjectReleased(Map<Integer, Integer> object) {
+                        public void onObjectReleased(SparseIntArray object) {
                             object.clear();
                         }
                     }, MAX_PRIORITY_LENGTH_MAP_LIST);
@@ -284,7 +285,7 @@ public class SendersView {
             numCharsToRemovePerWord = numCharsUsed - maxChars;
         }
 
-        final Map<Integer, Integer> priorityToLength = PRIORITY_LENGTH_MAP_CACHE.get();
+        final SparseIntArray priorityToLength = PRIORITY_LENGTH_MAP_CACHE.get();
         try {
             priorityToLength.clear();
             int senderLength;
@@ -295,8 +296,9 @@ public class SendersView {
                 maxFoundPriority = Math.max(maxFoundPriority, info.priority);
             }
             while (maxPriorityToInclude < maxFoundPriority) {
-                if (priorityToLength.containsKey(maxPriorityToInclude + 1)) {
-                    int length = numCharsUsed + priorityToLength.get(maxPriorityToInclude + 1);
+                final int index = priorityToLength.indexOfKey(maxPriorityToInclude + 1);
+                if (index >= 0) {
+                    int length = numCharsUsed + priorityToLength.valueAt(index);
                     if (numCharsUsed > 0)
                         length += 2;
                     // We must show at least two senders if they exist. If we don't
@@ -45,8 +45,6 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.ParcelFileDescriptor;
 import android.provider.BaseColumns;
 import androidx.core.app.RemoteInput;
@@ -261,6 +259,7 @@ public class ComposeActivity extends AppCompatActivity
 
     private static final String EXTRA_SELECTED_REPLY_FROM_ACCOUNT = "replyFromAccount";
     private static final String EXTRA_REQUEST_ID = "requestId";
+    private static final String EXTRA_UNSAVED_DRAFT_KEY = "unsavedDraftKey";
     private static final String EXTRA_FOCUS_SELECTION_START = "focusSelectionStart";
     private static final String EXTRA_FOCUS_SELECTION_END = "focusSelectionEnd";
     private static final String EXTRA_MESSAGE = "extraMessage";
@@ -274,8 +273,8 @@ public class ComposeActivity extends AppCompatActivity
 
     private static final String KEY_INNER_SAVED_STATE = "compose_state";
 
-    // A single thread for running tasks in the background.
-    private static final Handler SEND_SAVE_TASK_HANDLER;
+    // Runs sends and saves in the background.
+    private static final SendOrSaveScheduler SEND_SAVE_SCHEDULER = new SendOrSaveScheduler();
     @VisibleForTesting
     public static final AtomicInteger PENDING_SEND_OR_SAVE_TASKS_NUM = new AtomicInteger(0);
 
@@ -284,10 +283,6 @@ public class ComposeActivity extends AppCompatActivity
 
     // Static initializations
     static {
-        HandlerThread handlerThread = new HandlerThread("Send Message Task Thread");
-        handlerThread.start();
-        SEND_SAVE_TASK_HANDLER = new Handler(handlerThread.getLooper());
-
         DATA_DIRECTORY_ROOT = Environment.getDataDirectory().toString();
     }
 
@@ -324,9 +319,15 @@ public class ComposeActivity extends AppCompatActivity
     @VisibleForTesting
     protected Message mRefMessage;
     private long mDraftId = UIProvider.INVALID_MESSAGE_ID;
+    /**
+     * Identifies the draft to {@link #SEND_SAVE_SCHEDULER} until it has an id. Kept in the saved
+     * state, so it stays the same when the activity is recreated.
+     */
+    private long mUnsavedDraftKey = sRandom.nextLong();
     private Message mDraft;
     private ReplyFromAccount mDraftAccount;
     private final Object mDraftLock = new Object();
+    private final DraftContentCache mDraftContentCache = new DraftContentCache();
 
     /**
      * Boolean indicating whether ComposeActivity was launched from a Gmail controlled view.
@@ -567,6 +568,7 @@ public class ComposeActivity extends AppCompatActivity
 
             mExtraValues = savedState.getParcelable(EXTRA_VALUES);
 
+            mUnsavedDraftKey = savedState.getLong(EXTRA_UNSAVED_DRAFT_KEY, mUnsavedDraftKey);
             // Get the draft id from the request id if there is one.
             if (savedState.containsKey(EXTRA_REQUEST_ID)) {
                 final int requestId = savedState.getInt(EXTRA_REQUEST_ID);
@@ -1090,6 +1092,7 @@ public class ComposeActivity extends AppCompatActivity
             // save the request id.
             state.putInt(EXTRA_REQUEST_ID, mRequestId);
         }
+        state.putLong(EXTRA_UNSAVED_DRAFT_KEY, mUnsavedDraftKey);
 
         // We want to restore the current mode after a pause
         // or rotation.
@@ -1155,17 +1158,22 @@ public class ComposeActivity extends AppCompatActivity
         message.setBcc(formatSenders(mBcc.getText().toString()));
         message.setReplyTo(null);
         message.dateReceivedMs = 0;
-        message.bodyHtml = spannedBodyToHtml(body, true);
         message.bodyText = body.toString();
-        // Fallback to use the text version if html conversion fails for whatever the reason.
-        final String htmlInPlainText = Utils.convertHtmlToPlainText(message.bodyHtml);
-        if (message.bodyText != null && message.bodyText.trim().length() > 0 &&
-                TextUtils.isEmpty(htmlInPlainText)) {
-            LogUtils.w(LOG_TAG, "FAILED HTML CONVERSION: from %d to %d", message.bodyText.length(),
-                    htmlInPlainText.length());
-            Analytics.getInstance().sendEvent(ANALYTICS_CATEGORY_ERRORS,
-                    "failed_html_conversion", null, 0);
-            message.bodyHtml = "<p>" + message.bodyText + "</p>";
+        // Only convert the body again if it has been edited since the last save
+        message.bodyHtml = mDraftContentCache.getBodyHtml(body, message.bodyText);
+        if (message.bodyHtml == null) {
+            message.bodyHtml = spannedBodyToHtml(body, true);
+            // Fallback to use the text version if html conversion fails for whatever the reason.
+            final String htmlInPlainText = Utils.convertHtmlToPlainText(message.bodyHtml);
+            if (message.bodyText != null && message.bodyText.trim().length() > 0 &&
+                    TextUtils.isEmpty(htmlInPlainText)) {
+                LogUtils.w(LOG_TAG, "FAILED HTML CONVERSION: from %d to %d",
+                        message.bodyText.length(), htmlInPlainText.length());
+                Analytics.getInstance().sendEvent(ANALYTICS_CATEGORY_ERRORS,
+                        "failed_html_conversion", null, 0);
+                message.bodyHtml = "<p>" + message.bodyText + "</p>";
+            }
+            mDraftContentCache.putBodyHtml(body, message.bodyText, message.bodyHtml);
         }
         message.embedsExternalResources = false;
         message.refMessageUri = mRefMessage != null ? mRefMessage.uri : null;
@@ -1176,17 +1184,17 @@ public class ComposeActivity extends AppCompatActivity
         message.messageFlags = 0;
         message.alwaysShowImages = false;
         message.attachmentsJson = Attachment.toJSONArray(attachments);
-        CharSequence quotedText = mQuotedTextView.getQuotedText();
+        final DraftContentCache.QuotedText quotedText =
+                mDraftContentCache.getQuotedText(mQuotedTextView.getQuotedText());
         message.quotedTextOffset = -1; // Just a default value.
-        if (refMessage != null && !TextUtils.isEmpty(quotedText)) {
+        if (refMessage != null && quotedText != null) {
             if (!TextUtils.isEmpty(refMessage.bodyHtml)) {
                 // We want the index to point to just the quoted text and not the
                 // "On December 25, 2014..." part of it.
-                message.quotedTextOffset =
-                        QuotedTextView.getQuotedTextOffset(quotedText.toString());
+                message.quotedTextOffset = quotedText.getHeaderOffset();
             } else if (!TextUtils.isEmpty(refMessage.bodyText)) {
                 // We want to point to the entire quoted text.
-                message.quotedTextOffset = QuotedTextView.findQuotedTextIndex(quotedText);
+                message.quotedTextOffset = quotedText.getQuoteIndex();
             }
         }
         message.accountUri = null;
@@ -2637,7 +2645,10 @@ public class ComposeActivity extends AppCompatActivity
     }
 
     private static void closeOpenedAttachmentFds(final SendOrSaveMessage sendOrSaveMessage) {
-        final Bundle openedFds = sendOrSaveMessage.attachmentFds();
+        closeAttachmentFds(sendOrSaveMessage.attachmentFds());
+    }
+
+    private static void closeAttachmentFds(final Bundle openedFds) {
         if (openedFds != null) {
             final Set<String> keys = openedFds.keySet();
             for (final String key : keys) {
@@ -3193,13 +3204,13 @@ public class ComposeActivity extends AppCompatActivity
         // fullbodyhtml/fullbodytext will contain the actual body plus the quoted text.
         String fullBodyHtml = htmlBody;
         String fullBodyText = textBody;
-        String quotedString = null;
-        final boolean hasQuotedText = !TextUtils.isEmpty(quotedText);
+        // The quoted text is only converted once for all saves.
+        final DraftContentCache.QuotedText quoted = mDraftContentCache.getQuotedText(quotedText);
+        final boolean hasQuotedText = quoted != null;
         if (hasQuotedText) {
             // The quoted text is HTML at this point.
-            quotedString = quotedText.toString();
-            fullBodyHtml = htmlBody + quotedString;
-            fullBodyText = textBody + Utils.convertHtmlToPlainText(quotedString);
+            fullBodyHtml = htmlBody + quoted.getHtml();
+            fullBodyText = textBody + quoted.getPlainText();
             MessageModification.putForward(values, composeMode == ComposeActivity.FORWARD);
             MessageModification.putAppendRefMessageContent(values, true /* include quoted */);
         }
@@ -3217,8 +3228,7 @@ public class ComposeActivity extends AppCompatActivity
             if (!TextUtils.isEmpty(refMessage.bodyHtml)) {
                 MessageModification.putBodyHtml(values, fullBodyHtml);
                 if (hasQuotedText) {
-                    quotedTextPos = htmlBody.length() +
-                            QuotedTextView.getQuotedTextOffset(quotedString);
+                    quotedTextPos = htmlBody.length() + quoted.getHeaderOffset();
                 }
             }
             if (!TextUtils.isEmpty(refMessage.bodyText)) {
@@ -3249,10 +3259,27 @@ public class ComposeActivity extends AppCompatActivity
             values.putAll(extraValues);
         }
 
+        if (save && callback.getMessageId() != UIProvider.INVALID_MESSAGE_ID
+                && mDraftContentCache.isSaved(values)) {
+            // Something was marked as changed, but the draft is the same as when last saved.
+            // Only close any attachments opened for this save.
+            final SendOrSaveMessage unchanged = new SendOrSaveMessage(context, requestId,
+                    values, refMessageId, null, optionalAttachmentFds, save);
+            closeOpenedAttachmentFds(unchanged);
+            callback.sendOrSaveFinished(unchanged, true);
+            LogUtils.i(LOG_TAG, "[compose] SendOrSaveMessage [%s] skipped, draft unchanged",
+                    requestId);
+            return;
+        }
+
+        // The values get the draft's id added, so keep a copy to compare the next save to
+        final ContentValues savedValues = save ? new ContentValues(values) : null;
+        mDraftContentCache.setSaved(null);
         SendOrSaveMessage sendOrSaveMessage = new SendOrSaveMessage(context, requestId,
                 values, refMessageId, message.getAttachments(), optionalAttachmentFds, save);
         runSendOrSaveProviderCalls(sendOrSaveMessage, callback, currReplyFromAccount,
                 originalReplyFromAccount);
+        mDraftContentCache.setSaved(savedValues);
 
         LogUtils.i(LOG_TAG, "[compose] SendOrSaveMessage [%s] posted (isSave: %s) - " +
                 "bodyHtml length: %d, bodyText length: %d, quoted text pos: %d, attach count: %d",
@@ -3400,12 +3427,7 @@ public class ComposeActivity extends AppCompatActivity
                             .show();
                 }
 
-                synchronized (PENDING_SEND_OR_SAVE_TASKS_NUM) {
-                    if (PENDING_SEND_OR_SAVE_TASKS_NUM.addAndGet(-1) == 0) {
-                        // Stop service so we can be killed.
-                        stopService(new Intent(ComposeActivity.this, EmptyService.class));
-                    }
-                }
+                finishPendingSendOrSave();
                 if (sTestSendOrSaveCallback != null) {
                     sTestSendOrSaveCallback.sendOrSaveFinished(message, success);
                 }
@@ -3426,7 +3448,8 @@ public class ComposeActivity extends AppCompatActivity
 
         // Generate a unique message id for this request
         mRequestId = sRandom.nextInt();
-        SEND_SAVE_TASK_HANDLER.post(new Runnable() {
+        SEND_SAVE_SCHEDULER.schedule(new SendOrSaveScheduler.Task(getSendOrSaveKey(),
+                mReplyFromAccount.account.uri, !save) {
             @Override
             public void run() {
                 final Message msg = createMessage(mReplyFromAccount, mRefMessage, getMode(), body);
@@ -3434,6 +3457,13 @@ public class ComposeActivity extends AppCompatActivity
                         mDraftAccount, msg, mRefMessage, mQuotedTextView.getQuotedTextIfIncluded(),
                         callback, save, mComposeMode, mExtraValues, attachmentFds);
             }
+
+            @Override
+            void onSuperseded() {
+                // A later send or save of this draft takes the latest content
+                closeAttachmentFds(attachmentFds);
+                finishPendingSendOrSave();
+            }
         });
 
         // Don't display the toast if the user is just changing the orientation,
@@ -3455,6 +3485,32 @@ public class ComposeActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * Returns what identifies this draft to {@link #SEND_SAVE_SCHEDULER}: its message id once it
+     * has one, so that saves of the same draft replace each other even across a rotation.
+     */
+    private Object getSendOrSaveKey() {
+        synchronized (mDraftLock) {
+            if (mDraftId != UIProvider.INVALID_MESSAGE_ID) {
+                return mDraftId;
+            }
+        }
+        return "unsaved:" + mUnsavedDraftKey;
+    }
+
+    /**
+     * Accounts for the end of a send or save started by
+     * {@link SendOrSaveCallback#initializeSendOrSave()}.
+     */
+    private void finishPendingSendOrSave() {
+        synchronized (PENDING_SEND_OR_SAVE_TASKS_NUM) {
+            if (PENDING_SEND_OR_SAVE_TASKS_NUM.addAndGet(-1) == 0) {
+                // Stop service so we can be killed.
+                stopService(new Intent(ComposeActivity.this, EmptyService.class));
+            }
+        }
+    }
+
     /**
      * Save the state of the request messageid map. This allows for the Gmail
      * process to be killed, but and still allow for ComposeActivity instances
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.compose;
+
+import android.content.ContentValues;
+import android.text.Spanned;
+import android.text.TextUtils;
+
+import com.android.mail.utils.Utils;
+
+/**
+ * What {@link ComposeActivity} worked out for earlier saves of a draft, so that autosaving a
+ * reply to a long thread doesn't redo it for content that hasn't changed:
+ * <ul>
+ * <li>the conversions of the quoted text, which doesn't change while the draft is edited,
+ * <li>the HTML of the body, as long as its text and spans stay the same,
+ * <li>the values last saved, so that saving them again can be skipped.
+ * </ul>
+ * Saves run on a background thread, so all of this is synchronized.
+ */
+class DraftContentCache {
+    /**
+     * The quoted text of a reply or forward and what is computed from it for each save.
+     */
+    static class QuotedText {
+        private final CharSequence mSource;
+        private final String mHtml;
+        private final int mHeaderOffset;
+        private final int mQuoteIndex;
+        private String mPlainText;
+
+        private QuotedText(CharSequence source) {
+            mSource = source;
+            mHtml = source.toString();
+            mHeaderOffset = QuotedTextView.getQuotedTextOffset(mHtml);
+            mQuoteIndex = QuotedTextView.findQuotedTextIndex(mHtml);
+        }
+
+        /**
+         * The quoted text, which is HTML.
+         */
+        String getHtml() {
+            return mHtml;
+        }
+
+        /**
+         * @see QuotedTextView#getQuotedTextOffset(String)
+         */
+        int getHeaderOffset() {
+            return mHeaderOffset;
+        }
+
+        /**
+         * @see QuotedTextView#findQuotedTextIndex(CharSequence)
+         */
+        int getQuoteIndex() {
+            return mQuoteIndex;
+        }
+
+        /**
+         * The quoted text converted to plain text, which is only needed by saves that include it.
+         */
+        synchronized String getPlainText() {
+            if (mPlainText == null) {
+                mPlainText = Utils.convertHtmlToPlainText(mHtml);
+            }
+            return mPlainText;
+        }
+    }
+
+    private QuotedText mQuotedText;
+
+    private String mBodyText;
+    private Object[] mBodySpans;
+    private int[] mBodySpanRanges;
+    private String mBodyHtml;
+
+    private ContentValues mSavedValues;
+
+    /**
+     * Returns the conversions of the quoted text, or null if there is none. They are redone only
+     * when {@link QuotedTextView} is given new quoted text.
+     */
+    synchronized QuotedText getQuotedText(CharSequence quotedText) {
+        if (TextUtils.isEmpty(quotedText)) {
+            return null;
+        }
+        // QuotedTextView replaces its text rather than changing it
+        if (mQuotedText == null || mQuotedText.mSource != quotedText) {
+            mQuotedText = new QuotedText(quotedText);
+        }
+        return mQuotedText;
+    }
+
+    /**
+     * Returns the HTML stored for the body, or null if its text or spans have changed since.
+     *
+     * @param body the body, without composing spans
+     * @param bodyText <code>body.toString()</code>
+     */
+    synchronized String getBodyHtml(Spanned body, String bodyText) {
+        if (mBodyHtml == null || !bodyText.equals(mBodyText)) {
+            return null;
+        }
+        final Object[] spans = body.getSpans(0, body.length(), Object.class);
+        if (spans.length != mBodySpans.length) {
+            return null;
+        }
+        for (int i = 0; i < spans.length; i++) {
+            final Object span = spans[i];
+            if (span != mBodySpans[i] || body.getSpanStart(span) != mBodySpanRanges[i * 3]
+                    || body.getSpanEnd(span) != mBodySpanRanges[i * 3 + 1]
+                    || body.getSpanFlags(span) != mBodySpanRanges[i * 3 + 2]) {
+                return null;
+            }
+        }
+        return mBodyHtml;
+    }
+
+    /**
+     * Stores the HTML converted from the body.
+     *
+     * @param body the body, without composing spans
+     * @param bodyText <code>body.toString()</code>
+     * @param html the HTML
+     */
+    synchronized void putBodyHtml(Spanned body, String bodyText, String html) {
+        final Object[] spans = body.getSpans(0, body.length(), Object.class);
+        final int[] ranges = new int[spans.length * 3];
+        for (int i = 0; i < spans.length; i++) {
+            ranges[i * 3] = body.getSpanStart(spans[i]);
+            ranges[i * 3 + 1] = body.getSpanEnd(spans[i]);
+            ranges[i * 3 + 2] = body.getSpanFlags(spans[i]);
+        }
+        mBodyText = bodyText;
+        mBodySpans = spans;
+        mBodySpanRanges = ranges;
+        mBodyHtml = html;
+    }
+
+    /**
+     * Returns whether these are the values of the last successful save.
+     */
+    synchronized boolean isSaved(ContentValues values) {
+        return mSavedValues != null && mSavedValues.equals(values);
+    }
+
+    /**
+     * Records the values of a successful save, or forgets them if <code>values</code> is null.
+     * The values must not be changed afterwards.
+     */
+    synchronized void setSaved(ContentValues values) {
+        mSavedValues = values;
+    }
+}
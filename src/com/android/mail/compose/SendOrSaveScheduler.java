@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.compose;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import com.android.mail.perf.Metrics;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Runs the background work of sending and saving drafts.
+ * <ul>
+ * <li>Each account gets its own thread, so a slow provider call for one account doesn't hold up
+ * the others.
+ * <li>Sends go before saves on the same thread.
+ * <li>A task replaces any save of the same draft that hasn't started yet, since only the latest
+ * content of a draft matters.
+ * </ul>
+ * All tasks for a draft run on the thread they started on, one at a time and in order, even if
+ * the draft moves to another account in the meantime.
+ */
+class SendOrSaveScheduler {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /**
+     * The work of one send or save.
+     */
+    abstract static class Task implements Runnable {
+        private final Object mDraft;
+        private final Object mAccount;
+        private final boolean mSend;
+        private long mScheduledTime;
+
+        /**
+         * @param draft identifies the draft, by equality. Should stay the same when the activity
+         *     editing the draft is recreated.
+         * @param account identifies the account the draft is sent or saved in, by equality
+         * @param send whether this is a send rather than a save
+         */
+        Task(Object draft, Object account, boolean send) {
+            mDraft = draft;
+            mAccount = account;
+            mSend = send;
+        }
+
+        /**
+         * Called instead of {@link #run()} when a later task for the same draft replaces this one,
+         * on the thread that scheduled the later task.
+         */
+        abstract void onSuperseded();
+    }
+
+    private class Lane implements Runnable {
+        final Handler mHandler;
+        final ArrayDeque<Task> mSends = new ArrayDeque<Task>();
+        final ArrayDeque<Task> mSaves = new ArrayDeque<Task>();
+        boolean mPosted;
+
+        Lane(String name) {
+            final HandlerThread thread = new HandlerThread(name);
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+
+        @Override
+        public void run() {
+            final Task task;
+            final long waitTime;
+            synchronized (mLock) {
+                task = mSends.isEmpty() ? mSaves.poll() : mSends.poll();
+                if (task == null) {
+                    mPosted = false;
+                    return;
+                }
+                mPending--;
+                waitTime = SystemClock.elapsedRealtime() - task.mScheduledTime;
+            }
+            Metrics.SEND_OR_SAVE_WAIT.record(waitTime * 1000);
+
+            final long start = SystemClock.elapsedRealtime();
+            try {
+                task.run();
+            } finally {
+                final long runTime = SystemClock.elapsedRealtime() - start;
+                Metrics.SEND_OR_SAVE_RUN.record(runTime * 1000);
+                synchronized (mLock) {
+                    releaseDraft(task.mDraft);
+                    // One task per message, so other work on the thread isn't held up
+                    mHandler.post(this);
+                }
+                LogUtils.d(LOG_TAG, "[compose] %s waited %d ms, ran %d ms, %d pending",
+                        task.mSend ? "Send" : "Save", waitTime, runTime, getQueueDepth());
+            }
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    // Guarded by mLock
+    private final HashMap<Object, Lane> mAccountLanes = Maps.newHashMap();
+    /** Lanes of the drafts with tasks scheduled or running. */
+    private final HashMap<Object, Lane> mDraftLanes = Maps.newHashMap();
+    /** Number of tasks scheduled or running for each draft in {@link #mDraftLanes}. */
+    private final HashMap<Object, Integer> mDraftTaskCounts = Maps.newHashMap();
+    private int mPending;
+
+    /**
+     * Schedules the task, replacing any save of the same draft that hasn't started.
+     */
+    void schedule(Task task) {
+        Task superseded = null;
+        synchronized (mLock) {
+            Lane lane = mDraftLanes.get(task.mDraft);
+            if (lane == null) {
+                lane = mAccountLanes.get(task.mAccount);
+                if (lane == null) {
+                    lane = new Lane("Send Message Task Thread " + (mAccountLanes.size() + 1));
+                    mAccountLanes.put(task.mAccount, lane);
+                }
+            }
+
+            for (Iterator<Task> it = lane.mSaves.iterator(); it.hasNext();) {
+                final Task save = it.next();
+                if (save.mDraft.equals(task.mDraft)) {
+                    it.remove();
+                    superseded = save;
+                    mPending--;
+                    releaseDraft(save.mDraft);
+                    break;
+                }
+            }
+
+            task.mScheduledTime = SystemClock.elapsedRealtime();
+            (task.mSend ? lane.mSends : lane.mSaves).add(task);
+            mPending++;
+            final Integer count = mDraftTaskCounts.get(task.mDraft);
+            mDraftTaskCounts.put(task.mDraft, count == null ? 1 : count + 1);
+            mDraftLanes.put(task.mDraft, lane);
+            if (!lane.mPosted) {
+                lane.mPosted = true;
+                lane.mHandler.post(lane);
+            }
+        }
+        if (superseded != null) {
+            Metrics.SAVES_SUPERSEDED.increment();
+            superseded.onSuperseded();
+        }
+    }
+
+    // Requires mLock
+    private void releaseDraft(Object draft) {
+        final int count = mDraftTaskCounts.get(draft) - 1;
+        if (count == 0) {
+            mDraftTaskCounts.remove(draft);
+            mDraftLanes.remove(draft);
+        } else {
+            mDraftTaskCounts.put(draft, count);
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting to run.
+     */
+    int getQueueDepth() {
+        synchronized (mLock) {
+            return mPending;
+        }
+    }
+}
@@ -83,4 +83,9 @@ class AccountDrawerItem extends DrawerItem {
     public @DrawerItemType int getType() {
         return VIEW_ACCOUNT;
     }
+
+    @Override
+    public boolean isSameAs(DrawerItem other) {
+        return super.isSameAs(other) && ((AccountDrawerItem) other).mIsSelected == mIsSelected;
+    }
 }
@@ -28,6 +28,7 @@ import com.android.mail.providers.Folder;
 import com.android.mail.ui.ControllableActivity;
 import com.android.mail.ui.FolderListFragment;
 import com.android.mail.utils.FolderUri;
+import com.google.common.base.Objects;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -226,6 +227,18 @@ public abstract class DrawerItem {
 
     public abstract @DrawerItemType int getType();
 
+    /**
+     * Returns whether this item shows exactly what <code>other</code> does, so that a view bound
+     * to <code>other</code> doesn't need to be bound to this item again.
+     * @param other an item, possibly null, from an earlier version of the same list
+     * @return true if this item would lead to a view identical to that of <code>other</code>
+     */
+    public boolean isSameAs(DrawerItem other) {
+        return other != null && other.getClass() == getClass()
+                && other.mItemCategory == mItemCategory
+                && Objects.equal(other.mAccount, mAccount);
+    }
+
     public void onClick(View v) {}
 }
 
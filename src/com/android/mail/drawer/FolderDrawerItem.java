@@ -76,4 +76,9 @@ class FolderDrawerItem extends DrawerItem {
     public @DrawerItemType int getType() {
         return VIEW_FOLDER;
     }
+
+    @Override
+    public boolean isSameAs(DrawerItem other) {
+        return super.isSameAs(other) && FolderItemView.areSameViews(mFolder, other.mFolder);
+    }
 }
@@ -71,4 +71,9 @@ class HeaderDrawerItem extends DrawerItem {
     public @DrawerItemType int getType() {
         return VIEW_HEADER;
     }
+
+    @Override
+    public boolean isSameAs(DrawerItem other) {
+        return super.isSameAs(other) && ((HeaderDrawerItem) other).mResource == mResource;
+    }
 }
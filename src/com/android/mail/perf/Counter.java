@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.perf;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count of events, cheap enough to be incremented on hot paths: it neither locks nor allocates,
+ * and threads add to different cells so they rarely contend. Create one with
+ * {@link Metrics#counter(String)}.
+ */
+public final class Counter {
+    /** Number of cells threads are spread over. Must be a power of two. */
+    private static final int STRIPES = 8;
+    /** Distance between cells, in longs, so that no two share a cache line. */
+    private static final int PADDING = 8;
+
+    private final String mName;
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    Counter(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        mCells.getAndAdd(getStripe() * PADDING, delta);
+    }
+
+    /**
+     * Returns the total. Additions made while it is summed may or may not be included.
+     */
+    public long get() {
+        long total = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            total += mCells.get(i * PADDING);
+        }
+        return total;
+    }
+
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            mCells.set(i * PADDING, 0);
+        }
+    }
+
+    /**
+     * Returns the stripe of the current thread. Thread ids are handed out in sequence, so
+     * threads created together get different stripes.
+     */
+    static int getStripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    @Override
+    public String toString() {
+        return mName + "=" + get();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The distribution of the durations of an operation, cheap enough to be recorded on hot paths:
+ * recording neither locks nor allocates. Create one with {@link Metrics#latency(String)}, and time
+ * the operation with
+ *
+ * <pre>
+ * final long start = System.nanoTime();
+ * ... operation ...
+ * histogram.recordSince(start);
+ * </pre>
+ *
+ * Durations are counted in buckets whose width grows with the duration, so that every recorded
+ * duration is known to within about 6%, from a microsecond up to {@link #MAX_MICROS}, using a
+ * fixed amount of memory.
+ */
+public final class LatencyHistogram {
+    /**
+     * Each power of two is split into this many buckets. Must be a power of two.
+     */
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    /** Longer durations, over an hour, are recorded as this. */
+    static final long MAX_MICROS = (1L << 32) - 1;
+    private static final int BUCKET_COUNT = getBucket(MAX_MICROS) + 1;
+
+    /**
+     * Immutable snapshot of a histogram.
+     */
+    public static final class Snapshot {
+        public final long count;
+        public final long totalMicros;
+        public final long maxMicros;
+        private final long[] mBuckets;
+
+        private Snapshot(long count, long totalMicros, long maxMicros, long[] buckets) {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            mBuckets = buckets;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        /**
+         * Returns the duration that <code>percentile</code> percent of the recorded durations
+         * don't exceed, or 0 if none has been recorded.
+         */
+        public long getPercentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(getBucketHighest(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "[count=" + count + " mean=" + getMeanMicros() + "us p50="
+                    + getPercentileMicros(50) + "us p90=" + getPercentileMicros(90) + "us p99="
+                    + getPercentileMicros(99) + "us max=" + maxMicros + "us]";
+        }
+    }
+
+    private final String mName;
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final Counter mTotalMicros;
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        mName = name;
+        mTotalMicros = new Counter(name);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Records the duration from <code>startNanos</code>, a {@link System#nanoTime()}, until now.
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        } else if (micros > MAX_MICROS) {
+            micros = MAX_MICROS;
+        }
+        mBuckets.getAndIncrement(getBucket(micros));
+        mTotalMicros.add(micros);
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    /**
+     * Returns the durations recorded so far. Durations recorded while the snapshot is taken may
+     * or may not be included.
+     */
+    public Snapshot getSnapshot() {
+        final long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        return new Snapshot(count, mTotalMicros.get(), mMaxMicros.get(), buckets);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mTotalMicros.reset();
+        mMaxMicros.set(0);
+    }
+
+    /**
+     * Returns the bucket of a duration. Durations under 2 * {@link #SUB_BUCKETS} each have their
+     * own bucket, and each power of two above that is split into {@link #SUB_BUCKETS} buckets.
+     */
+    static int getBucket(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // Keeps the top SUB_BUCKET_BITS + 1 bits of the duration
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (micros >>> shift);
+    }
+
+    /**
+     * Returns the shortest duration in the bucket.
+     */
+    static long getBucketLowest(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return (long) ((bucket & (SUB_BUCKETS - 1)) | SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Returns the longest duration in the bucket.
+     */
+    static long getBucketHighest(int bucket) {
+        return getBucketLowest(bucket + 1) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return mName + "=" + getSnapshot();
+    }
+}
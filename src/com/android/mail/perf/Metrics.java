@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.perf;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The counters and latency histograms of the app, which are always on. Unlike {@link Timer},
+ * recording neither logs, locks nor allocates, so they can be kept on hot paths in production.
+ * <p>
+ * Metrics are registered once, when this class is loaded, and live as long as the process. They
+ * can be read with {@link #getCounts()} and {@link #getSnapshots()}, and are included in the
+ * activity's dump:
+ *
+ * <pre>
+ * adb shell dumpsys activity &lt;package&gt;
+ * </pre>
+ */
+public final class Metrics {
+    // Guarded by Metrics.class. Declared before the metrics below, which register into them.
+    private static final LinkedHashMap<String, Counter> sCounters = Maps.newLinkedHashMap();
+    private static final LinkedHashMap<String, LatencyHistogram> sHistograms =
+            Maps.newLinkedHashMap();
+
+    /** Sanitizing the HTML of a message body. */
+    public static final LatencyHistogram SANITIZE_HTML = latency("sanitize_html");
+    /** Building the HTML of a conversation and the overlays of its messages. */
+    public static final LatencyHistogram RENDER_MESSAGE_BODIES = latency("render_message_bodies");
+    /** Querying the conversations of a folder again, in the background. */
+    public static final LatencyHistogram CONVERSATION_CURSOR_REFRESH =
+            latency("conversation_cursor_refresh");
+    /** Putting refreshed conversations in place, on the UI thread. */
+    public static final LatencyHistogram CONVERSATION_CURSOR_SYNC =
+            latency("conversation_cursor_sync");
+    /** Refreshes asked for while one was already running, so not started. */
+    public static final Counter CONVERSATION_CURSOR_REFRESHES_SKIPPED =
+            counter("conversation_cursor_refreshes_skipped");
+    /** Conversation operations queued for the underlying providers. */
+    public static final Counter CONVERSATION_OPERATIONS_QUEUED =
+            counter("conversation_operations_queued");
+    /** Queued conversation updates merged into an earlier one instead of being sent. */
+    public static final Counter CONVERSATION_OPERATIONS_COALESCED =
+            counter("conversation_operations_coalesced");
+    /** Queued conversation updates dropped because they set every column back to its original. */
+    public static final Counter CONVERSATION_OPERATIONS_CANCELLED =
+            counter("conversation_operations_cancelled");
+    /** Conversation operations sent to the underlying providers. */
+    public static final Counter CONVERSATION_OPERATIONS_APPLIED =
+            counter("conversation_operations_applied");
+    /** How long the first operation of a batch waited before the batch was sent. */
+    public static final LatencyHistogram CONVERSATION_OPERATIONS_QUEUE_WAIT =
+            latency("conversation_operations_queue_wait");
+    /** Sending a batch of conversation operations to a provider. */
+    public static final LatencyHistogram CONVERSATION_OPERATION_BATCHES =
+            latency("conversation_operation_batches");
+    /** Batches of conversation operations the provider failed to apply. */
+    public static final Counter CONVERSATION_OPERATION_BATCHES_FAILED =
+            counter("conversation_operation_batches_failed");
+    /** How long a send or save of a draft waited for its thread. */
+    public static final LatencyHistogram SEND_OR_SAVE_WAIT = latency("send_or_save_wait");
+    /** Sending or saving a draft, on its thread. */
+    public static final LatencyHistogram SEND_OR_SAVE_RUN = latency("send_or_save_run");
+    /** Saves of a draft replaced by a later send or save before they started. */
+    public static final Counter SAVES_SUPERSEDED = counter("saves_superseded");
+    /** Updating the new mail notifications of a folder. */
+    public static final LatencyHistogram UPDATE_NOTIFICATIONS = latency("update_notifications");
+    /** Notifications posted, for folders and for their conversations. */
+    public static final Counter NOTIFICATIONS_POSTED = counter("notifications_posted");
+
+    private Metrics() {
+    }
+
+    /**
+     * Registers a counter. Should be kept in a static field, since it can't be unregistered.
+     *
+     * @throws IllegalArgumentException if there already is a metric with the name
+     */
+    public static synchronized Counter counter(String name) {
+        checkNewName(name);
+        final Counter counter = new Counter(name);
+        sCounters.put(name, counter);
+        return counter;
+    }
+
+    /**
+     * Registers a latency histogram. Should be kept in a static field, since it can't be
+     * unregistered.
+     *
+     * @throws IllegalArgumentException if there already is a metric with the name
+     */
+    public static synchronized LatencyHistogram latency(String name) {
+        checkNewName(name);
+        final LatencyHistogram histogram = new LatencyHistogram(name);
+        sHistograms.put(name, histogram);
+        return histogram;
+    }
+
+    private static void checkNewName(String name) {
+        if (sCounters.containsKey(name) || sHistograms.containsKey(name)) {
+            throw new IllegalArgumentException("Metric already registered: " + name);
+        }
+    }
+
+    /**
+     * Returns the total of each counter, by name.
+     */
+    public static synchronized ImmutableMap<String, Long> getCounts() {
+        final ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+        for (Counter counter : sCounters.values()) {
+            counts.put(counter.getName(), counter.get());
+        }
+        return counts.build();
+    }
+
+    /**
+     * Returns a snapshot of each latency histogram, by name.
+     */
+    public static synchronized ImmutableMap<String, LatencyHistogram.Snapshot> getSnapshots() {
+        final ImmutableMap.Builder<String, LatencyHistogram.Snapshot> snapshots =
+                ImmutableMap.builder();
+        for (LatencyHistogram histogram : sHistograms.values()) {
+            snapshots.put(histogram.getName(), histogram.getSnapshot());
+        }
+        return snapshots.build();
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Metrics:");
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : getSnapshots().entrySet()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(entry.getKey());
+            writer.print(" ");
+            writer.println(entry.getValue());
+        }
+        for (Map.Entry<String, Long> entry : getCounts().entrySet()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(entry.getKey());
+            writer.print(" ");
+            writer.println(entry.getValue());
+        }
+    }
+
+    /**
+     * Sets all the metrics back to zero.
+     */
+    @VisibleForTesting
+    static synchronized void reset() {
+        for (Counter counter : sCounters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -24,22 +24,14 @@ import com.google.common.collect.Maps;
 
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Performance timing utilities for Gmail.
+ * Performance timing utilities for Gmail, for profiling during development. They are compiled
+ * out, see {@link #ENABLE_TIMER}; timings worth keeping in production are recorded in
+ * {@link Metrics} instead.
  *
- * There are two main ways to log performance. For simple, one off events, the static methods
- * {@link #startTiming} and {@link #stopTiming} are sufficient:
- *
- * <pre>
- * Timer.startTiming("myEvent");
- * ... code for myEvent ...
- * Timer.stopTiming("myEvent");
- * </pre>
- *
- * The other way is to instantiate a timer that can be passed around, and started and paused. The
- * timer will accumulate the results for each tag, and dump the results when asked.
+ * A timer can be passed around, and started and paused. The timer will accumulate the results for
+ * each tag, and dump the results when asked.
  *
  * <pre>
  * Timer timer = new Timer();
@@ -175,54 +167,6 @@ public class Timer {
         }
     }
 
-    /**
-     * Used for timing one off events.
-     */
-    private static Map<String, PerformancePoint> sPerformanceCollector =
-            new ConcurrentHashMap<String, PerformancePoint>();
-
-    /**
-     * Starts a one-off timer for an event. The event is denoted by {@code tag} and only one event
-     * of that tag may be timed at a given time.
-     */
-    public static void startTiming(String tag) {
-        if (ENABLE_TIMER) {
-            sPerformanceCollector.put(tag, new PerformancePoint());
-        }
-    }
-
-    /**
-     * Stops a one-off timer for an event indicated by {@code tag}.
-     */
-    public static void stopTiming(String tag) {
-        if (ENABLE_TIMER) {
-            stopTiming(tag, 1 /* one subiteration */);
-        }
-    }
-
-    /**
-     * Stops a one-off timer for an event indicated by {@code tag}, and indicates that the event
-     * consisted of {@code numSubIterations} sub-events, so that performance output will be denoted
-     * as such.
-     */
-    public static void stopTiming(String tag, int numSubIterations) {
-        if (ENABLE_TIMER) {
-            PerformancePoint endPoint = new PerformancePoint();
-            PerformancePoint startPoint = sPerformanceCollector.get(tag);
-            if (startPoint == null) {
-                return;
-            }
-            long cpuDurationNanos = endPoint.mCpuTimeNanos - startPoint.mCpuTimeNanos;
-            long wallDurationMillis = endPoint.mWallTimeMillis - startPoint.mWallTimeMillis;
-            // Make sure cpu Duration is non 0
-            if (cpuDurationNanos == 0) {
-                cpuDurationNanos = 1;
-            }
-
-            dumpTimings(tag, numSubIterations, cpuDurationNanos, wallDurationMillis);
-        }
-    }
-
     private static void dumpTimings(String tag, int numSubIterations,
             long cpuDurationNanos, long wallDurationMillis) {
 
@@ -26,8 +26,10 @@ import android.os.Parcelable;
 import android.text.TextUtils;
 
 import com.android.emailcommon.internet.MimeUtility;
+import com.android.emailcommon.mail.Body;
 import com.android.emailcommon.mail.MessagingException;
 import com.android.emailcommon.mail.Part;
+import com.android.emailcommon.mail.TransferableBody;
 import com.android.mail.browse.MessageAttachmentBar;
 import com.android.mail.providers.UIProvider.AttachmentColumns;
 import com.android.mail.providers.UIProvider.AttachmentDestination;
@@ -46,6 +48,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -281,9 +284,16 @@ public class Attachment implements Parcelable {
 
             // save the file in the cache
             try {
-                final InputStream in = part.getBody().getInputStream();
+                final Body body = part.getBody();
+                final InputStream in = body.getInputStream();
                 final OutputStream out = resolver.openOutputStream(uri, "rwt");
-                size = IOUtils.copy(in, out);
+                if (body instanceof TransferableBody && out instanceof FileOutputStream) {
+                    // Let the kernel copy the part instead of pulling it through the heap
+                    size = (int) ((TransferableBody) body).transferTo(
+                            ((FileOutputStream) out).getChannel());
+                } else {
+                    size = IOUtils.copy(in, out);
+                }
                 downloadedSize = size;
                 in.close();
                 out.close();
@@ -611,7 +611,8 @@ public class Conversation implements Parcelable {
         }
         for (String key : values.keySet()) {
             final Object val = values.get(key);
-            LogUtils.i(LOG_TAG, "Conversation: applying cached value to col=%s val=%s", key,
+            // Once per value of every cached row, so not logged by default
+            LogUtils.d(LOG_TAG, "Conversation: applying cached value to col=%s val=%s", key,
                     val);
             if (ConversationColumns.READ.equals(key)) {
                 read = (Integer) val != 0;
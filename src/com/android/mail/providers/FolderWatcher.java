@@ -23,29 +23,28 @@ import android.net.Uri;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 
-import com.android.mail.content.ObjectCursor;
-import com.android.mail.content.ObjectCursorLoader;
 import com.android.mail.ui.AbstractActivityController;
 import com.android.mail.ui.RestrictedActivity;
 import com.android.mail.utils.LogUtils;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableMap;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A container to keep a list of Folder objects, with the ability to automatically keep in sync with
  * the folders in the providers.
+ * <p>
+ * The inboxes of all the accounts are read by a single {@link InboxUnreadLoader}, so changes that
+ * touch several accounts at once are read in one pass.
  */
 public class FolderWatcher {
-    public static final String FOLDER_URI = "FOLDER-URI";
+    /** The loader reading all the inboxes. */
+    private static final int LOADER_ID = AbstractActivityController.LAST_LOADER_ID;
     /** List of URIs that are watched. */
-    private final List<Uri> mUris = new ArrayList<Uri>();
-    /** Map returning the default inbox folder for each URI */
-    private final Map<Uri, Folder> mInboxMap = new HashMap<Uri, Folder>();
+    private List<Uri> mUris = new ArrayList<Uri>();
+    /** The default inbox folder for each URI, as of the last load. */
+    private ImmutableMap<Uri, Folder> mSnapshot = ImmutableMap.of();
     private final RestrictedActivity mActivity;
     /** Handles folder callbacks and reads unread counts. */
     private final UnreadLoads mUnreadCallback = new UnreadLoads();
@@ -87,93 +86,13 @@ public class FolderWatcher {
         for (final Account account : allAccounts) {
             newAccounts.add(account.settings.defaultInbox);
         }
-        // Stop watching accounts not in the new list.
-        final List<Uri> uriCopy = Collections.unmodifiableList(Lists.newArrayList(mUris));
-        for (final Uri previous : uriCopy) {
-            if (!newAccounts.contains(previous)) {
-                stopWatching(previous);
-            }
-        }
-        // Add accounts in the new list, that are not already watched.
-        for (final Uri fresh : newAccounts) {
-            if (!mUris.contains(fresh)) {
-                startWatching(fresh);
-            }
-        }
-    }
-
-    /**
-     * Starts watching the given URI for changes. It is NOT safe to call this method repeatedly
-     * for the same URI.
-     * @param uri the URI for an inbox whose unread count is to be watched
-     */
-    private void startWatching(Uri uri) {
-        final int location = insertAtNextEmptyLocation(uri);
-        LogUtils.d(LOG_TAG, "Watching %s, at position %d.", uri, location);
-        // No inbox folder yet, put a safe placeholder for now.
-        mInboxMap.put(uri, null);
+        LogUtils.d(LOG_TAG, "Watching %d inboxes.", newAccounts.size());
+        mUris = newAccounts;
         final LoaderManager lm = mActivity.getLoaderManager();
-        final Bundle args = new Bundle();
-        args.putString(FOLDER_URI, uri.toString());
-        lm.initLoader(getLoaderFromPosition(location), args, mUnreadCallback);
-    }
-
-    /**
-     * Locates the next empty position in {@link #mUris} and inserts the URI there, returning the
-     * location.
-     * @return location where the URI was inserted.
-     */
-    private int insertAtNextEmptyLocation(Uri newElement) {
-        Uri uri;
-        int location = -1;
-        for (int size = mUris.size(), i = 0; i < size; i++) {
-            uri = mUris.get(i);
-            // Hole in the list, use this position
-            if (uri == null) {
-                location = i;
-                break;
-            }
-        }
-
-        if (location < 0) {
-            // No hole found, return the current size;
-            location = mUris.size();
-            mUris.add(location, newElement);
-        } else {
-            mUris.set(location, newElement);
-        }
-        return location;
-    }
-
-    /**
-     * Returns the loader ID for a position inside the {@link #mUris} table.
-     * @param position position in the {@link #mUris} list
-     * @return a loader id
-     */
-    private static int getLoaderFromPosition(int position) {
-        return position + AbstractActivityController.LAST_LOADER_ID;
-    }
-
-    /**
-     * Stops watching the given URI for folder changes. Subsequent calls to
-     * {@link #getUnreadCount(Account)} for this uri will return null.
-     * @param uri the URI for a folder
-     */
-    private void stopWatching(Uri uri) {
-        if (uri == null) {
-            return;
-        }
-
-        final int id = mUris.indexOf(uri);
-        // Does not exist in the list, we have stopped watching it already.
-        if (id < 0) {
-            return;
-        }
-        // Destroy the loader before removing references to the object.
-        final LoaderManager lm = mActivity.getLoaderManager();
-        lm.destroyLoader(getLoaderFromPosition(id));
-        mInboxMap.remove(uri);
-        mUris.set(id, null);
+        // Reconnects to the loader of a previous instance of the activity, if there is one
+        lm.initLoader(LOADER_ID, null, mUnreadCallback);
+        ((InboxUnreadLoader) lm.<InboxUnreadLoader.Result>getLoader(LOADER_ID))
+                .setInboxUris(newAccounts);
     }
 
     /**
@@ -194,11 +113,8 @@ public class FolderWatcher {
 
     public final Folder getDefaultInbox(Account account) {
         final Uri uri = account.settings.defaultInbox;
-        if (mInboxMap.containsKey(uri)) {
-            final Folder candidate = mInboxMap.get(uri);
-            if (candidate != null) {
-                return candidate;
-            }
+        if (mUris.contains(uri)) {
+            return mSnapshot.get(uri);
         }
         return null;
     }
@@ -206,31 +122,29 @@ public class FolderWatcher {
     /**
      * Class to perform {@link LoaderManager.LoaderCallbacks} for populating unread counts.
      */
-    private class UnreadLoads implements LoaderManager.LoaderCallbacks<ObjectCursor<Folder>> {
-        // TODO(viki): Fix http://b/8494129 and read only the URI and unread count.
-        /** Only interested in the folder unread count, but asking for everything due to
-         * bug 8494129. */
-        private final String[] projection = UIProvider.FOLDERS_PROJECTION;
-
+    private class UnreadLoads
+            implements LoaderManager.LoaderCallbacks<InboxUnreadLoader.Result> {
         @Override
-        public Loader<ObjectCursor<Folder>> onCreateLoader(int id, Bundle args) {
-            final Uri uri = Uri.parse(args.getString(FOLDER_URI));
-            return new ObjectCursorLoader<Folder>(mActivity.getActivityContext(), uri, projection,
-                    Folder.FACTORY);
+        public Loader<InboxUnreadLoader.Result> onCreateLoader(int id, Bundle args) {
+            return new InboxUnreadLoader(mActivity.getActivityContext(), mUris);
         }
 
         @Override
-        public void onLoadFinished(Loader<ObjectCursor<Folder>> loader, ObjectCursor<Folder> data) {
-            if (data == null || data.getCount() <= 0 || !data.moveToFirst()) {
+        public void onLoadFinished(Loader<InboxUnreadLoader.Result> loader,
+                InboxUnreadLoader.Result data) {
+            if (data == null) {
                 return;
             }
-            final Folder f = data.getModel();
-            final Uri uri = f.folderUri.getComparisonUri();
-            final int unreadCount = f.unreadCount;
-            final Folder previousFolder = mInboxMap.get(uri);
-            final boolean unreadCountChanged = previousFolder == null
-                    || unreadCount != previousFolder.unreadCount;
-            mInboxMap.put(uri, f);
+            final ImmutableMap<Uri, Folder> previous = mSnapshot;
+            mSnapshot = data.inboxes;
+            boolean unreadCountChanged = previous.size() != mSnapshot.size();
+            for (Uri uri : mSnapshot.keySet()) {
+                final Folder previousFolder = previous.get(uri);
+                if (previousFolder == null
+                        || mSnapshot.get(uri).unreadCount != previousFolder.unreadCount) {
+                    unreadCountChanged = true;
+                }
+            }
             // Once we have updated data, we notify the parent class that something new appeared.
             if (unreadCountChanged) {
                 mConsumer.onUnreadCountChange();
@@ -238,7 +152,7 @@ public class FolderWatcher {
         }
 
         @Override
-        public void onLoaderReset(Loader<ObjectCursor<Folder>> loader) {
+        public void onLoaderReset(Loader<InboxUnreadLoader.Result> loader) {
             // Do nothing.
         }
     }
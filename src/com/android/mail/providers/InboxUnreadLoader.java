@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+
+/**
+ * Loads the inboxes of all the accounts in one pass, for their unread and unseen counts. A change
+ * to any of them reloads them all, at most once per {@link #UPDATE_THROTTLE_MS}, so a sync that
+ * touches several accounts causes one reload rather than one per account.
+ */
+public class InboxUnreadLoader extends AsyncTaskLoader<InboxUnreadLoader.Result> {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /** Changes that arrive closer together than this are loaded together. */
+    private static final long UPDATE_THROTTLE_MS = 500;
+
+    // TODO(viki): Fix http://b/8494129 and read only the URI and unread count.
+    /** Only interested in the folder unread count, but asking for everything due to
+     * bug 8494129. */
+    private static final String[] PROJECTION = UIProvider.FOLDERS_PROJECTION;
+
+    /**
+     * The inboxes as of one load, which don't change afterwards.
+     */
+    public static class Result {
+        /**
+         * The inbox folder of each inbox URI, in the order of the URIs. An inbox shared by several
+         * accounts appears once.
+         */
+        public final ImmutableMap<Uri, Folder> inboxes;
+        /** Kept open, to be told about changes. */
+        private final List<Cursor> mCursors;
+
+        private Result(ImmutableMap<Uri, Folder> inboxes, List<Cursor> cursors) {
+            this.inboxes = inboxes;
+            mCursors = cursors;
+        }
+
+        private void close() {
+            for (Cursor cursor : mCursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private ImmutableList<Uri> mInboxUris;
+    private Result mResult;
+
+    public InboxUnreadLoader(Context context, List<Uri> inboxUris) {
+        super(context);
+        mInboxUris = ImmutableList.copyOf(inboxUris);
+        setUpdateThrottle(UPDATE_THROTTLE_MS);
+    }
+
+    /**
+     * Changes the inboxes to load, and reloads them if they are different.
+     * Must be called from the UI thread.
+     */
+    public void setInboxUris(List<Uri> inboxUris) {
+        if (mInboxUris.equals(inboxUris)) {
+            return;
+        }
+        mInboxUris = ImmutableList.copyOf(inboxUris);
+        onContentChanged();
+    }
+
+    /* Runs on a worker thread */
+    @Override
+    public Result loadInBackground() {
+        // Accounts may share an inbox, which is read once
+        final ImmutableSet<Uri> inboxUris = ImmutableSet.copyOf(mInboxUris);
+        final ImmutableMap.Builder<Uri, Folder> inboxes = ImmutableMap.builder();
+        final ImmutableList.Builder<Cursor> cursors = ImmutableList.builder();
+        for (Uri uri : inboxUris) {
+            final Cursor cursor = getContext().getContentResolver().query(uri, PROJECTION,
+                    null, null, null);
+            if (cursor == null) {
+                continue;
+            }
+            cursor.registerContentObserver(mObserver);
+            cursors.add(cursor);
+            if (cursor.moveToFirst()) {
+                inboxes.put(uri, Folder.FACTORY.createFromCursor(cursor));
+            }
+        }
+        LogUtils.d(LOG_TAG, "Loaded %d inboxes", inboxUris.size());
+        return new Result(inboxes.build(), cursors.build());
+    }
+
+    /* Runs on the UI thread */
+    @Override
+    public void deliverResult(Result result) {
+        if (isReset()) {
+            // An async query came in while the loader is stopped
+            if (result != null) {
+                result.close();
+            }
+            return;
+        }
+        final Result oldResult = mResult;
+        mResult = result;
+
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+
+        if (oldResult != null && oldResult != result) {
+            oldResult.close();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        // Attempt to cancel the current load task if possible.
+        cancelLoad();
+    }
+
+    @Override
+    public void onCanceled(Result result) {
+        if (result != null) {
+            result.close();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        // Ensure the loader is stopped
+        onStopLoading();
+
+        if (mResult != null) {
+            mResult.close();
+        }
+        mResult = null;
+    }
+}
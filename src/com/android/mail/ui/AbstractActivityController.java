@@ -426,7 +426,7 @@ public abstract class AbstractActivityController implements ActivityController,
     /**
      * Guaranteed to be the last loader ID used by the activity. Loaders are owned by Activity or
      * fragments, and within an activity, loader IDs need to be unique. A hack to ensure that the
-     * {@link FolderWatcher} can create its folder loaders without clashing with the IDs of those
+     * {@link FolderWatcher} can create its inbox loader without clashing with the IDs of those
      * of the {@link AbstractActivityController}. Currently, the {@link FolderWatcher} is the only
      * other class that uses this activity's LoaderManager. If another class needs activity-level
      * loaders, consider consolidating the loaders in a central location: a UI-less fragment
@@ -2169,6 +2169,8 @@ public abstract class AbstractActivityController implements ActivityController,
     public void onPause() {
         mHaveAccountList = false;
         enableNotifications();
+        // Don't leave conversation changes queued while the process may be killed
+        ConversationCursor.flushPendingOperations();
     }
 
     @Override
@@ -2273,6 +2275,7 @@ public abstract class AbstractActivityController implements ActivityController,
         // unregister the ViewPager's observer on the conversation cursor
         mPagerController.onDestroy();
         mActionBarController.onDestroy();
+        ConversationCursor.flushPendingOperations();
         mRecentFolderList.destroy();
         mDestroyed = true;
         mHandler.removeCallbacks(mLogServiceChecker);
@@ -264,7 +264,7 @@ public class AnimatedAdapter extends SimpleCursorAdapter {
         mSendersImagesCache = mActivity.getSenderImageCache();
 
         mContactResolver =
-                mActivity.getContactResolver(mContext.getContentResolver(), mSendersImagesCache);
+                mActivity.getContactResolver(mContext, mSendersImagesCache);
 
         mHandler = new Handler();
         if (sDismissAllShortDelay == -1) {
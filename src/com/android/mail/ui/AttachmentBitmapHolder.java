@@ -18,6 +18,7 @@
 package com.android.mail.ui;
 
 import android.content.ContentResolver;
+import android.content.Context;
 import android.graphics.Bitmap;
 
 /**
@@ -30,6 +31,7 @@ public interface AttachmentBitmapHolder {
     public void setThumbnail(Bitmap result);
     public void setThumbnailToDefault();
     public ContentResolver getResolver();
+    public Context getContext();
     public boolean bitmapSetToDefault();
     public void thumbnailLoadFailed();
 }
@@ -17,7 +17,7 @@
 
 package com.android.mail.ui;
 
-import android.content.ContentResolver;
+import android.content.Context;
 
 import com.android.bitmap.BitmapCache;
 import com.android.mail.bitmap.ContactResolver;
@@ -110,7 +110,7 @@ public interface ControllableActivity extends RestrictedActivity,
 
     ContactLoaderCallbacks getContactLoaderCallbacks();
 
-    ContactResolver getContactResolver(ContentResolver resolver, BitmapCache bitmapCache);
+    ContactResolver getContactResolver(Context context, BitmapCache bitmapCache);
 
     BitmapCache getSenderImageCache();
     void resetSenderImageCache();
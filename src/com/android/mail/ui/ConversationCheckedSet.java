@@ -22,16 +22,15 @@ import android.os.Parcelable;
 
 import com.android.mail.browse.ConversationCursor;
 import com.android.mail.providers.Conversation;
+import com.android.mail.utils.LongHashSet;
+import com.android.mail.utils.LongObjectHashMap;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -65,7 +64,8 @@ public class ConversationCheckedSet implements Parcelable {
 
     private final Object mLock = new Object();
     /** Map of conversation ID to conversation objects. Every selected conversation is here. */
-    private final HashMap<Long, Conversation> mInternalMap = new HashMap<Long, Conversation>();
+    private final LongObjectHashMap<Conversation> mInternalMap =
+            new LongObjectHashMap<Conversation>();
     /** Map of Conversation URI to Conversation ID. */
     private final BiMap<String, Long> mConversationUriToIdMap = HashBiMap.create();
     /** All objects that are interested in changes to the selected set. */
@@ -121,7 +121,7 @@ public class ConversationCheckedSet implements Parcelable {
      * @param key the id of the conversation
      * @return true if the key exists in this selected set.
      */
-    private boolean containsKey(Long key) {
+    private boolean containsKey(long key) {
         synchronized (mLock) {
             return mInternalMap.containsKey(key);
         }
@@ -179,7 +179,7 @@ public class ConversationCheckedSet implements Parcelable {
         }
     }
 
-    private void put(Long id, Conversation info) {
+    private void put(long id, Conversation info) {
         synchronized (mLock) {
             final boolean initiallyEmpty = mInternalMap.isEmpty();
             mInternalMap.put(id, info);
@@ -194,21 +194,22 @@ public class ConversationCheckedSet implements Parcelable {
     }
 
     /** @see java.util.HashMap#remove */
-    private void remove(Long id) {
+    private void remove(long id) {
         synchronized (mLock) {
-            removeAll(Collections.singleton(id));
+            removeAll(new long[] { id });
         }
     }
 
-    private void removeAll(Collection<Long> ids) {
+    private void removeAll(long[] ids) {
         synchronized (mLock) {
             final boolean initiallyNotEmpty = !mInternalMap.isEmpty();
 
             final BiMap<Long, String> inverseMap = mConversationUriToIdMap.inverse();
 
-            for (Long id : ids) {
-                mInternalMap.remove(id);
-                inverseMap.remove(id);
+            for (long id : ids) {
+                if (mInternalMap.remove(id) != null) {
+                    inverseMap.remove(id);
+                }
             }
 
             ArrayList<ConversationSetObserver> observersCopy = Lists.newArrayList(mObservers);
@@ -263,10 +264,12 @@ public class ConversationCheckedSet implements Parcelable {
         }
     }
 
-    /** @see java.util.HashMap#keySet() */
-    public Set<Long> keySet() {
+    /**
+     * Returns the ids of the selected conversations, in no particular order.
+     */
+    public long[] keys() {
         synchronized (mLock) {
-            return mInternalMap.keySet();
+            return mInternalMap.keys();
         }
     }
 
@@ -326,7 +329,7 @@ public class ConversationCheckedSet implements Parcelable {
             final Set<String> deletedConversations = cursor.getDeletedItems();
             // For each of the uris in the deleted set, add the conversation id to the
             // itemsToRemoveFromBatch set.
-            final Set<Long> itemsToRemoveFromBatch = Sets.newHashSet();
+            final LongHashSet itemsToRemoveFromBatch = new LongHashSet();
             for (String conversationUri : deletedConversations) {
                 final Long conversationId = mConversationUriToIdMap.get(conversationUri);
                 if (conversationId != null) {
@@ -334,31 +337,17 @@ public class ConversationCheckedSet implements Parcelable {
                 }
             }
 
-            // Get the set of the items that had been in the batch
-            final Set<Long> batchConversationToCheck = new HashSet<Long>(keySet());
-
-            // Remove all of the items that we know are missing.  This will leave the items where
-            // we need to check for existence in the cursor
-            batchConversationToCheck.removeAll(itemsToRemoveFromBatch);
-            // At this point batchConversationToCheck contains the conversation ids for the
-            // conversations that had been in the batch selection, with the items we know have been
-            // deleted removed.
-
-            // This set contains the conversation ids that are in the conversation cursor
-            final Set<Long> cursorConversationIds = cursor.getConversationIds();
-
-            // We want to remove all of the valid items that are in the conversation cursor, from
-            // the batchConversations to check.  The goal is after this block, anything remaining
-            // would be items that don't exist in the conversation cursor anymore.
-            if (!batchConversationToCheck.isEmpty() && cursorConversationIds != null) {
-                batchConversationToCheck.removeAll(cursorConversationIds);
+            // Any of the items that had been in the batch that we don't already know to be
+            // deleted, and that don't exist in the conversation cursor anymore, are to be removed
+            // from the selected conversation set as well
+            for (long conversationId : mInternalMap.keys()) {
+                if (!itemsToRemoveFromBatch.contains(conversationId)
+                        && !cursor.containsConversationId(conversationId)) {
+                    itemsToRemoveFromBatch.add(conversationId);
+                }
             }
 
-            // At this point any of the item that are remaining in the batchConversationToCheck set
-            // are to be removed from the selected conversation set
-            itemsToRemoveFromBatch.addAll(batchConversationToCheck);
-
-            removeAll(itemsToRemoveFromBatch);
+            removeAll(itemsToRemoveFromBatch.toArray());
         }
     }
 
@@ -75,6 +75,7 @@ import com.android.mail.browse.SuperCollapsedBlock;
 import com.android.mail.browse.WebViewContextMenu;
 import com.android.mail.compose.ComposeActivity;
 import com.android.mail.content.ObjectCursor;
+import com.android.mail.perf.Metrics;
 import com.android.mail.print.PrintUtils;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.Conversation;
@@ -672,7 +673,9 @@ public class ConversationViewFragment extends AbstractConversationViewFragment i
     }
 
     private void renderConversation(MessageCursor messageCursor) {
+        final long start = System.nanoTime();
         final String convHtml = renderMessageBodies(messageCursor, mEnableContentReadySignal);
+        Metrics.RENDER_MESSAGE_BODIES.recordSince(start);
         timerMark("rendered conversation");
 
         if (DEBUG_DUMP_CONVERSATION_HTML) {
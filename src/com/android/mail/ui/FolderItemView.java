@@ -20,6 +20,7 @@ import android.graphics.Color;
 import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.RoundRectShape;
 import android.graphics.drawable.shapes.Shape;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.ImageView;
@@ -104,7 +105,12 @@ public class FolderItemView extends LinearLayout {
                 && a.name.equals(b.name)
                 && a.hasChildren == b.hasChildren
                 && a.unseenCount == b.unseenCount
-                && a.unreadCount == b.unreadCount));
+                && a.unreadCount == b.unreadCount
+                && a.totalCount == b.totalCount
+                && a.type == b.type
+                && a.capabilities == b.capabilities
+                && a.iconResId == b.iconResId
+                && TextUtils.equals(a.bgColor, b.bgColor)));
     }
 
     public void bind(final Folder folder, final FolderUri parentUri) {
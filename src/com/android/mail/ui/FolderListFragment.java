@@ -64,6 +64,7 @@ import com.android.mail.utils.FolderUri;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.Utils;
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
@@ -325,8 +326,7 @@ public class FolderListFragment extends ListFragment implements
                 0 : avatarSize * avatarSize * IMAGE_CACHE_COUNT,
                 AVATAR_IMAGES_PREVIEWS_CACHE_NON_POOLED_FRACTION,
                 AVATAR_IMAGES_PREVIEWS_CACHE_NULL_CAPACITY);
-        mContactResolver = new ContactResolver(getActivity().getContentResolver(),
-                mImagesCache);
+        mContactResolver = new ContactResolver(getActivity(), mImagesCache);
 
         if (mMiniDrawerEnabled) {
             setupMiniDrawerAccountsAdapter();
@@ -919,10 +919,7 @@ public class FolderListFragment extends ListFragment implements
             final boolean isSelected =
                     item.isHighlighted(mSelectedFolderUri, mSelectedDrawerItemCategory);
             if (type == DrawerItem.VIEW_FOLDER) {
-                mListView.setItemChecked(
-                        (mAccountsAdapter != null ? mAccountsAdapter.getCount() : 0) +
-                        mHeaderAdapter.getCount() +
-                        position + mListView.getHeaderViewsCount(), isSelected);
+                mListView.setItemChecked(getListPosition(position), isSelected);
             }
             // If this is the current folder, also check to verify that the unread count
             // matches what the action bar shows.
@@ -983,13 +980,24 @@ public class FolderListFragment extends ListFragment implements
             return folderList;
         }
 
+        /**
+         * Returns the position in {@link #mListView} of the item at <code>position</code> in
+         * this adapter.
+         */
+        private int getListPosition(int position) {
+            return (mAccountsAdapter != null ? mAccountsAdapter.getCount() : 0) +
+                    mHeaderAdapter.getCount() +
+                    position + mListView.getHeaderViewsCount();
+        }
+
         /**
          * Responsible for verifying mCursor, and ensuring any recalculate
-         * conditions are met. Also calls notifyDataSetChanged once it's finished
+         * conditions are met. Also updates the list views once it's finished
          * populating {@link com.android.mail.ui.FolderListFragment.FolderAdapter#mItemList}
          */
         private void rebuildFolderList() {
             final boolean oldInboxPresent = mInboxPresent;
+            final List<DrawerItem> oldItemList = mItemList;
             mItemList = recalculateListFolders();
             if (mAccountController != null && mInboxPresent && !oldInboxPresent) {
                 // We didn't have an inbox folder before, but now we do. This can occur when
@@ -999,8 +1007,50 @@ public class FolderListFragment extends ListFragment implements
                 // user will need to manually switch to the inbox. See b/13793316
                 mAccountController.switchToDefaultInboxOrChangeAccount(mCurrentAccount);
             }
-            // Ask the list to invalidate its views.
-            notifyDataSetChanged();
+            // Most reloads only change some unread counts, so rebind just the rows that changed
+            // when possible rather than asking the list to invalidate all its views.
+            if (!rebindChangedItems(oldItemList)) {
+                notifyDataSetChanged();
+            }
+        }
+
+        /**
+         * Compares {@link #mItemList} to the items it replaced and, if they are the same folders
+         * and headers in the same order, binds again only the visible views of those that have
+         * changed. Views that aren't visible are bound when they are next shown.
+         * @param oldItemList the items the list views were last bound to
+         * @return false if items were added, removed or moved, so all the views must be bound
+         *         again
+         */
+        private boolean rebindChangedItems(List<DrawerItem> oldItemList) {
+            if (mListView == null || oldItemList.size() != mItemList.size()) {
+                return false;
+            }
+            final List<Integer> changed = Lists.newArrayList();
+            for (int i = 0; i < mItemList.size(); i++) {
+                final DrawerItem oldItem = oldItemList.get(i);
+                final DrawerItem item = mItemList.get(i);
+                if (oldItem.getType() != item.getType()
+                        || oldItem.mItemCategory != item.mItemCategory
+                        || !Objects.equal(oldItem.mFolder, item.mFolder)) {
+                    return false;
+                }
+                if (!item.isSameAs(oldItem)) {
+                    changed.add(i);
+                }
+            }
+
+            final int firstVisible = mListView.getFirstVisiblePosition();
+            for (int position : changed) {
+                // Null if the item isn't visible
+                final View view = mListView.getChildAt(getListPosition(position) - firstVisible);
+                if (view != null) {
+                    getView(position, view, mListView);
+                }
+            }
+            LogUtils.d(LOG_TAG, "FLF.rebindChangedItems: %d of %d items changed",
+                    changed.size(), mItemList.size());
+            return true;
         }
 
         /**
@@ -1359,8 +1409,25 @@ public class FolderListFragment extends ListFragment implements
         }
 
         public void setAccounts(List<DrawerItem> accounts) {
+            final boolean changed = !isSameList(mAccounts, accounts);
             mAccounts = accounts;
-            notifyDataSetChanged();
+            // The accounts are rebuilt on every folder reload, but rarely change. Unchanged,
+            // they don't need the whole drawer to be bound again.
+            if (changed) {
+                notifyDataSetChanged();
+            }
+        }
+
+        private boolean isSameList(List<DrawerItem> oldAccounts, List<DrawerItem> accounts) {
+            if (oldAccounts.size() != accounts.size()) {
+                return false;
+            }
+            for (int i = 0; i < accounts.size(); i++) {
+                if (!accounts.get(i).isSameAs(oldAccounts.get(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         @Override
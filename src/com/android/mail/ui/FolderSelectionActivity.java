@@ -19,7 +19,6 @@ package com.android.mail.ui;
 import android.app.Fragment;
 import android.app.FragmentTransaction;
 import android.appwidget.AppWidgetManager;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -435,7 +434,7 @@ public class FolderSelectionActivity extends AppCompatActivity implements OnClic
     }
 
     @Override
-    public ContactResolver getContactResolver(ContentResolver resolver, BitmapCache bitmapCache) {
+    public ContactResolver getContactResolver(Context context, BitmapCache bitmapCache) {
         // Unsupported
         return null;
     }
@@ -18,7 +18,6 @@
 package com.android.mail.ui;
 
 import android.app.Dialog;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
@@ -462,8 +461,8 @@ public class MailActivity extends AbstractMailActivity implements ControllableAc
     }
 
     @Override
-    public ContactResolver getContactResolver(ContentResolver resolver, BitmapCache bitmapCache) {
-        return new ContactResolver(resolver, bitmapCache);
+    public ContactResolver getContactResolver(Context context, BitmapCache bitmapCache) {
+        return new ContactResolver(context, bitmapCache);
     }
 
     @Override
@@ -30,8 +30,8 @@ import com.android.mail.providers.Settings;
 import com.android.mail.providers.UIProvider.FolderType;
 import com.android.mail.utils.FolderUri;
 import com.android.mail.utils.LogUtils;
-import com.android.mail.utils.LruCache;
 import com.android.mail.utils.Utils;
+import com.android.mail.utils.WeightedLruCache;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
@@ -57,7 +57,7 @@ public final class RecentFolderList {
     private Account mAccount = null;
 
     /** The actual cache: map of folder URIs to folder objects. */
-    private final LruCache<String, RecentFolderListEntry> mFolderCache;
+    private final WeightedLruCache<String, RecentFolderListEntry> mFolderCache;
     /**
      *  We want to show at most five recent folders
      */
@@ -129,8 +129,9 @@ public final class RecentFolderList {
      * @param context the context for the activity
      */
     public RecentFolderList(Context context) {
-        mFolderCache = new LruCache<String, RecentFolderListEntry>(
-                MAX_RECENT_FOLDERS + MAX_EXCLUDED_FOLDERS);
+        mFolderCache = new WeightedLruCache.Builder<String, RecentFolderListEntry>()
+                .maxWeight(MAX_RECENT_FOLDERS + MAX_EXCLUDED_FOLDERS)
+                .build();
         mContext = context;
     }
 
@@ -179,7 +180,7 @@ public final class RecentFolderList {
         do {
             final Folder folder = c.getModel();
             final RecentFolderListEntry entry = new RecentFolderListEntry(folder);
-            mFolderCache.putElement(folder.folderUri.fullUri.toString(), entry);
+            mFolderCache.put(folder.folderUri.fullUri.toString(), entry);
             LogUtils.v(TAG, "Account %s, Recent: %s", mAccount.getEmailAddress(), folder.name);
         } while (c.moveToPrevious());
     }
@@ -207,7 +208,7 @@ public final class RecentFolderList {
         }
 
         final RecentFolderListEntry entry = new RecentFolderListEntry(folder);
-        mFolderCache.putElement(folder.folderUri.fullUri.toString(), entry);
+        mFolderCache.put(folder.folderUri.fullUri.toString(), entry);
         new StoreRecent(mAccount, folder).execute();
     }
 
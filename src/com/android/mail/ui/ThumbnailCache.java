@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.android.mail.utils.Utils;
+import com.android.mail.utils.WeightedLruCache;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The attachment thumbnails that {@link ThumbnailLoadTask} has decoded, so that binding an
+ * {@link AttachmentTile} again, e.g. when a conversation is reopened, doesn't decode the image
+ * again.
+ * <ul>
+ * <li>Thumbnails are stored rotated and scaled down to the size they are shown at.
+ * <li>Recently used thumbnails are kept in memory, up to a total size in bytes.
+ * <li>All of them are also compressed into files in the cache directory, which are trimmed,
+ * least recently used first, to {@link #MAX_DISK_BYTES}.
+ * <li>Images are decoded into a bitmap that is reused from one decode to the next, and only the
+ * thumbnail made from it is newly allocated.
+ * </ul>
+ * Everything but {@link #getFromMemory(String)} reads or writes files, so must be called on a
+ * background thread.
+ */
+class ThumbnailCache {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    private static final String DIRECTORY = "thumbnails";
+    private static final String FILE_SUFFIX = ".thumb";
+    private static final long MAX_DISK_BYTES = 10 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 90;
+
+    private static ThumbnailCache sInstance;
+
+    private final WeightedLruCache<String, Bitmap> mMemoryCache;
+    private final File mDirectory;
+
+    // Guarded by this
+    /** Total size of the files in {@link #mDirectory}, or -1 until they have been listed. */
+    private long mDiskBytes = -1;
+
+    // Guarded by mDecodeLock
+    private final Object mDecodeLock = new Object();
+    private Bitmap mDecodeBitmap;
+
+    static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailCache(Context context) {
+        mMemoryCache = new WeightedLruCache.Builder<String, Bitmap>()
+                .maxWeight(Runtime.getRuntime().maxMemory() / 32)
+                .weigher(new WeightedLruCache.Weigher<String, Bitmap>() {
+                    @Override
+                    public int weigh(String key, Bitmap value) {
+                        return value.getByteCount();
+                    }
+                })
+                .build();
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * Returns the key of the thumbnail of the image at <code>uri</code> shown at the given size.
+     *
+     * @param version changes whenever the content at <code>uri</code> does, e.g. the number of
+     *        bytes of the attachment downloaded so far
+     */
+    static String getKey(Uri uri, int width, int height, long version) {
+        return uri + "|" + width + "x" + height + "|" + version;
+    }
+
+    /**
+     * Returns the thumbnail if it is in memory, or null.
+     */
+    Bitmap getFromMemory(String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /**
+     * Returns the thumbnail from memory or from its file, or null if it isn't cached.
+     */
+    Bitmap get(String key) {
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        final File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            LogUtils.w(LOG_TAG, "Unable to decode cached thumbnail %s", file);
+            removeFile(file);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        mMemoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Caches the thumbnail in memory and in its file.
+     */
+    void put(String key, Bitmap bitmap) {
+        mMemoryCache.put(key, bitmap);
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+
+        final File file = getFile(key);
+        FileOutputStream out = null;
+        File tempFile = null;
+        try {
+            // Written to a temporary file first so a partial thumbnail is never read
+            tempFile = File.createTempFile("thumb", null, mDirectory);
+            out = new FileOutputStream(tempFile);
+            if (bitmap.hasAlpha()) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 0, out);
+            } else {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            }
+            out.close();
+            out = null;
+            final long length = tempFile.length();
+            final long replacedLength = file.length();
+            if (tempFile.renameTo(file)) {
+                tempFile = null;
+                addDiskBytes(length - replacedLength);
+            }
+        } catch (IOException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to cache thumbnail %s", file);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LogUtils.e(LOG_TAG, e, "Failed to close thumbnail file");
+                }
+            }
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Decodes an image into a thumbnail no larger than needed to fill the given size, rotated by
+     * <code>orientation</code> degrees.
+     *
+     * @param opts the bounds of the image, from decoding it with
+     *        {@link BitmapFactory.Options#inJustDecodeBounds}
+     * @return the thumbnail, or null if the image couldn't be decoded
+     */
+    Bitmap decodeThumbnail(FileDescriptor fd, BitmapFactory.Options opts, int orientation,
+            int width, int height) {
+        final boolean rotated = orientation == 90 || orientation == 270;
+        final int imageWidth = rotated ? opts.outHeight : opts.outWidth;
+        final int imageHeight = rotated ? opts.outWidth : opts.outHeight;
+        opts.inJustDecodeBounds = false;
+        // Shrink both X and Y (but do not over-shrink)
+        // and pick the least affected dimension to ensure the thumbnail is fillable
+        // (i.e. ScaleType.CENTER_CROP)
+        final int wDivider = Math.max(imageWidth / width, 1);
+        final int hDivider = Math.max(imageHeight / height, 1);
+        opts.inSampleSize = Math.min(wDivider, hDivider);
+
+        synchronized (mDecodeLock) {
+            final Bitmap decoded = decodeReusing(fd, opts);
+            if (decoded == null) {
+                return null;
+            }
+            // Fill the size, as above, then scale down the rest of the way
+            final float scale = Math.min(1f, Math.max(
+                    (float) width / (rotated ? decoded.getHeight() : decoded.getWidth()),
+                    (float) height / (rotated ? decoded.getWidth() : decoded.getHeight())));
+            final Matrix matrix = new Matrix();
+            matrix.postScale(scale, scale);
+            matrix.postRotate(orientation);
+            final Bitmap thumbnail = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(),
+                    decoded.getHeight(), matrix, true);
+            if (thumbnail != decoded) {
+                mDecodeBitmap = decoded;
+            }
+            return thumbnail;
+        }
+    }
+
+    // Requires mDecodeLock
+    private Bitmap decodeReusing(FileDescriptor fd, BitmapFactory.Options opts) {
+        opts.inMutable = true;
+        // Before KitKat a bitmap can only be reused for an image of exactly the same size
+        if (mDecodeBitmap != null && Utils.isRunningKitkatOrLater()) {
+            final int sampledWidth = (opts.outWidth + opts.inSampleSize - 1) / opts.inSampleSize;
+            final int sampledHeight =
+                    (opts.outHeight + opts.inSampleSize - 1) / opts.inSampleSize;
+            if ((long) sampledWidth * sampledHeight * 4 <= mDecodeBitmap.getAllocationByteCount()) {
+                opts.inBitmap = mDecodeBitmap;
+            }
+        }
+        // Not reused by anything else while it is decoded into
+        mDecodeBitmap = null;
+        if (opts.inBitmap != null) {
+            try {
+                return BitmapFactory.decodeFileDescriptor(fd, null, opts);
+            } catch (IllegalArgumentException e) {
+                LogUtils.d(LOG_TAG, "Unable to reuse bitmap: %s", e.getMessage());
+                opts.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeFileDescriptor(fd, null, opts);
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory,
+                Hashing.sha1().hashBytes(key.getBytes(Charsets.UTF_8)).toString() + FILE_SUFFIX);
+    }
+
+    private synchronized void removeFile(File file) {
+        final long length = file.length();
+        if (file.delete() && mDiskBytes >= 0) {
+            mDiskBytes -= length;
+        }
+    }
+
+    /**
+     * Adds to the size of the files, deleting the least recently used ones once they are over
+     * {@link #MAX_DISK_BYTES}.
+     */
+    private synchronized void addDiskBytes(long added) {
+        if (mDiskBytes >= 0) {
+            mDiskBytes += added;
+            if (mDiskBytes <= MAX_DISK_BYTES) {
+                return;
+            }
+        }
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final List<File> thumbnails = Lists.newArrayList();
+        final Map<File, Long> lastModified = Maps.newHashMap();
+        long total = 0;
+        for (File file : files) {
+            thumbnails.add(file);
+            lastModified.put(file, file.lastModified());
+            total += file.length();
+        }
+        Collections.sort(thumbnails, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsTime = lastModified.get(lhs);
+                final long rhsTime = lastModified.get(rhs);
+                return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < thumbnails.size() && total > MAX_DISK_BYTES; i++) {
+            final File file = thumbnails.get(i);
+            final long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        mDiskBytes = total;
+    }
+}
@@ -21,7 +21,6 @@ import android.content.ContentResolver;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.util.DisplayMetrics;
@@ -47,6 +46,8 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
     private final AttachmentBitmapHolder mHolder;
     private final int mWidth;
     private final int mHeight;
+    private final ThumbnailCache mThumbnailCache;
+    private final long mVersion;
 
     public static void setupThumbnailPreview(AttachmentTile.AttachmentPreviewCache cache,
             AttachmentBitmapHolder holder, Attachment attachment, Attachment prevAttachment) {
@@ -69,6 +70,7 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
 
         final Uri thumbnailUri = attachment.thumbnailUri;
         final Uri contentUri = attachment.contentUri;
+        final ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(holder.getContext());
         final Uri uri = attachment.getIdentifierUri();
         final Uri prevUri = (prevAttachment == null) ? null : prevAttachment.getIdentifierUri();
         // begin loading a thumbnail if this is an image and either the thumbnail or the original
@@ -76,8 +78,19 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
         if ((thumbnailUri != null || contentUri != null)
                 && (holder.bitmapSetToDefault() ||
                 prevUri == null || !uri.equals(prevUri))) {
+            // A thumbnail decoded earlier needn't wait for a background thread
+            Bitmap decoded = getFromMemory(thumbnailCache, thumbnailUri, width, height,
+                    attachment.downloadedSize);
+            if (decoded == null) {
+                decoded = getFromMemory(thumbnailCache, contentUri, width, height,
+                        attachment.downloadedSize);
+            }
+            if (decoded != null) {
+                holder.setThumbnail(decoded);
+                return;
+            }
             final ThumbnailLoadTask task = new ThumbnailLoadTask(
-                    holder, width, height);
+                    holder, width, height, thumbnailCache, attachment.downloadedSize);
             task.execute(thumbnailUri, contentUri);
         } else if (thumbnailUri == null && contentUri == null) {
             // not an image, or no thumbnail exists. fall back to default.
@@ -86,10 +99,25 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
         }
     }
 
-    public ThumbnailLoadTask(AttachmentBitmapHolder holder, int width, int height) {
+    private static Bitmap getFromMemory(ThumbnailCache thumbnailCache, Uri uri, int width,
+            int height, long version) {
+        if (uri == null) {
+            return null;
+        }
+        return thumbnailCache.getFromMemory(ThumbnailCache.getKey(uri, width, height, version));
+    }
+
+    /**
+     * @param version changes whenever the content of the attachment does, so that a thumbnail
+     *        of part of an image isn't reused once the rest of it is downloaded
+     */
+    ThumbnailLoadTask(AttachmentBitmapHolder holder, int width, int height,
+            ThumbnailCache thumbnailCache, long version) {
         mHolder = holder;
         mWidth = width;
         mHeight = height;
+        mThumbnailCache = thumbnailCache;
+        mVersion = version;
     }
 
     @Override
@@ -108,6 +136,12 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
             return null;
         }
 
+        final String key = ThumbnailCache.getKey(thumbnailUri, mWidth, mHeight, mVersion);
+        final Bitmap cached = mThumbnailCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
         final int orientation = getOrientation(thumbnailUri);
 
         AssetFileDescriptor fd = null;
@@ -126,26 +160,16 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
                 return null;
             }
 
-            opts.inJustDecodeBounds = false;
-            // Shrink both X and Y (but do not over-shrink)
-            // and pick the least affected dimension to ensure the thumbnail is fillable
-            // (i.e. ScaleType.CENTER_CROP)
-            final int wDivider = Math.max(opts.outWidth / mWidth, 1);
-            final int hDivider = Math.max(opts.outHeight / mHeight, 1);
-            opts.inSampleSize = Math.min(wDivider, hDivider);
+            final Bitmap thumbnail = mThumbnailCache.decodeThumbnail(fd.getFileDescriptor(), opts,
+                    orientation, mWidth, mHeight);
 
             LogUtils.d(LOG_TAG, "in background, src w/h=%d/%d dst w/h=%d/%d, divider=%d",
                     opts.outWidth, opts.outHeight, mWidth, mHeight, opts.inSampleSize);
 
-            final Bitmap originalBitmap = BitmapFactory.decodeFileDescriptor(
-                    fd.getFileDescriptor(), null, opts);
-            if (originalBitmap != null && orientation != 0) {
-                final Matrix matrix = new Matrix();
-                matrix.postRotate(orientation);
-                return Bitmap.createBitmap(originalBitmap, 0, 0, originalBitmap.getWidth(),
-                        originalBitmap.getHeight(), matrix, true);
+            if (thumbnail != null && !isCancelled()) {
+                mThumbnailCache.put(key, thumbnail);
             }
-            return originalBitmap;
+            return thumbnail;
         } catch (Throwable t) {
             LogUtils.i(LOG_TAG, "Unable to decode thumbnail %s: %s %s", thumbnailUri,
                     t.getClass(), t.getMessage());
@@ -18,7 +18,6 @@ package com.android.mail.utils;
 import android.app.DownloadManager;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
-import android.content.res.AssetFileDescriptor.AutoCloseInputStream;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
@@ -35,7 +34,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -53,6 +53,13 @@ public class AttachmentUtils {
     private static final float MIN_CACHE_THRESHOLD = 0.25f;
     private static final int MIN_CACHE_AVAILABLE_SPACE_BYTES = 100 * 1024 * 1024;
 
+    private static final int COPY_BUFFER_SIZE = 256 * KILO;
+
+    // Guarded by AttachmentUtils.class
+    private static long sCachedCount;
+    private static long sCachedBytes;
+    private static long sCachedMillis;
+
     /**
      * Singleton map of MIME->friendly description
      * @see #getMimeTypeDisplayName(Context, String)
@@ -161,6 +168,9 @@ public class AttachmentUtils {
     /**
      * Cache the file specified by the given attachment.  This will attempt to use any
      * {@link ParcelFileDescriptor} in the Bundle parameter
+     * <p>
+     * Each call caches to a new file, which belongs to the caller: it is never shared with
+     * another attachment, and only deleted by the caller.
      * @param context
      * @param attachment  Attachment to be cached
      * @param attachmentFds optional {@link Bundle} containing {@link ParcelFileDescriptor} if the
@@ -183,20 +193,18 @@ public class AttachmentUtils {
                 return null;
             }
         }
-        InputStream inputStream = null;
+        AssetFileDescriptor fileDescriptor = null;
+        FileInputStream inputStream = null;
         FileOutputStream outputStream = null;
         File file = null;
         try {
             final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-kk:mm:ss");
             file = File.createTempFile(dateFormat.format(new Date()), ".attachment", cacheDir);
-            final AssetFileDescriptor fileDescriptor = attachmentFds != null
+            fileDescriptor = attachmentFds != null
                     && attachment.contentUri != null ? (AssetFileDescriptor) attachmentFds
                     .getParcelable(attachment.contentUri.toString())
                     : null;
-            if (fileDescriptor != null) {
-                // Get the input stream from the file descriptor
-                inputStream = new AutoCloseInputStream(fileDescriptor);
-            } else {
+            if (fileDescriptor == null) {
                 if (attachment.contentUri == null) {
                     // The contentUri of the attachment is null.  This can happen when sending a
                     // message that has been previously saved, and the attachments had been
@@ -206,32 +214,32 @@ public class AttachmentUtils {
                 }
                 // Attempt to open the file
                 if (attachment.virtualMimeType == null) {
-                    inputStream = context.getContentResolver().openInputStream(attachment.contentUri);
+                    fileDescriptor = context.getContentResolver().openAssetFileDescriptor(
+                            attachment.contentUri, "r");
                 } else {
-                    AssetFileDescriptor fd = context.getContentResolver().openTypedAssetFileDescriptor(
+                    fileDescriptor = context.getContentResolver().openTypedAssetFileDescriptor(
                             attachment.contentUri, attachment.virtualMimeType, null, null);
-                    if (fd != null) {
-                        inputStream = new AutoCloseInputStream(fd);
-                    }
                 }
-            }
-            outputStream = new FileOutputStream(file);
-            final long now = SystemClock.elapsedRealtime();
-            final byte[] bytes = new byte[1024];
-            while (true) {
-                int len = inputStream.read(bytes);
-                if (len <= 0) {
-                    break;
-                }
-                outputStream.write(bytes, 0, len);
-                if (SystemClock.elapsedRealtime() - now > READ_TIMEOUT) {
-                    throw new IOException("Timed out reading attachment data");
+                if (fileDescriptor == null) {
+                    throw new FileNotFoundException("Can't open " + attachment.contentUri);
                 }
             }
-            outputStream.flush();
-            String cachedFileUri = file.getAbsolutePath();
-            LogUtils.d(LOG_TAG, "Cached %s to %s", attachment.contentUri, cachedFileUri);
+            inputStream = fileDescriptor.createInputStream();
+            final FileChannel source = inputStream.getChannel();
+            if (fileDescriptor.getStartOffset() > 0) {
+                // Only part of the file; the channel doesn't know where it starts
+                source.position(fileDescriptor.getStartOffset());
+            }
+            outputStream = new FileOutputStream(file);
+
+            final long start = SystemClock.elapsedRealtime();
+            final long length = copy(source, fileDescriptor.getDeclaredLength(),
+                    outputStream.getChannel(), start);
+            outputStream.close();
+            outputStream = null;
+            recordCached(attachment, file, length, SystemClock.elapsedRealtime() - start);
 
+            String cachedFileUri = file.getAbsolutePath();
             final long usableSpace = cacheDir.getUsableSpace();
             if (isLowSpace(totalSpace, usableSpace)) {
                 file.delete();
@@ -239,7 +247,6 @@ public class AttachmentUtils {
                         usableSpace, totalSpace, attachment);
                 cachedFileUri = null;
             }
-
             return cachedFileUri;
         } catch (IOException | SecurityException e) {
             // Catch any exception here to allow for unexpected failures during caching se we don't
@@ -254,6 +261,8 @@ public class AttachmentUtils {
             try {
                 if (inputStream != null) {
                     inputStream.close();
+                } else if (fileDescriptor != null) {
+                    fileDescriptor.close();
                 }
                 if (outputStream != null) {
                     outputStream.close();
@@ -264,6 +273,54 @@ public class AttachmentUtils {
         }
     }
 
+    /**
+     * Copies the source to the destination through one direct buffer, large enough that the read
+     * timeout is only checked once in a while.
+     *
+     * @param length the number of bytes to copy, or less than 0 to copy up to the end
+     * @param start when the copy started, for the read timeout
+     * @return the number of bytes copied
+     */
+    private static long copy(FileChannel source, long length, FileChannel destination,
+            long start) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        long copied = 0;
+        while (length < 0 || copied < length) {
+            if (length >= 0) {
+                buffer.limit((int) Math.min(buffer.capacity(), length - copied));
+            }
+            if (source.read(buffer) < 0) {
+                break;
+            }
+            buffer.flip();
+            copied += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                destination.write(buffer);
+            }
+            buffer.clear();
+            if (SystemClock.elapsedRealtime() - start > READ_TIMEOUT) {
+                throw new IOException("Timed out reading attachment data");
+            }
+        }
+        return copied;
+    }
+
+    private static synchronized void recordCached(Attachment attachment, File file,
+            long length, long elapsed) {
+        sCachedCount++;
+        sCachedBytes += length;
+        sCachedMillis += elapsed;
+        LogUtils.d(LOG_TAG, "Cached %s to %s: %d bytes in %d ms, %d KB/s"
+                + " (total %d attachments, %d KB/s)",
+                attachment.contentUri, file, length, elapsed,
+                getKilobytesPerSecond(length, elapsed), sCachedCount,
+                getKilobytesPerSecond(sCachedBytes, sCachedMillis));
+    }
+
+    private static long getKilobytesPerSecond(long bytes, long millis) {
+        return bytes * 1000 / KILO / Math.max(millis, 1);
+    }
+
     private static boolean isLowSpace(long totalSpace, long usableSpace) {
         // For caching attachments we want to enable caching if there is
         // more than 100MB available, or if 25% of total space is free on devices
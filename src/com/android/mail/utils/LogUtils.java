@@ -16,12 +16,15 @@
 package com.android.mail.utils;
 
 import android.net.Uri;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import java.util.Formattable;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 public class LogUtils {
@@ -69,6 +72,28 @@ public class LogUtils {
 
     private static Boolean sDebugLoggingEnabledForTests = null;
 
+    /**
+     * How long the levels of a tag are cached before they are read again, so that a change with
+     * <code>adb shell setprop log.tag.&lt;tag&gt;</code> still takes effect while the app runs.
+     */
+    private static final long LEVEL_CACHE_MILLIS = 5000;
+
+    /**
+     * The lowest level that is loggable for a tag, until a time.
+     */
+    private static class CachedLevel {
+        final int mLowestLevel;
+        final long mExpiry;
+
+        CachedLevel(int lowestLevel, long expiry) {
+            mLowestLevel = lowestLevel;
+            mExpiry = expiry;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, CachedLevel> sCachedLevels =
+            new ConcurrentHashMap<String, CachedLevel>();
+
     /**
      * Enable debug logging for unit tests.
      */
@@ -170,7 +195,44 @@ public class LogUtils {
         if (MAX_ENABLED_LOG_LEVEL > level) {
             return false;
         }
-        return Log.isLoggable(tag, level) || Log.isLoggable(TAG, level);
+        if (tag == null) {
+            return Log.isLoggable(tag, level) || Log.isLoggable(TAG, level);
+        }
+        // Reading the level is a system property lookup, which is slow for a check made by
+        // every log call, so it is cached.
+        final long now = SystemClock.uptimeMillis();
+        CachedLevel cached = sCachedLevels.get(tag);
+        if (cached == null || now >= cached.mExpiry) {
+            cached = new CachedLevel(getLowestLoggableLevel(tag), now + LEVEL_CACHE_MILLIS);
+            sCachedLevels.put(tag, cached);
+        }
+        return level >= cached.mLowestLevel;
+    }
+
+    /**
+     * Makes the lowest loggable level of a tag the given one until
+     * {@link #clearLoggableLevelForTests} is called, whatever the system properties say.
+     */
+    @VisibleForTesting
+    static void setLowestLoggableLevelForTests(String tag, int level) {
+        sCachedLevels.put(tag, new CachedLevel(level, Long.MAX_VALUE));
+    }
+
+    /**
+     * Makes the level of a tag be read from the system properties again.
+     */
+    @VisibleForTesting
+    static void clearLoggableLevelForTests(String tag) {
+        sCachedLevels.remove(tag);
+    }
+
+    private static int getLowestLoggableLevel(String tag) {
+        for (int level = VERBOSE; level <= Log.ASSERT; level++) {
+            if (Log.isLoggable(tag, level) || Log.isLoggable(TAG, level)) {
+                return level;
+            }
+        }
+        return Log.ASSERT + 1;
     }
 
     /**
@@ -185,7 +247,7 @@ public class LogUtils {
      */
     public static int v(String tag, String format, Object... args) {
         if (isLoggable(tag, VERBOSE)) {
-            return Log.v(tag, String.format(format, args));
+            return Log.v(tag, formatMessage(format, args));
         }
         return 0;
     }
@@ -203,7 +265,7 @@ public class LogUtils {
      */
     public static int v(String tag, Throwable tr, String format, Object... args) {
         if (isLoggable(tag, VERBOSE)) {
-            return Log.v(tag, String.format(format, args), tr);
+            return Log.v(tag, formatMessage(format, args), tr);
         }
         return 0;
     }
@@ -220,7 +282,7 @@ public class LogUtils {
      */
     public static int d(String tag, String format, Object... args) {
         if (isLoggable(tag, DEBUG)) {
-            return Log.d(tag, String.format(format, args));
+            return Log.d(tag, formatMessage(format, args));
         }
         return 0;
     }
@@ -238,7 +300,7 @@ public class LogUtils {
      */
     public static int d(String tag, Throwable tr, String format, Object... args) {
         if (isLoggable(tag, DEBUG)) {
-            return Log.d(tag, String.format(format, args), tr);
+            return Log.d(tag, formatMessage(format, args), tr);
         }
         return 0;
     }
@@ -255,7 +317,7 @@ public class LogUtils {
      */
     public static int i(String tag, String format, Object... args) {
         if (isLoggable(tag, INFO)) {
-            return Log.i(tag, String.format(format, args));
+            return Log.i(tag, formatMessage(format, args));
         }
         return 0;
     }
@@ -273,7 +335,7 @@ public class LogUtils {
      */
     public static int i(String tag, Throwable tr, String format, Object... args) {
         if (isLoggable(tag, INFO)) {
-            return Log.i(tag, String.format(format, args), tr);
+            return Log.i(tag, formatMessage(format, args), tr);
         }
         return 0;
     }
@@ -290,7 +352,7 @@ public class LogUtils {
      */
     public static int w(String tag, String format, Object... args) {
         if (isLoggable(tag, WARN)) {
-            return Log.w(tag, String.format(format, args));
+            return Log.w(tag, formatMessage(format, args));
         }
         return 0;
     }
@@ -308,7 +370,7 @@ public class LogUtils {
      */
     public static int w(String tag, Throwable tr, String format, Object... args) {
         if (isLoggable(tag, WARN)) {
-            return Log.w(tag, String.format(format, args), tr);
+            return Log.w(tag, formatMessage(format, args), tr);
         }
         return 0;
     }
@@ -325,7 +387,7 @@ public class LogUtils {
      */
     public static int e(String tag, String format, Object... args) {
         if (isLoggable(tag, ERROR)) {
-            return Log.e(tag, String.format(format, args));
+            return Log.e(tag, formatMessage(format, args));
         }
         return 0;
     }
@@ -343,48 +405,1009 @@ public class LogUtils {
      */
     public static int e(String tag, Throwable tr, String format, Object... args) {
         if (isLoggable(tag, ERROR)) {
-            return Log.e(tag, String.format(format, args), tr);
+            return Log.e(tag, formatMessage(format, args), tr);
         }
         return 0;
     }
 
+    /*
+     * Fixed-arity versions of the methods above. Calls with up to three arguments resolve to
+     * these rather than to the varargs methods, so they allocate no array. Int and long
+     * arguments are boxed only once the level is known to be enabled, for calls with one or two
+     * arguments and for three-argument calls where an object is followed by two ints or longs
+     * (e.g. a name and two durations). Other three-argument calls box their int and long
+     * arguments up front. An int is boxed as an Integer and a long as a Long, so they format as
+     * they would with the varargs methods. A byte, short or
+     * char argument is widened to int, so it formats as an int: a char is formatted as a
+     * character by %c, but as its code by %s, and a negative byte or short has eight digits in
+     * %x. Pass such arguments as objects to format them by their own type.
+     */
+
     /**
-     * What a Terrible Failure: Report a condition that should never happen.
-     * The error will always be logged at level ASSERT with the call stack.
-     * Depending on system configuration, a report may be added to the
-     * {@link android.os.DropBoxManager} and/or the process may be terminated
-     * immediately with an error dialog.
-     * @param tag Used to identify the source of a log message.  It usually identifies
-     *        the class or activity where the log call occurs.
-     * @param format the format string (see {@link java.util.Formatter#format})
-     * @param args
-     *            the list of arguments passed to the formatter. If there are
-     *            more arguments than required by {@code format},
-     *            additional arguments are ignored.
+     * See {@link #v(String, String, Object...)}.
      */
-    public static int wtf(String tag, String format, Object... args) {
-        return Log.wtf(tag, String.format(format, args), new Error());
+    public static int v(String tag, String format) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format));
+        }
+        return 0;
     }
 
     /**
-     * What a Terrible Failure: Report a condition that should never happen.
-     * The error will always be logged at level ASSERT with the call stack.
-     * Depending on system configuration, a report may be added to the
-     * {@link android.os.DropBoxManager} and/or the process may be terminated
-     * immediately with an error dialog.
-     * @param tag Used to identify the source of a log message.  It usually identifies
-     *        the class or activity where the log call occurs.
-     * @param tr An exception to log
-     * @param format the format string (see {@link java.util.Formatter#format})
-     * @param args
-     *            the list of arguments passed to the formatter. If there are
-     *            more arguments than required by {@code format},
-     *            additional arguments are ignored.
+     * See {@link #v(String, String, Object...)}.
      */
-    public static int wtf(String tag, Throwable tr, String format, Object... args) {
-        return Log.wtf(tag, String.format(format, args), tr);
+    public static int v(String tag, String format, Object arg1) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, asArgs(arg1)));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, int arg1) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, long arg1) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, int arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, long arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, int arg1, Object arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, int arg1, int arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, int arg1, long arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, long arg1, Object arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, long arg1, int arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, long arg1, long arg2) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, int arg2, int arg3) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, int arg2, long arg3) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, long arg2, int arg3) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #v(String, String, Object...)}.
+     */
+    public static int v(String tag, String format, Object arg1, long arg2, long arg3) {
+        if (isLoggable(tag, VERBOSE)) {
+            return Log.v(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, asArgs(arg1)));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, int arg1) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, long arg1) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, int arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, long arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, int arg1, Object arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, int arg1, int arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, int arg1, long arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, long arg1, Object arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
     }
 
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, long arg1, int arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, long arg1, long arg2) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, int arg2, int arg3) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, int arg2, long arg3) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, long arg2, int arg3) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #d(String, String, Object...)}.
+     */
+    public static int d(String tag, String format, Object arg1, long arg2, long arg3) {
+        if (isLoggable(tag, DEBUG)) {
+            return Log.d(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, asArgs(arg1)));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, int arg1) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, long arg1) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, int arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, long arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, int arg1, Object arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, int arg1, int arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, int arg1, long arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, long arg1, Object arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, long arg1, int arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, long arg1, long arg2) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, int arg2, int arg3) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, int arg2, long arg3) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, long arg2, int arg3) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #i(String, String, Object...)}.
+     */
+    public static int i(String tag, String format, Object arg1, long arg2, long arg3) {
+        if (isLoggable(tag, INFO)) {
+            return Log.i(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, asArgs(arg1)));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, int arg1) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, long arg1) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, int arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, long arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, int arg1, Object arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, int arg1, int arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, int arg1, long arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, long arg1, Object arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, long arg1, int arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, long arg1, long arg2) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, int arg2, int arg3) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, int arg2, long arg3) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, long arg2, int arg3) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #w(String, String, Object...)}.
+     */
+    public static int w(String tag, String format, Object arg1, long arg2, long arg3) {
+        if (isLoggable(tag, WARN)) {
+            return Log.w(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, asArgs(arg1)));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, int arg1) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, long arg1) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, int arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, long arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, int arg1, Object arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, int arg1, int arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, int arg1, long arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, long arg1, Object arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, long arg1, int arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, long arg1, long arg2) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, int arg2, int arg3) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, int arg2, long arg3) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, long arg2, int arg3) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * See {@link #e(String, String, Object...)}.
+     */
+    public static int e(String tag, String format, Object arg1, long arg2, long arg3) {
+        if (isLoggable(tag, ERROR)) {
+            return Log.e(tag, formatMessage(format, arg1, arg2, arg3));
+        }
+        return 0;
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen.
+     * The error will always be logged at level ASSERT with the call stack.
+     * Depending on system configuration, a report may be added to the
+     * {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format the format string (see {@link java.util.Formatter#format})
+     * @param args
+     *            the list of arguments passed to the formatter. If there are
+     *            more arguments than required by {@code format},
+     *            additional arguments are ignored.
+     */
+    public static int wtf(String tag, String format, Object... args) {
+        return Log.wtf(tag, formatMessage(format, args), new Error());
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen.
+     * The error will always be logged at level ASSERT with the call stack.
+     * Depending on system configuration, a report may be added to the
+     * {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param tr An exception to log
+     * @param format the format string (see {@link java.util.Formatter#format})
+     * @param args
+     *            the list of arguments passed to the formatter. If there are
+     *            more arguments than required by {@code format},
+     *            additional arguments are ignored.
+     */
+    public static int wtf(String tag, Throwable tr, String format, Object... args) {
+        return Log.wtf(tag, formatMessage(format, args), tr);
+    }
+
+
+    /**
+     * Formats a log message like {@link String#format(String, Object...)} does, but without
+     * parsing the format into a list of specifiers first. Only <code>%s</code>,
+     * <code>%d</code> and <code>%%</code>, which nearly all log messages are limited to, are
+     * handled here; a format with anything else is passed to {@link String#format}.
+     */
+    @VisibleForTesting
+    static String formatMessage(String format, Object... args) {
+        final int length = format.length();
+        final StringBuilder sb = new StringBuilder(length + 16 * args.length);
+        int nextArg = 0;
+        int start = 0;
+        int percent;
+        while ((percent = format.indexOf('%', start)) >= 0) {
+            if (percent + 1 == length) {
+                return String.format(format, args);
+            }
+            sb.append(format, start, percent);
+            final char conversion = format.charAt(percent + 1);
+            if (conversion == '%') {
+                sb.append('%');
+            } else if (nextArg < args.length && ((conversion == 's'
+                    && !(args[nextArg] instanceof Formattable))
+                    || (conversion == 'd' && isIntegral(args[nextArg])))) {
+                sb.append(args[nextArg++]);
+            } else {
+                // Flags, width, precision, other conversions or missing arguments
+                return String.format(format, args);
+            }
+            start = percent + 2;
+        }
+        sb.append(format, start, length);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the arguments of a message with one. An array passed alone is spread over the
+     * format, as it is when passed to the varargs methods.
+     */
+    private static Object[] asArgs(Object arg) {
+        return arg instanceof Object[] ? (Object[]) arg : new Object[] {arg};
+    }
+
+    private static boolean isIntegral(Object arg) {
+        return arg instanceof Integer || arg instanceof Long || arg instanceof Short
+                || arg instanceof Byte;
+    }
 
     /**
      * Try to make a date MIME(RFC 2822/5322)-compliant.
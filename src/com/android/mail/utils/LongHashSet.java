@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs that doesn't box its elements. Elements are hashed into an open-addressing table
+ * with linear probing, and removed with backward-shift deletion, so no tombstones build up.
+ * <p>
+ * The set is also the index of {@link LongObjectHashMap}, which keeps its values in an array
+ * parallel to the table, at the slots of their keys. A subclass follows the keys through the
+ * table by overriding {@link #onResize}, {@link #onMove} and {@link #onRemove}.
+ * <p>
+ * Not thread safe.
+ */
+public class LongHashSet {
+
+    private long[] mKeys;
+    private boolean[] mUsed;
+    private int mSize;
+    private int mMask;
+
+    /**
+     * Creates a new empty LongHashSet.
+     */
+    public LongHashSet() {
+        this(8);
+    }
+
+    /**
+     * Creates a new LongHashSet that can hold the specified number of elements without
+     * resizing.
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(LongHashing.tableSizeFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mUsed = new boolean[capacity];
+        mMask = capacity - 1;
+    }
+
+    public boolean contains(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Adds the element to the set.
+     *
+     * @return true if the set did not already contain it
+     */
+    public boolean add(long key) {
+        final int size = mSize;
+        addSlot(key);
+        return mSize != size;
+    }
+
+    /**
+     * Removes the element from the set.
+     *
+     * @return true if the set contained it
+     */
+    public boolean remove(long key) {
+        final int slot = slotOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mUsed, false);
+        mSize = 0;
+    }
+
+    /**
+     * Returns a new array containing every element, in no particular order.
+     */
+    public long[] toArray() {
+        final long[] keys = new long[mSize];
+        int j = 0;
+        for (int i = 0; i < mUsed.length; i++) {
+            if (mUsed[i]) {
+                keys[j++] = mKeys[i];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of slots in the table.
+     */
+    final int capacity() {
+        return mUsed.length;
+    }
+
+    final boolean isUsed(int slot) {
+        return mUsed[slot];
+    }
+
+    final long keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    /**
+     * Returns the slot of the key, or -1 if it isn't in the set.
+     */
+    final int slotOf(long key) {
+        int slot = LongHashing.hash(key) & mMask;
+        while (mUsed[slot]) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the key if it isn't in the set yet, and returns its slot. The table is resized first
+     * if needed, so the slot stays valid until the next change.
+     */
+    final int addSlot(long key) {
+        final int existing = slotOf(key);
+        if (existing >= 0) {
+            return existing;
+        }
+        if (mSize + 1 > LongHashing.maxSizeFor(mKeys.length)) {
+            rehash(mKeys.length * 2);
+        }
+        final int slot = findEmptySlot(key);
+        mUsed[slot] = true;
+        mKeys[slot] = key;
+        mSize++;
+        return slot;
+    }
+
+    /**
+     * Removes the key in the slot, shifting back the keys after it that probed past it.
+     */
+    final void removeSlot(int slot) {
+        int gap = slot;
+        int i = (slot + 1) & mMask;
+        while (mUsed[i]) {
+            final int ideal = LongHashing.hash(mKeys[i]) & mMask;
+            if (((i - ideal) & mMask) >= ((i - gap) & mMask)) {
+                mKeys[gap] = mKeys[i];
+                onMove(i, gap);
+                gap = i;
+            }
+            i = (i + 1) & mMask;
+        }
+        mUsed[gap] = false;
+        onRemove(gap);
+        mSize--;
+    }
+
+    /**
+     * Called when the table is replaced by one with the given capacity, before the keys are
+     * added back to it with {@link #onMove} from their slots in the old table.
+     */
+    void onResize(int capacity) {
+    }
+
+    /**
+     * Called when the key in slot <code>from</code> moves to slot <code>to</code>.
+     */
+    void onMove(int from, int to) {
+    }
+
+    /**
+     * Called when a slot becomes empty.
+     */
+    void onRemove(int slot) {
+    }
+
+    private int findEmptySlot(long key) {
+        int slot = LongHashing.hash(key) & mMask;
+        while (mUsed[slot]) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        final long[] oldKeys = mKeys;
+        final boolean[] oldUsed = mUsed;
+        allocate(newCapacity);
+        onResize(newCapacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                final int slot = findEmptySlot(oldKeys[i]);
+                mUsed[slot] = true;
+                mKeys[slot] = oldKeys[i];
+                onMove(i, slot);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(mSize * 12).append('[');
+        for (int i = 0; i < mUsed.length; i++) {
+            if (mUsed[i]) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(mKeys[i]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+/**
+ * Sizing and hashing of the open-addressing table of {@link LongHashSet}, which also indexes
+ * {@link LongObjectHashMap}.
+ */
+final class LongHashing {
+    /** Tables are resized once they are more than this full, to keep probe sequences short. */
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MIN_CAPACITY = 4;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private LongHashing() {
+    }
+
+    /**
+     * Spreads the bits of the key so that sequential ids don't cluster. The result still has to
+     * be masked down to the table size.
+     */
+    static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the power of two table size needed to hold the given number of entries.
+     */
+    static int tableSizeFor(int expectedSize) {
+        final long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int maxSizeFor(int capacity) {
+        return (int) (capacity * LOAD_FACTOR);
+    }
+}
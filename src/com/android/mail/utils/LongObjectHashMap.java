@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LongObjectHashMaps map longs to Objects without boxing the keys. The keys are kept in a
+ * {@link LongHashSet}, and each value at the slot of its key in a parallel array.
+ * <p>
+ * Not thread safe.
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * The keys, which move their values along with them.
+     */
+    private class Index extends LongHashSet {
+        /** The values of the table being replaced, while its keys are moved. */
+        private V[] mOldValues;
+
+        Index(int expectedSize) {
+            super(expectedSize);
+        }
+
+        @Override
+        void onResize(int capacity) {
+            mOldValues = mValues;
+            mValues = newArray(capacity);
+        }
+
+        @Override
+        void onMove(int from, int to) {
+            if (mOldValues != null) {
+                mValues[to] = mOldValues[from];
+            } else {
+                mValues[to] = mValues[from];
+            }
+        }
+
+        @Override
+        void onRemove(int slot) {
+            mValues[slot] = null;
+        }
+
+        void finishResize() {
+            mOldValues = null;
+        }
+    }
+
+    private final Index mIndex;
+    private V[] mValues;
+
+    /**
+     * Creates a new LongObjectHashMap containing no mappings.
+     */
+    public LongObjectHashMap() {
+        this(8);
+    }
+
+    /**
+     * Creates a new LongObjectHashMap that can hold the specified number of mappings without
+     * resizing.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        mIndex = new Index(expectedSize);
+        mValues = newArray(mIndex.capacity());
+    }
+
+    @SuppressWarnings("unchecked")
+    private V[] newArray(int capacity) {
+        return (V[]) new Object[capacity];
+    }
+
+    /**
+     * Gets the Object mapped from the specified key, or <code>null</code> if no such mapping has
+     * been made.
+     */
+    public V get(long key) {
+        final int slot = mIndex.slotOf(key);
+        return slot < 0 ? null : mValues[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return mIndex.contains(key);
+    }
+
+    /**
+     * Adds a mapping from the specified key to the specified value, replacing the previous
+     * mapping from the specified key if there was one.
+     */
+    public void put(long key, V value) {
+        final int slot = mIndex.addSlot(key);
+        mIndex.finishResize();
+        mValues[slot] = value;
+    }
+
+    /**
+     * Removes the mapping from the specified key, if there was any.
+     *
+     * @return the value that was mapped from the key, or null
+     */
+    public V remove(long key) {
+        final int slot = mIndex.slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        final V removed = mValues[slot];
+        mIndex.removeSlot(slot);
+        return removed;
+    }
+
+    public int size() {
+        return mIndex.size();
+    }
+
+    public boolean isEmpty() {
+        return mIndex.isEmpty();
+    }
+
+    public void clear() {
+        mIndex.clear();
+        Arrays.fill(mValues, null);
+    }
+
+    /**
+     * Adds every mapping of the other map to this one.
+     */
+    public void putAll(LongObjectHashMap<? extends V> other) {
+        for (int i = 0; i < other.mIndex.capacity(); i++) {
+            if (other.mIndex.isUsed(i)) {
+                put(other.mIndex.keyAt(i), other.mValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns a new array containing every key, in no particular order.
+     */
+    public long[] keys() {
+        return mIndex.toArray();
+    }
+
+    /**
+     * Returns a new list containing every value, in no particular order.
+     */
+    public List<V> values() {
+        final List<V> values = Lists.newArrayListWithCapacity(size());
+        for (int i = 0; i < mIndex.capacity(); i++) {
+            if (mIndex.isUsed(i)) {
+                values.add(mValues[i]);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(size() * 16).append('{');
+        for (int i = 0; i < mIndex.capacity(); i++) {
+            if (mIndex.isUsed(i)) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(mIndex.keyAt(i)).append('=').append(mValues[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
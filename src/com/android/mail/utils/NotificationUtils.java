@@ -51,6 +51,7 @@ import com.android.mail.analytics.Analytics;
 import com.android.mail.browse.ConversationItemView;
 import com.android.mail.browse.MessageCursor;
 import com.android.mail.browse.SendersView;
+import com.android.mail.perf.Metrics;
 import com.android.mail.photo.ContactFetcher;
 import com.android.mail.photomanager.LetterTileProvider;
 import com.android.mail.preferences.AccountPreferences;
@@ -535,8 +536,10 @@ public class NotificationUtils {
         }
 
         if (NotificationActionUtils.sUndoNotifications.get(notificationId) == null) {
+            final long start = System.nanoTime();
             validateNotifications(context, folder, account, getAttention, ignoreUnobtrusiveSetting,
                     key, contactFetcher);
+            Metrics.UPDATE_NOTIFICATIONS.recordSince(start);
         }
     }
 
@@ -806,6 +809,7 @@ public class NotificationUtils {
                 notification.setPublicVersion(publicNotification);
 
                 nm.notify(notificationId, notification.build());
+                Metrics.NOTIFICATIONS_POSTED.increment();
 
                 if (prevConversationNotifications != null) {
                     Set<Integer> currentNotificationIds = msgNotifications.keySet();
@@ -822,6 +826,7 @@ public class NotificationUtils {
                     NotificationBuilders builders = entry.getValue();
                     builders.notifBuilder.extend(builders.wearableNotifBuilder);
                     nm.notify(entry.getKey(), builders.notifBuilder.build());
+                    Metrics.NOTIFICATIONS_POSTED.increment();
                     LogUtils.d(LOG_TAG, "notifying conversation notification %s", entry.getKey());
                 }
 
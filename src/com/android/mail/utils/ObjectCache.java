@@ -17,13 +17,14 @@
 
 package com.android.mail.utils;
 
-import com.google.common.collect.Lists;
-
-import java.util.Deque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * This class maintains a cache of soft references to objects.  This allows callers to use a pool
- * of object instances
+ * This class maintains a bounded pool of objects.  This allows callers to use a pool
+ * of object instances.
+ * <p>
+ * The pool is a fixed array of slots that are claimed and filled with atomic operations, so
+ * {@link #get()} and {@link #release(Object)} never block or allocate.
  * @param <T>
  */
 public class ObjectCache<T> {
@@ -32,10 +33,9 @@ public class ObjectCache<T> {
         void onObjectReleased(T object);
     }
 
-    private final Deque<T> mDataStore = Lists.newLinkedList();
+    private final AtomicReferenceArray<T> mSlots;
 
     private final Callback<T> mCallback;
-    private final int mMaxSize;
 
     /**
      * Creates a new ObjectCache instance
@@ -44,32 +44,43 @@ public class ObjectCache<T> {
      */
     public ObjectCache(Callback<T> callbacks, int maxSize) {
         mCallback = callbacks;
-        mMaxSize = maxSize;
+        mSlots = new AtomicReferenceArray<T>(maxSize);
     }
 
     /**
      * Returns an instance of the specified object type, creating a new instance if needed.
      */
     public T get() {
-        T result;
-        synchronized (mDataStore) {
-            result = mDataStore.poll();
-        }
-        if (result == null) {
-            result = mCallback.newInstance();
+        final int size = mSlots.length();
+        for (int i = 0; i < size; i++) {
+            // Cheap read first so that empty slots don't cost a write
+            if (mSlots.get(i) != null) {
+                final T result = mSlots.getAndSet(i, null);
+                if (result != null) {
+                    return result;
+                }
+            }
         }
-        return result;
+        return mCallback.newInstance();
     }
 
     /**
      * Releases the specified object back to the cache.  Once an object is released, it can be
-     * returned by subsequent calls to get()
+     * returned by subsequent calls to get().  If the cache is already full the object is dropped.
      */
     public void release(T objectToCache) {
-        synchronized (mDataStore) {
-            if (mDataStore.size() < mMaxSize) {
-                mCallback.onObjectReleased(objectToCache);
-                mDataStore.add(objectToCache);
+        final int size = mSlots.length();
+        boolean released = false;
+        for (int i = 0; i < size; i++) {
+            if (mSlots.get(i) == null) {
+                if (!released) {
+                    // Clean up before the object becomes visible to other threads
+                    mCallback.onObjectReleased(objectToCache);
+                    released = true;
+                }
+                if (mSlots.compareAndSet(i, null, objectToCache)) {
+                    return;
+                }
             }
         }
     }
@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-memory LRU cache bounded by the total <em>weight</em> of its entries rather than by their
+ * count. Lookups go straight to a {@link ConcurrentHashMap} and never take a lock; the access
+ * order is recorded in a small lock-free buffer and replayed onto the LRU list the next time a
+ * writer (or a reader that finds the buffer full) holds the eviction lock.
+ * <p>
+ * Entries can optionally expire a fixed time after they were written, and an
+ * {@link EvictionListener} is told about every entry that is dropped because of size or age.
+ * Hit, miss, eviction and expiration counts are available through {@link #stats()} so that
+ * each cache can be sized against real usage.
+ * <p>
+ * Instances are created with {@link Builder}:
+ * <pre>
+ * WeightedLruCache&lt;String, String&gt; cache = new WeightedLruCache.Builder&lt;String, String&gt;()
+ *         .maxWeight(512 * 1024)
+ *         .weigher(new WeightedLruCache.Weigher&lt;String, String&gt;() {
+ *             public int weigh(String key, String value) { return value.length() * 2; }
+ *         })
+ *         .build();
+ * </pre>
+ */
+public class WeightedLruCache<K, V> {
+
+    /**
+     * Computes the weight of a cache entry, e.g. its approximate size in bytes. Weights are
+     * computed once when the entry is inserted.
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Notified whenever the cache drops an entry on its own, either to make room or because the
+     * entry expired. Not called for explicit {@link #remove(Object)} or {@link #clear()}.
+     * Listeners are invoked on the thread that triggered the eviction, outside of any lock.
+     */
+    public interface EvictionListener<K, V> {
+        void onEntryEvicted(K key, V value, boolean expired);
+    }
+
+    /**
+     * Immutable snapshot of the counters of a cache.
+     */
+    public static final class Stats {
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        public final long expirationCount;
+        public final int size;
+        public final long weight;
+        public final long maxWeight;
+
+        Stats(long hitCount, long missCount, long evictionCount, long expirationCount,
+                int size, long weight, long maxWeight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+            this.size = size;
+            this.weight = weight;
+            this.maxWeight = maxWeight;
+        }
+
+        public double hitRate() {
+            final long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "[hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount
+                    + " expirations=" + expirationCount + " size=" + size + " weight=" + weight
+                    + "/" + maxWeight + "]";
+        }
+    }
+
+    public static class Builder<K, V> {
+        private long mMaxWeight = -1;
+        private Weigher<K, V> mWeigher;
+        private long mExpireAfterWriteMs;
+        private EvictionListener<K, V> mListener;
+        private Clock mClock = Clock.INSTANCE;
+
+        /**
+         * Sets the maximum total weight. Without a {@link #weigher(Weigher)} every entry weighs
+         * 1, so this is then simply the maximum number of entries.
+         */
+        public Builder<K, V> maxWeight(long maxWeight) {
+            mMaxWeight = maxWeight;
+            return this;
+        }
+
+        public Builder<K, V> weigher(Weigher<K, V> weigher) {
+            mWeigher = weigher;
+            return this;
+        }
+
+        /**
+         * Entries older than the given time are treated as absent. Zero (the default) means
+         * entries never expire.
+         */
+        public Builder<K, V> expireAfterWrite(long expireAfterWriteMs) {
+            mExpireAfterWriteMs = expireAfterWriteMs;
+            return this;
+        }
+
+        public Builder<K, V> evictionListener(EvictionListener<K, V> listener) {
+            mListener = listener;
+            return this;
+        }
+
+        public Builder<K, V> clock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        public WeightedLruCache<K, V> build() {
+            if (mMaxWeight < 0) {
+                throw new IllegalStateException("maxWeight must be set");
+            }
+            return new WeightedLruCache<K, V>(this);
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        final long writeTime;
+
+        // The fields below are guarded by mEvictionLock
+        Node<K, V> prev;
+        Node<K, V> next;
+        boolean linked;
+
+        Node(K key, V value, int weight, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /** Size of the read buffer. Must be a power of two. */
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    /** Number of buffered reads after which a reader tries to drain the buffer itself. */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> mMap = new ConcurrentHashMap<K, Node<K, V>>();
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+
+    private final AtomicReferenceArray<Node<K, V>> mReadBuffer =
+            new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+    private final AtomicLong mReadBufferWriteCount = new AtomicLong();
+    // Written only under mEvictionLock, read racily by recordRead()
+    private volatile long mReadBufferReadCount;
+
+    /** Sentinel of the circular LRU list. head.next is the eldest entry. Guarded by the lock. */
+    private final Node<K, V> mHead = new Node<K, V>(null, null, 0, 0);
+    // Guarded by mEvictionLock
+    private long mWeight;
+
+    private final long mMaxWeight;
+    private final Weigher<K, V> mWeigher;
+    private final long mExpireAfterWriteMs;
+    private final EvictionListener<K, V> mListener;
+    private final Clock mClock;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+    private final AtomicLong mExpirationCount = new AtomicLong();
+
+    private WeightedLruCache(Builder<K, V> builder) {
+        mMaxWeight = builder.mMaxWeight;
+        mWeigher = builder.mWeigher;
+        mExpireAfterWriteMs = builder.mExpireAfterWriteMs;
+        mListener = builder.mListener;
+        mClock = builder.mClock;
+        mHead.prev = mHead;
+        mHead.next = mHead;
+    }
+
+    /**
+     * Returns the value cached for the key, or null if there is none or it has expired.
+     */
+    public V get(K key) {
+        final Node<K, V> node = mMap.get(key);
+        if (node == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        if (isExpired(node)) {
+            mMissCount.incrementAndGet();
+            if (mMap.remove(key, node)) {
+                expire(node);
+            }
+            return null;
+        }
+        mHitCount.incrementAndGet();
+        recordRead(node);
+        return node.value;
+    }
+
+    /**
+     * Caches the value for the key, evicting least recently used entries as needed to stay under
+     * the maximum weight. A value heavier than the maximum weight is not cached: it is reported to
+     * the eviction listener right away, and only the value it replaces is removed, leaving the
+     * other entries in place.
+     *
+     * @return the value previously cached for the key, or null
+     */
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key and value must not be null");
+        }
+        final int weight = (mWeigher == null) ? 1 : mWeigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight for " + key);
+        }
+        final Node<K, V> node = new Node<K, V>(key, value, weight,
+                mExpireAfterWriteMs > 0 ? mClock.getTime() : 0);
+        if (weight > mMaxWeight) {
+            // Linking it would evict every other entry before it
+            final V replaced = remove(key);
+            final List<Node<K, V>> evicted = Lists.newArrayList();
+            evicted.add(node);
+            notifyEvicted(evicted, false);
+            return replaced;
+        }
+        final Node<K, V> old = mMap.put(key, node);
+
+        List<Node<K, V>> evicted = null;
+        mEvictionLock.lock();
+        try {
+            drainReadBufferLocked();
+            if (old != null) {
+                unlinkLocked(old);
+            }
+            // A concurrent put or remove for the same key may already have replaced us
+            if (mMap.get(key) == node) {
+                linkLastLocked(node);
+            }
+            evicted = evictLocked();
+        } finally {
+            mEvictionLock.unlock();
+        }
+        notifyEvicted(evicted, false);
+        return (old == null || isExpired(old)) ? null : old.value;
+    }
+
+    /**
+     * Removes the entry for the key, if any.
+     *
+     * @return the value that was cached, or null
+     */
+    public V remove(K key) {
+        final Node<K, V> node = mMap.remove(key);
+        if (node == null) {
+            return null;
+        }
+        mEvictionLock.lock();
+        try {
+            unlinkLocked(node);
+        } finally {
+            mEvictionLock.unlock();
+        }
+        return isExpired(node) ? null : node.value;
+    }
+
+    /**
+     * Removes all entries. The eviction listener is not notified.
+     */
+    public void clear() {
+        mEvictionLock.lock();
+        try {
+            drainReadBufferLocked();
+            Node<K, V> node = mHead.next;
+            while (node != mHead) {
+                final Node<K, V> next = node.next;
+                mMap.remove(node.key, node);
+                unlinkLocked(node);
+                node = next;
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Drops all expired entries now rather than waiting for them to be read.
+     */
+    public void cleanUp() {
+        if (mExpireAfterWriteMs <= 0) {
+            return;
+        }
+        final List<Node<K, V>> expired = Lists.newArrayList();
+        mEvictionLock.lock();
+        try {
+            drainReadBufferLocked();
+            Node<K, V> node = mHead.next;
+            while (node != mHead) {
+                final Node<K, V> next = node.next;
+                if (isExpired(node) && mMap.remove(node.key, node)) {
+                    unlinkLocked(node);
+                    expired.add(node);
+                }
+                node = next;
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+        mExpirationCount.addAndGet(expired.size());
+        notifyEvicted(expired, true);
+    }
+
+    /**
+     * Returns the live values in access order, least recently used first.
+     */
+    public List<V> values() {
+        final List<V> values = Lists.newArrayList();
+        mEvictionLock.lock();
+        try {
+            drainReadBufferLocked();
+            for (Node<K, V> node = mHead.next; node != mHead; node = node.next) {
+                if (!isExpired(node)) {
+                    values.add(node.value);
+                }
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+        return values;
+    }
+
+    public int size() {
+        return mMap.size();
+    }
+
+    /**
+     * Returns the current total weight of the cached entries.
+     */
+    public long weight() {
+        mEvictionLock.lock();
+        try {
+            return mWeight;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    public long maxWeight() {
+        return mMaxWeight;
+    }
+
+    public Stats stats() {
+        return new Stats(mHitCount.get(), mMissCount.get(), mEvictionCount.get(),
+                mExpirationCount.get(), size(), weight(), mMaxWeight);
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedLruCache" + stats();
+    }
+
+    private boolean isExpired(Node<K, V> node) {
+        return mExpireAfterWriteMs > 0 && mClock.getTime() - node.writeTime >= mExpireAfterWriteMs;
+    }
+
+    private void expire(Node<K, V> node) {
+        mEvictionLock.lock();
+        try {
+            unlinkLocked(node);
+        } finally {
+            mEvictionLock.unlock();
+        }
+        mExpirationCount.incrementAndGet();
+        if (mListener != null) {
+            mListener.onEntryEvicted(node.key, node.value, true);
+        }
+    }
+
+    /**
+     * Records a read without blocking. When the buffer is full, older reads are simply
+     * overwritten; losing a few recency updates only makes the LRU order slightly approximate.
+     */
+    private void recordRead(Node<K, V> node) {
+        final long writeCount = mReadBufferWriteCount.getAndIncrement();
+        mReadBuffer.lazySet((int) (writeCount & READ_BUFFER_MASK), node);
+        if (writeCount - mReadBufferReadCount >= READ_BUFFER_DRAIN_THRESHOLD
+                && mEvictionLock.tryLock()) {
+            try {
+                drainReadBufferLocked();
+            } finally {
+                mEvictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBufferLocked() {
+        final long writeCount = mReadBufferWriteCount.get();
+        long readCount = Math.max(mReadBufferReadCount, writeCount - READ_BUFFER_SIZE);
+        for (; readCount < writeCount; readCount++) {
+            final Node<K, V> node = mReadBuffer.getAndSet((int) (readCount & READ_BUFFER_MASK),
+                    null);
+            if (node != null && node.linked) {
+                moveToLastLocked(node);
+            }
+        }
+        mReadBufferReadCount = writeCount;
+    }
+
+    private List<Node<K, V>> evictLocked() {
+        List<Node<K, V>> evicted = null;
+        while (mWeight > mMaxWeight && mHead.next != mHead) {
+            final Node<K, V> eldest = mHead.next;
+            mMap.remove(eldest.key, eldest);
+            unlinkLocked(eldest);
+            if (evicted == null) {
+                evicted = Lists.newArrayList();
+            }
+            evicted.add(eldest);
+        }
+        return evicted;
+    }
+
+    private void notifyEvicted(List<Node<K, V>> nodes, boolean expired) {
+        if (nodes == null) {
+            return;
+        }
+        if (!expired) {
+            mEvictionCount.addAndGet(nodes.size());
+        }
+        if (mListener != null) {
+            for (Node<K, V> node : nodes) {
+                mListener.onEntryEvicted(node.key, node.value, expired);
+            }
+        }
+    }
+
+    private void linkLastLocked(Node<K, V> node) {
+        node.prev = mHead.prev;
+        node.next = mHead;
+        mHead.prev.next = node;
+        mHead.prev = node;
+        node.linked = true;
+        mWeight += node.weight;
+    }
+
+    private void unlinkLocked(Node<K, V> node) {
+        if (!node.linked) {
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.linked = false;
+        mWeight -= node.weight;
+    }
+
+    private void moveToLastLocked(Node<K, V> node) {
+        if (mHead.prev == node) {
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = mHead.prev;
+        node.next = mHead;
+        mHead.prev.next = node;
+        mHead.prev = node;
+    }
+}
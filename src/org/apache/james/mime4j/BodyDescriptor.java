@@ -39,6 +39,10 @@ public class BodyDescriptor {
     private Map<String, String> parameters = new HashMap<String, String>();
     private boolean contentTypeSet = false;
     private boolean contentTransferEncSet = false;
+    //BEGIN android-added
+    private long bodyOffset = -1;
+    private long bodyLength = -1;
+    //END android-added
 
     /**
      * Creates a new root <code>BodyDescriptor</code> instance.
@@ -385,6 +389,33 @@ public class BodyDescriptor {
         return "quoted-printable".equals(transferEncoding);
     }
 
+    //BEGIN android-added
+    /**
+     * Return the offset of the body in the parsed stream, or -1. Only known
+     * for bodies skipped in structure-only mode.
+     *
+     * @see MimeStreamParser#setStructureOnly(boolean)
+     */
+    public long getBodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * Return the length of the body, still transfer encoded, or -1. Only
+     * known for bodies skipped in structure-only mode.
+     *
+     * @see MimeStreamParser#setStructureOnly(boolean)
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    void setBodyRange(long offset, long length) {
+        bodyOffset = offset;
+        bodyLength = length;
+    }
+    //END android-added
+
     @Override
     public String toString() {
         return mimeType;
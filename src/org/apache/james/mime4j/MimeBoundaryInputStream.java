@@ -36,7 +36,7 @@ import java.io.PushbackInputStream;
  */
 public class MimeBoundaryInputStream extends InputStream {
     
-    private PushbackInputStream s = null;
+    private CountedPushbackInputStream s = null;
     private byte[] boundary = null;
     private boolean first = true;
     private boolean eof = false;
@@ -51,7 +51,7 @@ public class MimeBoundaryInputStream extends InputStream {
     public MimeBoundaryInputStream(InputStream s, String boundary) 
             throws IOException {
         
-        this.s = new PushbackInputStream(s, boundary.length() + 4);
+        this.s = new CountedPushbackInputStream(s, boundary.length() + 4);
 
         boundary = "--" + boundary;
         this.boundary = new byte[boundary.length()];
@@ -99,6 +99,19 @@ public class MimeBoundaryInputStream extends InputStream {
         return parenteof;
     }
     
+    //BEGIN android-added
+    /**
+     * Gets the number of bytes which have been read from the underlying stream
+     * but not yet returned or consumed by this stream, i.e. the bytes held
+     * back while looking for a boundary.
+     *
+     * @return the number of bytes held back.
+     */
+    int getPushbackCount() {
+        return s.getPushbackCount();
+    }
+    //END android-added
+
     /**
      * Consumes all unread bytes of this stream. After a call to this method
      * this stream will have reached EOF.
@@ -181,4 +194,16 @@ public class MimeBoundaryInputStream extends InputStream {
         
         return true;
     }
+
+    //BEGIN android-added
+    private static class CountedPushbackInputStream extends PushbackInputStream {
+        public CountedPushbackInputStream(InputStream in, int size) {
+            super(in, size);
+        }
+
+        public int getPushbackCount() {
+            return buf.length - pos;
+        }
+    }
+    //END android-added
 }
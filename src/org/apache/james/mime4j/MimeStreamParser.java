@@ -22,6 +22,7 @@ package org.apache.james.mime4j;
 import org.apache.james.mime4j.decoder.Base64InputStream;
 import org.apache.james.mime4j.decoder.QuotedPrintableInputStream;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.BitSet;
@@ -57,6 +58,18 @@ public class MimeStreamParser {
     private ContentHandler handler = null;
     private boolean raw = false;
     private boolean prematureEof = false;
+    /** Raw header block of the entity being parsed; grown as needed and reused. */
+    private byte[] headerBuffer = new byte[4096];
+    //BEGIN android-added
+    private boolean structureOnly = false;
+    private int previewSize = 0;
+    /** Streams of the body parts being parsed, innermost first. */
+    private LinkedList<MimeBoundaryInputStream> partStreams =
+        new LinkedList<MimeBoundaryInputStream>();
+    /** Number of transfer encoded messages the parser is inside of. */
+    private int encodedMessageDepth = 0;
+    private byte[] skipBuffer = null;
+    //END android-added
 
     static {
         fieldChars = new BitSet();
@@ -110,6 +123,54 @@ public class MimeStreamParser {
         this.raw = raw;
     }
 
+    //BEGIN android-added
+    /**
+     * Determines if this parser is currently in structure-only mode.
+     *
+     * @return <code>true</code> if in structure-only mode,
+     *         <code>false</code> otherwise.
+     * @see #setStructureOnly(boolean)
+     */
+    public boolean isStructureOnly() {
+        return structureOnly;
+    }
+
+    /**
+     * Enables or disables structure-only mode. In structure-only mode headers,
+     * multiparts and embedded messages are reported as usual, but the bodies
+     * of other entities are skipped and counted rather than handed to the
+     * handler. {@link ContentHandler#body(BodyDescriptor, InputStream)} gets
+     * a stream holding only the first bytes of the body, up to the preview
+     * size and still transfer encoded, and the descriptor gives the offset
+     * and length of the whole body in the parsed stream, so that it can be
+     * read from there later.
+     * <p>
+     * Entities inside a base64 or quoted-printable encoded message have no
+     * place in the parsed stream. Their bodies are reported as in normal mode
+     * and their descriptors have no offset or length.
+     *
+     * @param structureOnly <code>true</code> enables structure-only mode,
+     *        <code>false</code> disables it.
+     * @see BodyDescriptor#getBodyOffset()
+     */
+    public void setStructureOnly(boolean structureOnly) {
+        this.structureOnly = structureOnly;
+    }
+
+    /**
+     * Sets how many bytes of each body are passed to the handler in
+     * structure-only mode. The default is 0.
+     *
+     * @param previewSize the number of bytes.
+     */
+    public void setPreviewSize(int previewSize) {
+        if (previewSize < 0) {
+            throw new IllegalArgumentException("Invalid preview size " + previewSize);
+        }
+        this.previewSize = previewSize;
+    }
+    //END android-added
+
     /**
      * Finishes the parsing and stops reading lines.
      * NOTE: No more lines will be parsed but the parser
@@ -148,8 +209,15 @@ public class MimeStreamParser {
 
             while (tempIs.hasMoreParts()) {
                 tempIs = new MimeBoundaryInputStream(is, bd.getBoundary());
-                parseBodyPart(tempIs);
-                tempIs.consume();
+                //BEGIN android-changed
+                partStreams.addFirst(tempIs);
+                try {
+                    parseBodyPart(tempIs);
+                    tempIs.consume();
+                } finally {
+                    partStreams.removeFirst();
+                }
+                //END android-changed
                 if (tempIs.parentEOF()) {
                     prematureEof = true;
 //                    if (log.isWarnEnabled()) {
@@ -169,6 +237,9 @@ public class MimeStreamParser {
             bodyDescriptors.removeFirst();
 
         } else if (bd.isMessage()) {
+            //BEGIN android-changed
+            boolean encoded = bd.isBase64Encoded() || bd.isQuotedPrintableEncoded();
+            //END android-changed
             if (bd.isBase64Encoded()) {
                 log.warn("base64 encoded message/rfc822 detected");
                 is = new EOLConvertingInputStream(
@@ -179,8 +250,23 @@ public class MimeStreamParser {
                         new QuotedPrintableInputStream(is));
             }
             bodyDescriptors.addFirst(bd);
-            parseMessage(is);
+            //BEGIN android-changed
+            if (encoded) {
+                encodedMessageDepth++;
+            }
+            try {
+                parseMessage(is);
+            } finally {
+                if (encoded) {
+                    encodedMessageDepth--;
+                }
+            }
+            //END android-changed
             bodyDescriptors.removeFirst();
+        //BEGIN android-added
+        } else if (structureOnly && encodedMessageDepth == 0) {
+            skipBody(bd, is);
+        //END android-added
         } else {
             handler.body(bd, new CloseShieldInputStream(is));
         }
@@ -192,6 +278,53 @@ public class MimeStreamParser {
         }
     }
 
+    //BEGIN android-added
+    /**
+     * Reads the preview of a body and skips the rest, then reports the body
+     * to the handler.
+     */
+    private void skipBody(BodyDescriptor bd, InputStream is) throws IOException {
+        long offset = getPosition();
+
+        byte[] preview = new byte[previewSize];
+        int count = 0;
+        while (count < preview.length) {
+            int n = is.read(preview, count, preview.length - count);
+            if (n == -1) {
+                break;
+            }
+            count += n;
+        }
+
+        long length = count;
+        if (count == preview.length) {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[4096];
+            }
+            int n;
+            while ((n = is.read(skipBuffer)) != -1) {
+                length += n;
+            }
+        }
+
+        bd.setBodyRange(offset, length);
+        handler.body(bd, new ByteArrayInputStream(preview, 0, count));
+    }
+
+    /**
+     * Gets the offset in the parsed stream of the next byte to be read from
+     * the innermost body part. The part streams read ahead while looking for
+     * boundaries, so the bytes they hold back are not counted.
+     */
+    private long getPosition() {
+        long position = rootStream.getPosition();
+        for (MimeBoundaryInputStream partStream : partStreams) {
+            position -= partStream.getPushbackCount();
+        }
+        return position;
+    }
+    //END android-added
+
     private void parseMessage(InputStream is) throws IOException {
         if (raw) {
             handler.raw(new CloseShieldInputStream(is));
@@ -231,7 +364,13 @@ public class MimeStreamParser {
 
         int lineNumber = rootStream.getLineNumber();
 
-        StringBuffer sb = new StringBuffer();
+        /*
+         * Collect the raw header block. We may not read past its end since the
+         * body is read from the same stream, so this is still done a byte at
+         * a time, but into a plain byte array which is reused between entities.
+         */
+        byte[] buf = headerBuffer;
+        int len = 0;
         int curr = 0;
         int prev = 0;
         while ((curr = is.read()) != -1) {
@@ -239,10 +378,17 @@ public class MimeStreamParser {
                 /*
                  * [\r]\n[\r]\n or an immediate \r\n have been seen.
                  */
-                sb.deleteCharAt(sb.length() - 1);
+                if (len > 0) {
+                    len--;
+                }
                 break;
             }
-            sb.append((char) curr);
+            if (len == buf.length) {
+                buf = new byte[len * 2];
+                System.arraycopy(headerBuffer, 0, buf, 0, len);
+                headerBuffer = buf;
+            }
+            buf[len++] = (byte) curr;
             prev = curr == '\r' ? prev : curr;
         }
 
@@ -252,53 +398,29 @@ public class MimeStreamParser {
 //                    + "Boundary detected in header or EOF reached.");
 //        }
 
+        /*
+         * Split the block into fields in a single pass. A field ends at a
+         * \r\n which is not followed by folding whitespace.
+         */
         int start = 0;
         int pos = 0;
         int startLineNumber = lineNumber;
-        while (pos < sb.length()) {
-            while (pos < sb.length() && sb.charAt(pos) != '\r') {
+        while (pos < len) {
+            while (pos < len && buf[pos] != '\r') {
                 pos++;
             }
-            if (pos < sb.length() - 1 && sb.charAt(pos + 1) != '\n') {
+            if (pos < len - 1 && buf[pos + 1] != '\n') {
                 pos++;
                 continue;
             }
 
-            if (pos >= sb.length() - 2 || fieldChars.get(sb.charAt(pos + 2))) {
-
+            if (pos >= len - 2 || fieldChars.get(buf[pos + 2] & 0xff)) {
                 /*
-                 * field should be the complete field data excluding the
+                 * The field is the complete field data excluding the
                  * trailing \r\n.
                  */
-                String field = sb.substring(start, pos);
+                parseField(bd, buf, start, pos, startLineNumber);
                 start = pos + 2;
-
-                /*
-                 * Check for a valid field.
-                 */
-                int index = field.indexOf(':');
-                boolean valid = false;
-                if (index != -1 && fieldChars.get(field.charAt(0))) {
-                    valid = true;
-                    String fieldName = field.substring(0, index).trim();
-                    for (int i = 0; i < fieldName.length(); i++) {
-                        if (!fieldChars.get(fieldName.charAt(i))) {
-                            valid = false;
-                            break;
-                        }
-                    }
-
-                    if (valid) {
-                        handler.field(field);
-                        bd.addField(fieldName, field.substring(index + 1));
-                    }
-                }
-
-                if (!valid && log.isWarnEnabled()) {
-                    log.warn("Line " + startLineNumber
-                            + ": Ignoring invalid field: '" + field.trim() + "'");
-                }
-
                 startLineNumber = lineNumber;
             }
 
@@ -311,6 +433,63 @@ public class MimeStreamParser {
         return bd;
     }
 
+    /**
+     * Validates a single raw field in <code>buf[start..end)</code> and reports
+     * it to the handler and the body descriptor. Strings are only built for
+     * valid fields (and for invalid ones if they are going to be logged).
+     */
+    private void parseField(BodyDescriptor bd, byte[] buf, int start, int end,
+            int lineNumber) {
+
+        int colon = -1;
+        for (int i = start; i < end; i++) {
+            if (buf[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+
+        /*
+         * A valid field starts with a field character, and its name, minus
+         * any whitespace before the colon, consists of field characters only.
+         */
+        boolean valid = false;
+        if (colon != -1 && fieldChars.get(buf[start] & 0xff)) {
+            int nameEnd = colon;
+            while (nameEnd > start && (buf[nameEnd - 1] & 0xff) <= ' ') {
+                nameEnd--;
+            }
+            valid = true;
+            for (int i = start; i < nameEnd; i++) {
+                if (!fieldChars.get(buf[i] & 0xff)) {
+                    valid = false;
+                    break;
+                }
+            }
+
+            if (valid) {
+                String field = latin1String(buf, start, end);
+                handler.field(field);
+                bd.addField(field.substring(0, nameEnd - start),
+                        field.substring(colon + 1 - start));
+            }
+        }
+
+        if (!valid && log.isWarnEnabled()) {
+            log.warn("Line " + lineNumber + ": Ignoring invalid field: '"
+                    + latin1String(buf, start, end).trim() + "'");
+        }
+    }
+
+    /**
+     * Builds a String with one char per byte, the same way the header used to
+     * be collected with <code>(char) is.read()</code>.
+     */
+    @SuppressWarnings("deprecation")
+    private static String latin1String(byte[] buf, int start, int end) {
+        return new String(buf, 0, start, end - start);
+    }
+
     /**
      * Sets the <code>ContentHandler</code> to use when reporting
      * parsing events.
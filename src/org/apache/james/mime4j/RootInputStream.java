@@ -25,8 +25,8 @@ import java.io.InputStream;
 /**
  * <code>InputStream</code> used by the parser to wrap the original user
  * supplied stream. This stream keeps track of the current line number and
- * can also be truncated. When truncated the stream will appear to have
- * reached end of file. This is used by the parser's 
+ * and of the number of bytes read, and can also be truncated. When truncated
+ * the stream will appear to have reached end of file. This is used by the parser's 
  * {@link org.apache.james.mime4j.MimeStreamParser#stop()} method.
  *
  * 
@@ -35,6 +35,7 @@ import java.io.InputStream;
 class RootInputStream extends InputStream {
     private InputStream is = null;
     private int lineNumber = 1;
+    private long position = 0;
     private int prev = -1;
     private boolean truncated = false;
 
@@ -56,6 +57,15 @@ class RootInputStream extends InputStream {
     public int getLineNumber() {
         return lineNumber;
     }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return the number of bytes read.
+     */
+    public long getPosition() {
+        return position;
+    }
     
     /**
      * Truncates this <code>InputStream</code>. After this call any 
@@ -76,6 +86,9 @@ class RootInputStream extends InputStream {
         }
         
         int b = is.read();
+        if (b != -1) {
+            position++;
+        }
         if (prev == '\r' && b == '\n') {
             lineNumber++;
         }
@@ -93,6 +106,9 @@ class RootInputStream extends InputStream {
         }
         
         int n = is.read(b, off, len);
+        if (n > 0) {
+            position += n;
+        }
         for (int i = off; i < off + n; i++) {
             if (prev == '\r' && b[i] == '\n') {
                 lineNumber++;
@@ -29,6 +29,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 /**
  * Static methods for decoding strings, byte arrays and encoded words.
@@ -112,6 +118,18 @@ public class DecoderUtil {
         
         return new String(decodeBase64(encodedWord), charset);
     }
+
+    /**
+     * Decodes an encoded word encoded with the 'B' encoding (described in 
+     * RFC 2047) found in a header field body.
+     * 
+     * @param encodedWord the encoded word to decode.
+     * @param charset the charset to use, see {@link CharsetUtil#lookupCharset(String)}.
+     * @return the decoded string.
+     */
+    public static String decodeB(String encodedWord, Charset charset) {
+        return new String(decodeBase64(encodedWord), charset);
+    }
     
     /**
      * Decodes an encoded word encoded with the 'Q' encoding (described in 
@@ -126,10 +144,29 @@ public class DecoderUtil {
     public static String decodeQ(String encodedWord, String charset)
             throws UnsupportedEncodingException {
            
-        /*
-         * Replace _ with =20
-         */
-        StringBuffer sb = new StringBuffer();
+        return new String(decodeBaseQuotedPrintable(underscoresToSpaces(encodedWord)), charset);
+    }
+
+    /**
+     * Decodes an encoded word encoded with the 'Q' encoding (described in 
+     * RFC 2047) found in a header field body.
+     * 
+     * @param encodedWord the encoded word to decode.
+     * @param charset the charset to use, see {@link CharsetUtil#lookupCharset(String)}.
+     * @return the decoded string.
+     */
+    public static String decodeQ(String encodedWord, Charset charset) {
+        return new String(decodeBaseQuotedPrintable(underscoresToSpaces(encodedWord)), charset);
+    }
+
+    /**
+     * Replaces _ with =20
+     */
+    private static String underscoresToSpaces(String encodedWord) {
+        if (encodedWord.indexOf('_') == -1) {
+            return encodedWord;
+        }
+        StringBuilder sb = new StringBuilder(encodedWord.length() + 8);
         for (int i = 0; i < encodedWord.length(); i++) {
             char c = encodedWord.charAt(i);
             if (c == '_') {
@@ -138,8 +175,7 @@ public class DecoderUtil {
                 sb.append(c);
             }
         }
-        
-        return new String(decodeBaseQuotedPrintable(sb.toString()), charset);
+        return sb.toString();
     }
     
     /**
@@ -161,11 +197,30 @@ public class DecoderUtil {
             return body;
         }
 
+        StringBuilder sb = new StringBuilder(body.length());
+        decodeEncodedWords(body, sb);
+        return sb.toString();
+    }
+
+    //BEGIN android-added
+    /**
+     * Decodes a string containing encoded words as defined by RFC 2047 and
+     * appends the result to the given builder.
+     * <p>
+     * The body is scanned once. The payloads of the encoded words are
+     * decoded straight into one byte buffer, and consecutive words in the
+     * same charset that are only separated by whitespace are decoded
+     * together, so a multi-byte character split across two words (as
+     * mailers commonly do with CJK text) comes out whole.
+     * 
+     * @param body the string to decode.
+     * @param sb the builder to append the decoded string to.
+     */
+    public static void decodeEncodedWords(String body, StringBuilder sb) {
+        WordBuffer words = null;
         int previousEnd = 0;
         boolean previousWasEncoded = false;
 
-        StringBuilder sb = new StringBuilder();
-
         while (true) {
             int begin = body.indexOf("=?", previousEnd);
 
@@ -189,30 +244,58 @@ public class DecoderUtil {
             }
             end += 2;
 
-            String sep = body.substring(previousEnd, begin);
-
-            String decoded = decodeEncodedWord(body, begin, end);
-            if (decoded == null) {
-                sb.append(sep);
-                sb.append(body.substring(begin, end));
+            if (words == null) {
+                words = new WordBuffer(body.length());
+            }
+            boolean separatorIsWhitespace = isWhitespace(body, previousEnd, begin);
+            // Keep the bytes of the previous word if this one can be decoded with them
+            int mark = words.count;
+            Charset charset = decodeEncodedWord(body, begin, qm1, qm2, end, words);
+            if (charset == null) {
+                words.count = mark;
+                words.flush(sb);
+                sb.append(body, previousEnd, end);
+            } else if (previousWasEncoded && separatorIsWhitespace
+                    && charset.equals(words.charset) && !startsWithByteOrderMark(charset)) {
+                // Joined with the previous word, the whitespace between them is dropped
             } else {
-                if (!previousWasEncoded || !CharsetUtil.isWhitespace(sep)) {
-                    sb.append(sep);
+                words.flush(sb, mark);
+                if (!previousWasEncoded || !separatorIsWhitespace) {
+                    sb.append(body, previousEnd, begin);
                 }
-                sb.append(decoded);
+                words.charset = charset;
             }
 
             previousEnd = end;
-            previousWasEncoded = decoded != null;
+            previousWasEncoded = charset != null;
         }
 
-        if (previousEnd == 0)
-            return body;
+        if (words != null) {
+            words.flush(sb);
+        }
+        sb.append(body, previousEnd, body.length());
+    }
 
-        sb.append(body.substring(previousEnd));
-        return sb.toString();
+    /**
+     * Whether every word in the charset may start with a byte order mark
+     * that is only dropped at the start of the input. Words in these
+     * charsets are decoded one by one.
+     */
+    private static boolean startsWithByteOrderMark(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-16") || name.equals("UTF-32");
     }
 
+    private static boolean isWhitespace(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!CharsetUtil.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //END android-added
+
     // return null on error. Begin is index of '=?' in body.
     public static String decodeEncodedWord(String body, int begin, int end) {
         // Skip the '?=' chars in body and scan forward from there for next '?'
@@ -224,29 +307,45 @@ public class DecoderUtil {
         if (qm2 == -1 || qm2 == end - 2)
             return null;
 
-        String mimeCharset = body.substring(begin + 2, qm1);
-        String encoding = body.substring(qm1 + 1, qm2);
-        String encodedText = body.substring(qm2 + 1, end - 2);
+        //BEGIN android-changed
+        WordBuffer word = new WordBuffer(end - qm2);
+        Charset charset = decodeEncodedWord(body, begin, qm1, qm2, end, word);
+        return charset == null ? null : new String(word.bytes, 0, word.count, charset);
+        //END android-changed
+    }
 
-        String charset = CharsetUtil.toJavaCharset(mimeCharset);
+    //BEGIN android-added
+    /**
+     * Decodes the payload of the encoded word between <code>begin</code>
+     * and <code>end</code> and appends the bytes to <code>out</code>.
+     *
+     * @return the charset of the word, or <code>null</code> on error, in
+     *         which case some bytes may have been appended.
+     */
+    private static Charset decodeEncodedWord(String body, int begin, int qm1, int qm2, int end,
+            WordBuffer out) {
+        Charset charset = CharsetUtil.lookupCharset(body, begin + 2, qm1);
         if (charset == null) {
-            if (log.isWarnEnabled()) {
-                log.warn("MIME charset '" + mimeCharset + "' in encoded word '"
-                        + body.substring(begin, end) + "' doesn't have a "
-                        + "corresponding Java charset");
-            }
-            return null;
-        } else if (!CharsetUtil.isDecodingSupported(charset)) {
-            if (log.isWarnEnabled()) {
+            String mimeCharset = body.substring(begin + 2, qm1);
+            String javaCharset = CharsetUtil.toJavaCharset(mimeCharset);
+            if (javaCharset == null) {
+                if (log.isWarnEnabled()) {
+                    log.warn("MIME charset '" + mimeCharset + "' in encoded word '"
+                            + body.substring(begin, end) + "' doesn't have a "
+                            + "corresponding Java charset");
+                }
+            } else if (log.isWarnEnabled()) {
                 log.warn("Current JDK doesn't support decoding of charset '"
-                        + charset + "' (MIME charset '" + mimeCharset
+                        + javaCharset + "' (MIME charset '" + mimeCharset
                         + "' in encoded word '" + body.substring(begin, end)
                         + "')");
             }
             return null;
         }
 
-        if (encodedText.length() == 0) {
+        int textStart = qm2 + 1;
+        int textEnd = end - 2;
+        if (textStart == textEnd) {
             if (log.isWarnEnabled()) {
                 log.warn("Missing encoded text in encoded word: '"
                         + body.substring(begin, end) + "'");
@@ -254,31 +353,256 @@ public class DecoderUtil {
             return null;
         }
 
-        try {
-            if (encoding.equalsIgnoreCase("Q")) {
-                return DecoderUtil.decodeQ(encodedText, charset);
-            } else if (encoding.equalsIgnoreCase("B")) {
-                return DecoderUtil.decodeB(encodedText, charset);
+        char encoding = qm2 == qm1 + 2 ? body.charAt(qm1 + 1) : 0;
+        if (encoding == 'Q' || encoding == 'q') {
+            decodeQ(body, textStart, textEnd, out);
+        } else if (encoding == 'B' || encoding == 'b') {
+            decodeB(body, textStart, textEnd, out);
+        } else {
+            if (log.isWarnEnabled()) {
+                log.warn("Warning: Unknown encoding in encoded word '"
+                        + body.substring(begin, end) + "'");
+            }
+            return null;
+        }
+        return charset;
+    }
+
+    /**
+     * Decodes the 'B' encoded text between <code>start</code> and
+     * <code>end</code>. The result is the same as going through
+     * {@link Base64InputStream}, including what it does with padding in the
+     * middle of the text and with leftover characters at the end.
+     */
+    private static void decodeB(String s, int start, int end, WordBuffer out) {
+        int q0 = 0;
+        int q1 = 0;
+        int q2 = 0;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '=') {
+                // Like Base64InputStream, earlier characters stand in for
+                // missing ones
+                if (count == 3) {
+                    out.append((q0 << 2) | (q1 >> 4));
+                    out.append(((q1 & 0xf) << 4) | (q2 >> 2));
+                } else {
+                    out.append((q0 << 2) | (q1 >> 4));
+                }
+                return;
+            }
+            int value = base64Value(c);
+            if (value < 0) {
+                continue;
+            }
+            switch (count++) {
+                case 0:
+                    q0 = value;
+                    break;
+                case 1:
+                    q1 = value;
+                    break;
+                case 2:
+                    q2 = value;
+                    break;
+                default:
+                    out.append((q0 << 2) | (q1 >> 4));
+                    out.append(((q1 & 0xf) << 4) | (q2 >> 2));
+                    out.append(((q2 & 0x3) << 6) | value);
+                    count = 0;
+                    break;
+            }
+        }
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        } else if (c == '+') {
+            return 62;
+        } else if (c == '/') {
+            return 63;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the 'Q' encoded text between <code>start</code> and
+     * <code>end</code>. The result is the same as replacing '_' with "=20"
+     * and going through {@link QuotedPrintableInputStream}.
+     */
+    private static void decodeQ(String s, int start, int end, WordBuffer out) {
+        out.qpState = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t') {
+                int runEnd = i + 1;
+                while (runEnd < end && (s.charAt(runEnd) == ' ' || s.charAt(runEnd) == '\t')) {
+                    runEnd++;
+                }
+                // Whitespace before a line break or the end is transport padding
+                if (runEnd == end || s.charAt(runEnd) == '\r' || s.charAt(runEnd) == '\n') {
+                    i = runEnd - 1;
+                    continue;
+                }
+                for (; i < runEnd; i++) {
+                    out.feedQuotedPrintable(s.charAt(i));
+                }
+                i--;
+            } else if (c == '_') {
+                out.feedQuotedPrintable('=');
+                out.feedQuotedPrintable('2');
+                out.feedQuotedPrintable('0');
+            } else if (c < 0x80) {
+                out.feedQuotedPrintable(c);
             } else {
-                if (log.isWarnEnabled()) {
-                    log.warn("Warning: Unknown encoding in encoded word '"
-                            + body.substring(begin, end) + "'");
+                // Encoding the text as US-ASCII turns each character,
+                // surrogate pairs included, into a '?'
+                if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i++;
                 }
-                return null;
+                out.feedQuotedPrintable('?');
             }
-        } catch (UnsupportedEncodingException e) {
-            // should not happen because of isDecodingSupported check above
-            if (log.isWarnEnabled()) {
-                log.warn("Unsupported encoding in encoded word '"
-                        + body.substring(begin, end) + "'", e);
+        }
+    }
+
+    private static boolean isHexDigit(int b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f');
+    }
+
+    private static int hexValue(int b) {
+        if (b <= '9') {
+            return b - '0';
+        }
+        return (b | 0x20) - 'a' + 10;
+    }
+
+    /**
+     * Decoded bytes of the encoded words that haven't been turned into
+     * characters yet, all in {@link #charset}.
+     */
+    private static final class WordBuffer {
+        byte[] bytes;
+        int count;
+        Charset charset;
+
+        private CharsetDecoder decoder;
+        private CharBuffer chars;
+
+        // State of the quoted-printable decoder, see QuotedPrintableInputStream
+        int qpState;
+        private int qpFirstDigit;
+
+        WordBuffer(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void append(int b) {
+            if (count == bytes.length) {
+                byte[] newBytes = new byte[count * 2];
+                System.arraycopy(bytes, 0, newBytes, 0, count);
+                bytes = newBytes;
             }
-            return null;
-        } catch (RuntimeException e) {
-            if (log.isWarnEnabled()) {
-                log.warn("Could not decode encoded word '"
-                        + body.substring(begin, end) + "'", e);
+            bytes[count++] = (byte) b;
+        }
+
+        void feedQuotedPrintable(int b) {
+            switch (qpState) {
+                case 0:
+                    if (b == '=') {
+                        qpState = 1;
+                    } else {
+                        append(b);
+                    }
+                    break;
+                case 1:
+                    // "=" so far
+                    if (b == '\r') {
+                        qpState = 2;
+                    } else if (isHexDigit(b)) {
+                        qpFirstDigit = b;
+                        qpState = 3;
+                    } else if (b == '=') {
+                        append('=');
+                    } else {
+                        append('=');
+                        append(b);
+                        qpState = 0;
+                    }
+                    break;
+                case 2:
+                    // "=\r" so far
+                    if (b != '\n') {
+                        append('=');
+                        append('\r');
+                        append(b);
+                    }
+                    qpState = 0;
+                    break;
+                default:
+                    // "=" and a hex digit so far
+                    if (isHexDigit(b)) {
+                        append((hexValue(qpFirstDigit) << 4) | hexValue(b));
+                    } else {
+                        append('=');
+                        append(qpFirstDigit);
+                        append(b);
+                    }
+                    qpState = 0;
+                    break;
             }
-            return null;
+        }
+
+        void flush(StringBuilder sb) {
+            flush(sb, count);
+        }
+
+        /**
+         * Decodes the first <code>length</code> bytes into <code>sb</code>
+         * and keeps the rest for the next run.
+         */
+        void flush(StringBuilder sb, int length) {
+            if (length > 0) {
+                decode(sb, length);
+                System.arraycopy(bytes, length, bytes, 0, count - length);
+                count -= length;
+            }
+        }
+
+        private void decode(StringBuilder sb, int length) {
+            // Same replacement of bad input as new String(bytes, charset)
+            if (decoder == null || !decoder.charset().equals(charset)) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            } else {
+                decoder.reset();
+            }
+            if (chars == null) {
+                chars = CharBuffer.allocate(Math.max(length, 64));
+            }
+            ByteBuffer in = ByteBuffer.wrap(bytes, 0, length);
+            CoderResult result;
+            do {
+                result = decoder.decode(in, chars, true);
+                drain(sb);
+            } while (result.isOverflow());
+            do {
+                result = decoder.flush(chars);
+                drain(sb);
+            } while (result.isOverflow());
+        }
+
+        private void drain(StringBuilder sb) {
+            sb.append(chars.array(), 0, chars.position());
+            chars.clear();
         }
     }
+    //END android-added
 }
@@ -27,9 +27,11 @@ import org.apache.james.mime4j.Log;
 import org.apache.james.mime4j.LogFactory;
 //END
 import org.apache.james.mime4j.field.datetime.DateTime;
+import org.apache.james.mime4j.field.datetime.FastDateTimeParser;
 import org.apache.james.mime4j.field.datetime.parser.ParseException;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class DateTimeField extends Field {
     private Date date;
@@ -49,6 +51,65 @@ public class DateTimeField extends Field {
         return parseException;
     }
 
+    //BEGIN android-added
+    /**
+     * Number of recently parsed date strings remembered by {@link #parseDate(String)}. A mailbox
+     * sync sees the same few dates over and over (threads, digests, bulk mail).
+     */
+    private static final int DATE_CACHE_SIZE = 64;
+
+    private static final class CachedDate {
+        final String text;
+        final long time;
+
+        CachedDate(String text, long time) {
+            this.text = text;
+            this.time = time;
+        }
+    }
+
+    /** Direct-mapped by hash code; a colliding string simply replaces the slot. */
+    private static final AtomicReferenceArray<CachedDate> sDateCache =
+            new AtomicReferenceArray<CachedDate>(DATE_CACHE_SIZE);
+
+    /**
+     * Parses an unfolded date field body, without building a {@link Field}. The common forms are
+     * handled by {@link FastDateTimeParser}; anything else goes through the full grammar.
+     *
+     * @return a new {@link Date} owned by the caller
+     * @throws ParseException if the body isn't a valid date
+     */
+    public static Date parseDate(String body) throws ParseException {
+        return parseDate(body, false);
+    }
+
+    /**
+     * @param cleanedUp whether {@link LogUtils#cleanUpMimeDate} was already applied to the body
+     */
+    private static Date parseDate(String body, boolean cleanedUp) throws ParseException {
+        final int slot = body.hashCode() & (DATE_CACHE_SIZE - 1);
+        final CachedDate cached = sDateCache.get(slot);
+        if (cached != null && cached.text.equals(body)) {
+            return new Date(cached.time);
+        }
+
+        // The fast parser accepts the forms cleanUpMimeDate() fixes, so it gets the body as is
+        DateTime dateTime = FastDateTimeParser.parse(body);
+        if (dateTime == null) {
+            try {
+                dateTime = DateTime.parseWithGrammar(
+                        cleanedUp ? body : LogUtils.cleanUpMimeDate(body));
+            } catch (NumberFormatException e) {
+                // Digit runs too long for an int
+                throw new ParseException(e.getMessage());
+            }
+        }
+        final long time = dateTime.getDate().getTime();
+        sDateCache.set(slot, new CachedDate(body, time));
+        return new Date(time);
+    }
+    //END android-added
+
     public static class Parser implements FieldParser {
         private static Log log = LogFactory.getLog(Parser.class);
 
@@ -59,7 +120,7 @@ public class DateTimeField extends Field {
             body = LogUtils.cleanUpMimeDate(body);
             //END android-changed
             try {
-                date = DateTime.parse(body).getDate();
+                date = parseDate(body, true);
             }
             catch (ParseException e) {
                 if (log.isDebugEnabled()) {
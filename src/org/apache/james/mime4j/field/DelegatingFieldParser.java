@@ -21,6 +21,9 @@ import java.util.Map;
 public class DelegatingFieldParser implements FieldParser {
 
     private Map<String, FieldParser> parsers = new HashMap<String, FieldParser>();
+    //BEGIN android-added: known field names are dispatched by index
+    private final FieldParser[] knownParsers = new FieldParser[FieldNames.COUNT];
+    //END android-added
     private FieldParser defaultParser = new UnstructuredField.Parser();
 
     /**
@@ -29,17 +32,32 @@ public class DelegatingFieldParser implements FieldParser {
      * @param parser the parser for fields named <code>name</code>
      */
     public void setFieldParser(final String name, final FieldParser parser) {
-        parsers.put(name.toLowerCase(), parser);
+        final int index = FieldNames.indexOf(name);
+        if (index >= 0) {
+            knownParsers[index] = parser;
+        } else {
+            parsers.put(name.toLowerCase(), parser);
+        }
     }
 
     public FieldParser getParser(final String name) {
-        final FieldParser field = parsers.get(name.toLowerCase());
+        final int index = FieldNames.indexOf(name);
+        final FieldParser field = index >= 0 ? knownParsers[index]
+                : parsers.get(name.toLowerCase());
         if(field==null) {
             return defaultParser;
         }
         return field;
     }
 
+    /**
+     * Gets the parser for a name already resolved by {@link FieldNames#indexOf}.
+     */
+    FieldParser getParser(final int nameIndex) {
+        final FieldParser field = knownParsers[nameIndex];
+        return field != null ? field : defaultParser;
+    }
+
     public Field parse(final String name, final String body, final String raw) {
         final FieldParser parser = getParser(name);
         return parser.parse(name, body, raw);
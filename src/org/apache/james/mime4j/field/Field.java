@@ -19,9 +19,6 @@
 
 package org.apache.james.mime4j.field;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * The base class of all field classes.
  *
@@ -49,11 +46,6 @@ public abstract class Field {
     public static final String CONTENT_TRANSFER_ENCODING = 
                                         "Content-Transfer-Encoding";
     
-    private static final String FIELD_NAME_PATTERN = 
-        "^([\\x21-\\x39\\x3b-\\x7e]+)[ \t]*:";
-    private static final Pattern fieldNamePattern = 
-        Pattern.compile(FIELD_NAME_PATTERN);
-        
     private static final DefaultFieldParser parser = new DefaultFieldParser();
     
     private final String name;
@@ -87,23 +79,70 @@ public abstract class Field {
         /*
          * Unfold the field.
          */
-        final String unfolded = raw.replaceAll("\r|\n", "");
+        final String unfolded = unfold(raw);
         
         /*
-         * Split into name and value.
+         * Split into name and value. The name is the longest run of
+         * printable characters other than ':', followed by optional
+         * whitespace and a colon.
          */
-        final Matcher fieldMatcher = fieldNamePattern.matcher(unfolded);
-        if (!fieldMatcher.find()) {
+        final int length = unfolded.length();
+        int nameEnd = 0;
+        while (nameEnd < length && isFieldNameChar(unfolded.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        int colon = nameEnd;
+        while (colon < length && (unfolded.charAt(colon) == ' ' || unfolded.charAt(colon) == '\t')) {
+            colon++;
+        }
+        if (nameEnd == 0 || colon == length || unfolded.charAt(colon) != ':') {
             throw new IllegalArgumentException("Invalid field in string");
         }
-        final String name = fieldMatcher.group(1);
-        
-        String body = unfolded.substring(fieldMatcher.end());
-        if (body.length() > 0 && body.charAt(0) == ' ') {
-            body = body.substring(1);
+
+        int bodyStart = colon + 1;
+        if (bodyStart < length && unfolded.charAt(bodyStart) == ' ') {
+            bodyStart++;
         }
-        
-        return parser.parse(name, body, raw);
+        final String body = unfolded.substring(bodyStart);
+
+        final int nameIndex = FieldNames.indexOf(unfolded, 0, nameEnd);
+        if (nameIndex < 0) {
+            return parser.parse(unfolded.substring(0, nameEnd), body, raw);
+        }
+        String name = FieldNames.get(nameIndex);
+        if (name.length() != nameEnd || !unfolded.startsWith(name)) {
+            // Same field, different spelling; keep the original one
+            name = unfolded.substring(0, nameEnd);
+        }
+        return parser.getParser(nameIndex).parse(name, body, raw);
+    }
+
+    /**
+     * Removes all CR and LF characters. Returns the string itself when there
+     * are none, which is the case for most fields.
+     */
+    private static String unfold(final String raw) {
+        final int length = raw.length();
+        int i = 0;
+        while (i < length && raw.charAt(i) != '\r' && raw.charAt(i) != '\n') {
+            i++;
+        }
+        if (i == length) {
+            return raw;
+        }
+        final StringBuilder sb = new StringBuilder(length);
+        sb.append(raw, 0, i);
+        for (; i < length; i++) {
+            final char c = raw.charAt(i);
+            if (c != '\r' && c != '\n') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isFieldNameChar(final char c) {
+        return c >= 0x21 && c <= 0x7e && c != ':';
     }
     
     /**
@@ -0,0 +1,104 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field;
+
+/**
+ * Table of the field names that show up in practically every message. A name is looked up
+ * case-insensitively straight from the unfolded field string, without cutting a substring or
+ * lower-casing it, and resolves to a small index that {@link DelegatingFieldParser} uses to pick
+ * a parser. When the field is spelled exactly like the table entry, {@link Field} reuses the
+ * entry instead of allocating a new name string.
+ */
+final class FieldNames {
+    /** The known names, in their usual spelling. Indexes into this array are stable. */
+    private static final String[] NAMES = {
+        Field.SENDER, Field.FROM, Field.TO, Field.CC, Field.BCC, Field.REPLY_TO,
+        Field.RESENT_SENDER, Field.RESENT_FROM, Field.RESENT_TO, Field.RESENT_CC,
+        Field.RESENT_BCC, Field.DATE, Field.RESENT_DATE, Field.SUBJECT, Field.CONTENT_TYPE,
+        Field.CONTENT_TRANSFER_ENCODING, "Content-Disposition", "Content-ID",
+        "Content-Description", "Content-Language", "MIME-Version", "Message-ID", "In-Reply-To",
+        "References", "Received", "Return-Path", "Delivery-date", "Thread-Topic", "Thread-Index",
+        "X-Mailer", "List-Unsubscribe", "DKIM-Signature", "Authentication-Results"
+    };
+
+    static final int COUNT = NAMES.length;
+
+    /** Open-addressed table of indexes into {@link #NAMES} plus one, 0 meaning empty. */
+    private static final byte[] TABLE = new byte[128];
+    private static final int MASK = TABLE.length - 1;
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            final String name = NAMES[i];
+            int slot = hash(name, 0, name.length()) & MASK;
+            while (TABLE[slot] != 0) {
+                slot = (slot + 1) & MASK;
+            }
+            TABLE[slot] = (byte) (i + 1);
+        }
+    }
+
+    private FieldNames() {
+    }
+
+    /**
+     * Returns the index of the known field name equal, ignoring case, to
+     * <code>s.substring(start, end)</code>, or -1.
+     */
+    static int indexOf(String s, int start, int end) {
+        final int length = end - start;
+        int slot = hash(s, start, end) & MASK;
+        int entry;
+        while ((entry = TABLE[slot]) != 0) {
+            final String name = NAMES[entry - 1];
+            if (name.length() == length && s.regionMatches(true, start, name, 0, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & MASK;
+        }
+        return -1;
+    }
+
+    static int indexOf(String name) {
+        return indexOf(name, 0, name.length());
+    }
+
+    /**
+     * Returns the usual spelling of the known field name at the index.
+     */
+    static String get(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * ASCII case-insensitive hash. Field names are restricted to printable ASCII.
+     */
+    private static int hash(String s, int start, int end) {
+        int h = end - start;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            h = h * 31 + c;
+        }
+        return h ^ (h >>> 7);
+    }
+}
@@ -109,6 +109,12 @@ public class AddressList {
 	 * The string MUST be unfolded already.
 	 */
 	public static AddressList parse(String rawAddressList) throws ParseException {
+		//BEGIN android-changed: skip the JavaCC parser for simple lists
+		final AddressListScanner scanner = AddressListScanner.scan(rawAddressList);
+		if (scanner != null) {
+			return Builder.getInstance().buildAddressList(scanner);
+		}
+		//END android-changed
 		AddressListParser parser = new AddressListParser(new StringReader(rawAddressList));
 		return Builder.getInstance().buildAddressList(parser.parse());
 	}
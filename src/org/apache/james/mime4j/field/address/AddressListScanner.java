@@ -0,0 +1,301 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.address;
+
+/**
+ * Single-pass scanner for the address lists that make up almost all real headers:
+ * <pre>
+ *   a@b.com, John Doe &lt;john@b.com&gt;, "Doe, John" &lt;john@b.com&gt;, &lt;c@d.com&gt;
+ * </pre>
+ * Display names are either one quoted string without escapes, or atoms separated by spaces.
+ * Local parts and domains are dot-atoms. Group syntax, comments, routes, domain literals, tabs,
+ * escapes, quoted local parts, whitespace inside an address, non-ASCII outside quotes and
+ * non-Latin-1 inside them are not handled: {@link #scan} returns <code>null</code> and the
+ * caller should use its full parser. The scanner only records offsets; callers build whatever
+ * address objects they need.
+ */
+public final class AddressListScanner {
+    // Offsets recorded for each address
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int LOCAL_START = 2;
+    private static final int AT = 3;
+    private static final int DOMAIN_END = 4;
+    private static final int FLAGS = 5;
+    private static final int FIELDS = 6;
+
+    private static final int FLAG_HAS_NAME = 1;
+    private static final int FLAG_QUOTED_NAME = 2;
+
+    private final String mText;
+    private final int mLength;
+    private int mPos;
+    private int[] mEntries = new int[FIELDS * 4];
+    private int mCount;
+
+    private AddressListScanner(String text) {
+        mText = text;
+        mLength = text.length();
+    }
+
+    /**
+     * Scans an unfolded address list.
+     *
+     * @return the scanned list, or <code>null</code> if the text isn't in one of the simple forms
+     *         handled here. That doesn't mean it is invalid.
+     */
+    public static AddressListScanner scan(String text) {
+        final AddressListScanner scanner = new AddressListScanner(text);
+        return scanner.scanList() ? scanner : null;
+    }
+
+    private boolean scanList() {
+        while (true) {
+            skipSpaces();
+            if (mPos == mLength) {
+                return true;
+            }
+            if (mText.charAt(mPos) == ',') {
+                // Empty list element
+                mPos++;
+                continue;
+            }
+            if (!scanAddress()) {
+                return false;
+            }
+            skipSpaces();
+            if (mPos == mLength) {
+                return true;
+            }
+            if (mText.charAt(mPos) != ',') {
+                return false;
+            }
+            mPos++;
+        }
+    }
+
+    private boolean scanAddress() {
+        final char c = mText.charAt(mPos);
+        if (c == '<') {
+            return scanAngleAddress(-1, -1, 0);
+        }
+        if (c == '"') {
+            final int nameStart = ++mPos;
+            while (mPos < mLength) {
+                final char q = mText.charAt(mPos);
+                if (q == '"') {
+                    break;
+                }
+                // The generated token manager only reads Latin-1, so leave anything above that
+                // to the grammar to reject
+                if (q == '\\' || q > 0xff) {
+                    return false;
+                }
+                mPos++;
+            }
+            if (mPos == mLength) {
+                return false;
+            }
+            final int nameEnd = mPos++;
+            skipSpaces();
+            return mPos < mLength && mText.charAt(mPos) == '<'
+                    && scanAngleAddress(nameStart, nameEnd, FLAG_HAS_NAME | FLAG_QUOTED_NAME);
+        }
+        if (!isAtext(c)) {
+            return false;
+        }
+
+        final int wordStart = mPos;
+        final int wordEnd = skipDotAtom();
+        if (mPos < mLength && mText.charAt(mPos) == '@') {
+            final int at = mPos;
+            return scanAddrSpec(wordStart) && add(-1, -1, wordStart, at, mPos, 0);
+        }
+        // A display name made of atoms, which must be followed by an angle address
+        int nameEnd = wordEnd;
+        while (true) {
+            skipSpaces();
+            if (mPos == mLength) {
+                return false;
+            }
+            final char n = mText.charAt(mPos);
+            if (n == '<') {
+                return scanAngleAddress(wordStart, nameEnd, FLAG_HAS_NAME);
+            }
+            if (!isAtext(n)) {
+                return false;
+            }
+            nameEnd = skipDotAtom();
+        }
+    }
+
+    private boolean scanAngleAddress(int nameStart, int nameEnd, int flags) {
+        // Skip '<'
+        mPos++;
+        final int localStart = mPos;
+        if (mPos == mLength || !isAtext(mText.charAt(mPos))) {
+            return false;
+        }
+        skipDotAtom();
+        final int at = mPos;
+        if (mPos == mLength || mText.charAt(mPos) != '@' || !scanAddrSpec(localStart)
+                || mPos == mLength || mText.charAt(mPos) != '>') {
+            return false;
+        }
+        final int domainEnd = mPos++;
+        return add(nameStart, nameEnd, localStart, at, domainEnd, flags);
+    }
+
+    /**
+     * Checks the local part that ends at the current '@' and scans the domain after it.
+     */
+    private boolean scanAddrSpec(int localStart) {
+        if (!isSimpleDotAtom(localStart, mPos)) {
+            return false;
+        }
+        final int domainStart = ++mPos;
+        if (mPos == mLength || !isAtext(mText.charAt(mPos))) {
+            return false;
+        }
+        skipDotAtom();
+        return isSimpleDotAtom(domainStart, mPos);
+    }
+
+    private boolean add(int nameStart, int nameEnd, int localStart, int at, int domainEnd,
+            int flags) {
+        if ((mCount + 1) * FIELDS > mEntries.length) {
+            final int[] entries = new int[mEntries.length * 2];
+            System.arraycopy(mEntries, 0, entries, 0, mEntries.length);
+            mEntries = entries;
+        }
+        final int base = mCount * FIELDS;
+        mEntries[base + NAME_START] = nameStart;
+        mEntries[base + NAME_END] = nameEnd;
+        mEntries[base + LOCAL_START] = localStart;
+        mEntries[base + AT] = at;
+        mEntries[base + DOMAIN_END] = domainEnd;
+        mEntries[base + FLAGS] = flags;
+        mCount++;
+        return true;
+    }
+
+    /**
+     * Skips atext and dots, and returns the end of the run.
+     */
+    private int skipDotAtom() {
+        while (mPos < mLength) {
+            final char c = mText.charAt(mPos);
+            if (c != '.' && !isAtext(c)) {
+                break;
+            }
+            mPos++;
+        }
+        return mPos;
+    }
+
+    /**
+     * Whether the range has no leading, trailing or doubled dots. The full grammar accepts some
+     * of those, but they are rare enough to leave to it.
+     */
+    private boolean isSimpleDotAtom(int start, int end) {
+        if (start == end || mText.charAt(start) == '.' || mText.charAt(end - 1) == '.') {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (mText.charAt(i) == '.' && mText.charAt(i - 1) == '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipSpaces() {
+        while (mPos < mLength && mText.charAt(mPos) == ' ') {
+            mPos++;
+        }
+    }
+
+    /**
+     * RFC 5322 atext: letters, digits and <code>!#$%&amp;'*+-/=?^_`{|}~</code>.
+     */
+    private static boolean isAtext(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        switch (c) {
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+            case '-': case '/': case '=': case '?': case '^': case '_': case '`': case '{':
+            case '|': case '}': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Number of addresses in the list. Empty list elements are not counted.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Whether the address has a display name, which may be empty (<code>"" &lt;a@b&gt;</code>).
+     */
+    public boolean hasName(int index) {
+        return (mEntries[index * FIELDS + FLAGS] & FLAG_HAS_NAME) != 0;
+    }
+
+    /**
+     * Whether the display name was a quoted string.
+     */
+    public boolean isQuotedName(int index) {
+        return (mEntries[index * FIELDS + FLAGS] & FLAG_QUOTED_NAME) != 0;
+    }
+
+    /**
+     * Returns the display name as written, without the quotes of a quoted name, or
+     * <code>null</code>. Unquoted names keep the whitespace between their words. Encoded words
+     * are not decoded.
+     */
+    public String getName(int index) {
+        final int base = index * FIELDS;
+        return hasName(index)
+                ? mText.substring(mEntries[base + NAME_START], mEntries[base + NAME_END]) : null;
+    }
+
+    public String getLocalPart(int index) {
+        final int base = index * FIELDS;
+        return mText.substring(mEntries[base + LOCAL_START], mEntries[base + AT]);
+    }
+
+    public String getDomain(int index) {
+        final int base = index * FIELDS;
+        return mText.substring(mEntries[base + AT] + 1, mEntries[base + DOMAIN_END]);
+    }
+
+    /**
+     * Returns <code>local-part@domain</code>, without angle brackets.
+     */
+    public String getAddress(int index) {
+        final int base = index * FIELDS;
+        return mText.substring(mEntries[base + LOCAL_START], mEntries[base + DOMAIN_END]);
+    }
+}
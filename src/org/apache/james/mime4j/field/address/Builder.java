@@ -64,6 +64,26 @@ class Builder {
 		return new AddressList(list, true);
 	}
 
+	//BEGIN android-added
+	/**
+	 * Builds the same objects the grammar would for a list accepted by
+	 * {@link AddressListScanner}.
+	 */
+	public AddressList buildAddressList(AddressListScanner scanner) {
+		ArrayList<Address> list = new ArrayList<Address>(scanner.size());
+		for (int i = 0; i < scanner.size(); i++) {
+			Mailbox mailbox = new Mailbox(scanner.getLocalPart(i), scanner.getDomain(i));
+			if (scanner.hasName(i)) {
+				String name = DecoderUtil.decodeEncodedWords(scanner.getName(i));
+				list.add(new NamedMailbox(name, mailbox));
+			} else {
+				list.add(mailbox);
+			}
+		}
+		return new AddressList(list, true);
+	}
+	//END android-added
+
 	private Address buildAddress(ASTaddress node) {
 		ChildNodeIterator it = new ChildNodeIterator(node);
 		Node n = it.nextNode();
@@ -50,6 +50,17 @@ public class DateTime {
         this.timeZone = timeZone;
     }
 
+    DateTime(Date date, int year, int month, int day, int hour, int minute, int second, int timeZone) {
+        this.date = date;
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.hour = hour;
+        this.minute = minute;
+        this.second = second;
+        this.timeZone = timeZone;
+    }
+
     private int convertToYear(String yearString) {
         int year = Integer.parseInt(yearString);
         switch (yearString.length()) {
@@ -117,6 +128,21 @@ public class DateTime {
 
 
     public static DateTime parse(String dateString) throws ParseException {
+        //BEGIN android-changed: skip the JavaCC parser for the common forms
+        final DateTime fast = FastDateTimeParser.parse(dateString);
+        if (fast != null) {
+            return fast;
+        }
+        return parseWithGrammar(dateString);
+        //END android-changed
+    }
+
+    //BEGIN android-added
+    /**
+     * Parses with the full grammar only, for callers that already tried
+     * {@link FastDateTimeParser}.
+     */
+    public static DateTime parseWithGrammar(String dateString) throws ParseException {
         try {
             return new DateTimeParser(new StringReader(dateString)).parseAll();
         }
@@ -124,4 +150,5 @@ public class DateTime {
             throw new ParseException(err.getMessage());
         }
     }
+    //END android-added
 }
@@ -0,0 +1,295 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.datetime;
+
+import java.util.Date;
+
+/**
+ * Hand-written parser for the date-time forms that nearly all mail actually uses:
+ * <pre>
+ *   [Mon ,] 1*2DIGIT Jan 1*4DIGIT 1*2DIGIT : 1*2DIGIT [: 1*2DIGIT] zone [(comment)]
+ * </pre>
+ * where zone is <code>+hhmm</code>, <code>-hhmm</code>, one of the obsolete names UT, GMT, EST,
+ * EDT, CST, CDT, MST, MDT, PST and PDT, or <code>GMT+hhmm</code>. It returns exactly what the
+ * {@link org.apache.james.mime4j.field.datetime.parser.DateTimeParser} grammar would for these
+ * inputs, without regular expressions or a <code>Calendar</code>. Anything else (nested comments,
+ * military zones, unusual digit counts, ...) makes it return <code>null</code>, and the caller
+ * should fall back to {@link DateTime#parse(String)}.
+ */
+public final class FastDateTimeParser {
+    private static final String[] DAYS_OF_WEEK = {
+        "Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"
+    };
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final String[] ZONE_NAMES = {
+        "UT", "GMT", "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT"
+    };
+    private static final int[] ZONE_OFFSETS = {
+        0, 0, -500, -400, -600, -500, -700, -600, -800, -700
+    };
+
+    /**
+     * Before this year <code>GregorianCalendar</code> switches to the Julian calendar, which the
+     * arithmetic below doesn't model.
+     */
+    private static final int MIN_YEAR = 1600;
+
+    private final String mText;
+    private final int mLength;
+    private int mPos;
+
+    private FastDateTimeParser(String text) {
+        mText = text;
+        mLength = text.length();
+    }
+
+    /**
+     * Parses the given date-time string.
+     *
+     * @return the parsed date-time, or <code>null</code> if the string isn't in one of the forms
+     *         handled here. That doesn't mean the string is invalid.
+     */
+    public static DateTime parse(String text) {
+        return text == null ? null : new FastDateTimeParser(text).parseDateTime();
+    }
+
+    private DateTime parseDateTime() {
+        skipWhitespace();
+        if (mPos < mLength && isLetter(mText.charAt(mPos))) {
+            if (matchName(DAYS_OF_WEEK) < 0) {
+                return null;
+            }
+            skipWhitespace();
+            if (mPos >= mLength || mText.charAt(mPos) != ',') {
+                return null;
+            }
+            mPos++;
+            skipWhitespace();
+        }
+
+        final int day = readNumber(2);
+        skipWhitespace();
+        final int month = matchName(MONTHS) + 1;
+        skipWhitespace();
+        final int yearStart = mPos;
+        final int yearDigits = readNumber(4);
+        final int yearLength = mPos - yearStart;
+        skipWhitespace();
+        if (day < 0 || month <= 0 || yearDigits < 0) {
+            return null;
+        }
+
+        final int hour = readNumber(2);
+        skipWhitespace();
+        if (hour < 0 || !consume(':')) {
+            return null;
+        }
+        skipWhitespace();
+        final int minute = readNumber(2);
+        skipWhitespace();
+        int second = 0;
+        if (consume(':')) {
+            skipWhitespace();
+            second = readNumber(2);
+            skipWhitespace();
+        }
+        if (minute < 0 || second < 0) {
+            return null;
+        }
+
+        final int zone = readZone();
+        if (zone == Integer.MIN_VALUE || !skipTrailingComment()) {
+            return null;
+        }
+
+        final int year = convertToYear(yearDigits, yearLength);
+        if (year < MIN_YEAR) {
+            return null;
+        }
+        final Date date = new Date(toEpochMillis(year, month, day, hour, minute, second, zone));
+        return new DateTime(date, year, month, day, hour, minute, second, zone);
+    }
+
+    /**
+     * Reads a zone and returns it as <code>hhmm</code> with sign, like the JavaCC grammar does,
+     * or <code>Integer.MIN_VALUE</code>.
+     */
+    private int readZone() {
+        if (mPos >= mLength) {
+            return Integer.MIN_VALUE;
+        }
+        final char c = mText.charAt(mPos);
+        if (c == '+' || c == '-') {
+            mPos++;
+            skipWhitespace();
+            return readOffset(c);
+        }
+        final int index = matchName(ZONE_NAMES);
+        if (index < 0) {
+            return Integer.MIN_VALUE;
+        }
+        // "GMT-0700" at the very end is accepted as "-0700", see LogUtils.cleanUpMimeDate()
+        if (index == 1 && mLength - mPos == 5) {
+            final char sign = mText.charAt(mPos);
+            if (sign == '+' || sign == '-') {
+                mPos++;
+                return readOffset(sign);
+            }
+        }
+        return ZONE_OFFSETS[index];
+    }
+
+    private int readOffset(char sign) {
+        final int start = mPos;
+        final int offset = readNumber(4);
+        if (offset < 0 || mPos - start != 4) {
+            return Integer.MIN_VALUE;
+        }
+        return sign == '-' ? -offset : offset;
+    }
+
+    /**
+     * Skips whitespace and at most one simple comment, and returns whether that reached the end.
+     */
+    private boolean skipTrailingComment() {
+        skipWhitespace();
+        if (consume('(')) {
+            for (;; mPos++) {
+                if (mPos >= mLength) {
+                    return false;
+                }
+                final char c = mText.charAt(mPos);
+                if (c == ')') {
+                    mPos++;
+                    break;
+                }
+                if (c == '(' || c == '\\' || c == '\r' || c == '\n') {
+                    return false;
+                }
+            }
+            skipWhitespace();
+        }
+        return mPos == mLength;
+    }
+
+    /**
+     * Reads one to <code>maxDigits</code> digits, or returns -1 if there are none or too many.
+     */
+    private int readNumber(int maxDigits) {
+        final int start = mPos;
+        int value = 0;
+        while (mPos < mLength) {
+            final char c = mText.charAt(mPos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (mPos - start == maxDigits) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            mPos++;
+        }
+        return mPos == start ? -1 : value;
+    }
+
+    /**
+     * Matches a whole, case-sensitive word from the table and returns its index, or -1.
+     */
+    private int matchName(String[] names) {
+        final int start = mPos;
+        int end = start;
+        while (end < mLength && isLetter(mText.charAt(end))) {
+            end++;
+        }
+        final int length = end - start;
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            if (name.length() == length && mText.regionMatches(start, name, 0, length)) {
+                mPos = end;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean consume(char c) {
+        if (mPos < mLength && mText.charAt(mPos) == c) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mLength) {
+            final char c = mText.charAt(mPos);
+            if (c != ' ' && c != '\t') {
+                break;
+            }
+            mPos++;
+        }
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /**
+     * Same rules as {@link DateTime}: two digit years below 50 are in the 2000s, other two and
+     * three digit years are offsets from 1900.
+     */
+    private static int convertToYear(int year, int digits) {
+        switch (digits) {
+            case 1:
+            case 2:
+                return year < 50 ? 2000 + year : 1900 + year;
+            case 3:
+                return 1900 + year;
+            default:
+                return year;
+        }
+    }
+
+    /**
+     * Equivalent to {@link DateTime#convertToDate} for Gregorian years. Out of range days, hours,
+     * minutes and seconds roll over the same way a lenient calendar does.
+     */
+    static long toEpochMillis(int year, int month, int day, int hour, int minute, int second,
+            int timeZone) {
+        final long days = daysFromCivil(year, month) + day - 1;
+        long seconds = ((days * 24 + hour) * 60 + minute) * 60 + second;
+        seconds -= ((timeZone / 100) * 60 + timeZone % 100) * 60;
+        return seconds * 1000;
+    }
+
+    /**
+     * Days from 1970-01-01 to the first of the given month.
+     */
+    private static long daysFromCivil(int year, int month) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = y / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -22,9 +22,9 @@ package org.apache.james.mime4j.util;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 //BEGIN android-changed: Stubbing out logging
 import org.apache.james.mime4j.Log;
@@ -798,6 +798,11 @@ public class CharsetUtil {
         private String canonical = null;
         private String mime = null;
         private String[] aliases = null;
+        /**
+         * The decoder for this charset once looked up: a java.nio.charset.Charset,
+         * {@link #UNSUPPORTED}, or null if not looked up yet.
+         */
+        private volatile Object javaCharset = null;
 
         private Charset(String canonical, String mime, String[] aliases) {
             this.canonical = canonical;
@@ -1013,9 +1018,24 @@ public class CharsetUtil {
 
     /**
      * Maps character set names to Charset objects. All possible names of
-     * a charset will be mapped to the Charset.
+     * a charset will be mapped to the Charset. This is an open-addressed
+     * table keyed by lower-case name so that lookups can ignore case
+     * without lower-casing the name first.
      */
-    private static HashMap<String, Charset> charsetMap = null;
+    private static String[] charsetKeys = null;
+    private static Charset[] charsetValues = null;
+
+    /** Marks a known charset that the VM can't decode. */
+    private static final Object UNSUPPORTED = new Object();
+
+    /**
+     * Charsets handed out by {@link #getCharset(String)}, including the
+     * fallback for names the VM doesn't know, so that bad names only cost
+     * one exception.
+     */
+    private static final int MAX_RESOLVED_NAMES = 64;
+    private static final ConcurrentHashMap<String, java.nio.charset.Charset> resolvedNames =
+            new ConcurrentHashMap<String, java.nio.charset.Charset>();
 
     static {
         decodingSupported = new TreeSet<String>();
@@ -1036,16 +1056,26 @@ public class CharsetUtil {
             }
         }
 
-        charsetMap = new HashMap<String, Charset>();
+        int names = 0;
+        for (int i = 0; i < JAVA_CHARSETS.length; i++) {
+            Charset c = JAVA_CHARSETS[i];
+            names += 2 + (c.aliases != null ? c.aliases.length : 0);
+        }
+        int capacity = 16;
+        while (capacity < names * 2) {
+            capacity <<= 1;
+        }
+        charsetKeys = new String[capacity];
+        charsetValues = new Charset[capacity];
         for (int i = 0; i < JAVA_CHARSETS.length; i++) {
             Charset c = JAVA_CHARSETS[i];
-            charsetMap.put(c.canonical.toLowerCase(Locale.US), c);
+            putCharset(c.canonical, c);
             if (c.mime != null) {
-                charsetMap.put(c.mime.toLowerCase(Locale.US), c);
+                putCharset(c.mime, c);
             }
             if (c.aliases != null) {
                 for (int j = 0; j < c.aliases.length; j++) {
-                    charsetMap.put(c.aliases[j].toLowerCase(Locale.US), c);
+                    putCharset(c.aliases[j], c);
                 }
             }
         }
@@ -1058,6 +1088,78 @@ public class CharsetUtil {
         }
     }
 
+    /**
+     * Adds or replaces the mapping for a name, like HashMap.put() did.
+     */
+    private static void putCharset(String name, Charset c) {
+        String key = name.toLowerCase(Locale.US);
+        int mask = charsetKeys.length - 1;
+        int slot = hashIgnoreCase(key, 0, key.length()) & mask;
+        while (charsetKeys[slot] != null && !charsetKeys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        charsetKeys[slot] = key;
+        charsetValues[slot] = c;
+    }
+
+    /**
+     * Finds the Charset for a name in any case, or null.
+     */
+    private static Charset findCharset(String name) {
+        return findCharset(name, 0, name.length());
+    }
+
+    /**
+     * Finds the Charset for <code>s.substring(start, end)</code> in any
+     * case, or null.
+     */
+    private static Charset findCharset(String s, int start, int end) {
+        int mask = charsetKeys.length - 1;
+        int slot = hashIgnoreCase(s, start, end) & mask;
+        String key;
+        while ((key = charsetKeys[slot]) != null) {
+            if (equalsLowerCase(key, s, start, end)) {
+                return charsetValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Hash of the name with ASCII letters lower-cased. Charset names are
+     * ASCII, anything else simply won't match.
+     */
+    private static int hashIgnoreCase(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            h = 31 * h + c;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equalsLowerCase(String lowerCaseKey, String s, int start,
+            int end) {
+        int len = lowerCaseKey.length();
+        if (end - start != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCaseKey.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * ANDROID:  THE FOLLOWING SET OF STATIC STRINGS ARE COPIED FROM A NEWER VERSION OF MIME4J
      */
@@ -1163,7 +1265,7 @@ public class CharsetUtil {
      * @return the MIME preferred name or <code>null</code> if not known.
      */
     public static String toMimeCharset(String charsetName) {
-        Charset c = charsetMap.get(charsetName.toLowerCase(Locale.US));
+        Charset c = findCharset(charsetName);
         if (c != null) {
             return c.mime;
         }
@@ -1182,19 +1284,72 @@ public class CharsetUtil {
      * @return the canonical Java name or <code>null</code> if not known.
      */
     public static String toJavaCharset(String charsetName) {
-        Charset c = charsetMap.get(charsetName.toLowerCase(Locale.US));
+        Charset c = findCharset(charsetName);
         if (c != null) {
             return c.canonical;
         }
         return null;
     }
 
+    /**
+     * Gets the Java character set to decode text labelled with the given
+     * MIME character set name. This is the same as {@link #toJavaCharset}
+     * followed by {@link #isDecodingSupported} and a lookup of the result,
+     * but the Charset instance is cached with the name table, so no
+     * strings are created and unsupported charsets are only tried once.
+     *
+     * @param charsetName the character set name to look for, in any case.
+     * @return the charset, or <code>null</code> if the name is not known
+     *         or the VM can't decode it.
+     */
+    public static java.nio.charset.Charset lookupCharset(String charsetName) {
+        return lookupCharset(charsetName, 0, charsetName.length());
+    }
+
+    /**
+     * Same as {@link #lookupCharset(String)} for the name
+     * <code>s.substring(start, end)</code>, without creating it.
+     */
+    public static java.nio.charset.Charset lookupCharset(String s, int start, int end) {
+        Charset c = findCharset(s, start, end);
+        if (c == null) {
+            return null;
+        }
+        Object javaCharset = c.javaCharset;
+        if (javaCharset == null) {
+            javaCharset = UNSUPPORTED;
+            if (decodingSupported.contains(c.canonical.toLowerCase(Locale.US))) {
+                try {
+                    javaCharset = java.nio.charset.Charset.forName(c.canonical);
+                } catch (IllegalCharsetNameException e) {
+                } catch (UnsupportedCharsetException e) {
+                }
+            }
+            // Racing threads resolve the same value, so there is no need to lock
+            c.javaCharset = javaCharset;
+        }
+        return javaCharset == UNSUPPORTED ? null : (java.nio.charset.Charset) javaCharset;
+    }
+
     public static java.nio.charset.Charset getCharset(String charsetName) {
         String defaultCharset = "ISO-8859-1";
 
         // Use the default chareset if given charset is null
         if(charsetName == null) charsetName = defaultCharset;
 
+        java.nio.charset.Charset charset = resolvedNames.get(charsetName);
+        if (charset == null) {
+            charset = forNameOrDefault(charsetName, defaultCharset);
+            if (resolvedNames.size() >= MAX_RESOLVED_NAMES) {
+                resolvedNames.clear();
+            }
+            resolvedNames.put(charsetName, charset);
+        }
+        return charset;
+    }
+
+    private static java.nio.charset.Charset forNameOrDefault(String charsetName,
+            String defaultCharset) {
         try {
             return java.nio.charset.Charset.forName(charsetName);
         } catch (IllegalCharsetNameException e) {
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import static com.android.emailcommon.internet.BodyTestUtils.filledArray;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.MessagingException;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+@SmallTest
+public class BodyStoreTest extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TempDirectory.setTempDirectory(getContext());
+    }
+
+    public void testThreshold() throws Exception {
+        final BodyStore store = new BodyStore(BodyStore.CHUNK_SIZE * 3);
+        final BodyStore diskOnlyStore = new BodyStore(0);
+        try {
+            assertTrue(decode(store, BodyStore.CHUNK_SIZE) instanceof BinaryMemoryBody);
+            assertTrue(decode(store, BodyStore.CHUNK_SIZE * 3) instanceof BinaryMemoryBody);
+            assertTrue(decode(store, BodyStore.CHUNK_SIZE * 3 + 1) instanceof BinaryTempFileBody);
+            assertTrue(decode(diskOnlyStore, 0) instanceof BinaryMemoryBody);
+            assertTrue(decode(diskOnlyStore, 1) instanceof BinaryTempFileBody);
+        } finally {
+            store.release();
+            diskOnlyStore.release();
+        }
+    }
+
+    public void testBodiesLiveUntilRelease() throws Exception {
+        final BodyStore store = new BodyStore(BodyStore.CHUNK_SIZE);
+        final Body small = decode(store, 100);
+        final Body large = decode(store, BodyStore.CHUNK_SIZE * 2);
+        final File[] before = TempDirectory.getTempDirectory().listFiles();
+
+        // Reading doesn't dispose of a body owned by the store
+        for (int i = 0; i < 2; i++) {
+            assertEquals(100, IOUtils.toByteArray(small.getInputStream()).length);
+            assertTrue(Arrays.equals(filledArray(BodyStore.CHUNK_SIZE * 2),
+                    IOUtils.toByteArray(large.getInputStream())));
+        }
+
+        store.release();
+        try {
+            small.getInputStream();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            large.getInputStream();
+            fail();
+        } catch (MessagingException expected) {
+        }
+        assertEquals(before.length - 1, TempDirectory.getTempDirectory().listFiles().length);
+    }
+
+    public void testConcurrentDecoding() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int seed = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        // Each body must keep its own bytes while other threads take the chunks
+                        // their stores give back
+                        for (int j = 0; j < 2000; j++) {
+                            final byte[] data = filledArray(BodyStore.CHUNK_SIZE - j, seed);
+                            final BodyStore store = new BodyStore();
+                            final Body unmanaged = BodyStore.UNMANAGED.decodeBody(
+                                    new ByteArrayInputStream(data), null);
+                            final Body managed = store.decodeBody(
+                                    new ByteArrayInputStream(data), null);
+                            assertTrue(Arrays.equals(data,
+                                    IOUtils.toByteArray(managed.getInputStream())));
+                            store.release();
+                            assertTrue(Arrays.equals(data,
+                                    IOUtils.toByteArray(unmanaged.getInputStream())));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static Body decode(BodyStore store, int length) throws Exception {
+        return store.decodeBody(new ByteArrayInputStream(filledArray(length)), null);
+    }
+}
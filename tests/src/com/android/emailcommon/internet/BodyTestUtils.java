@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+/**
+ * Test data for the body and MIME tests.
+ */
+final class BodyTestUtils {
+    private BodyTestUtils() {
+    }
+
+    /**
+     * Returns an array of the given length whose bytes aren't all the same, so that misplaced or
+     * stale bytes show up when it is compared.
+     */
+    static byte[] filledArray(int length) {
+        return filledArray(length, 0);
+    }
+
+    /**
+     * Like {@link #filledArray(int)}, with contents that differ for each seed.
+     */
+    static byte[] filledArray(int length, int seed) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+}
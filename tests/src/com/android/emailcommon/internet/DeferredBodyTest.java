@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.Multipart;
+import com.android.emailcommon.mail.Part;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+@SmallTest
+public class DeferredBodyTest extends AndroidTestCase {
+    // LF line endings, which the parser converts
+    private static final String MESSAGE =
+            "From: a@b.com\n"
+            + "Subject: test\n"
+            + "Content-Type: multipart/mixed; boundary=outer\n"
+            + "\n"
+            + "preamble\n"
+            + "--outer\n"
+            + "Content-Type: multipart/alternative; boundary=inner\n"
+            + "\n"
+            + "--inner\n"
+            + "Content-Type: text/plain\n"
+            + "\n"
+            + "plain text\n"
+            + "second line\n"
+            + "--inner\n"
+            + "Content-Type: text/html\n"
+            + "Content-Transfer-Encoding: quoted-printable\n"
+            + "\n"
+            + "<p>html=3D</p>\n"
+            + "--inner--\n"
+            + "--outer\n"
+            + "Content-Type: message/rfc822\n"
+            + "\n"
+            + "Subject: inner\n"
+            + "\n"
+            + "embedded\n"
+            + "--outer\n"
+            + "Content-Type: application/octet-stream\n"
+            + "Content-Transfer-Encoding: base64\n"
+            + "\n"
+            + "AAECAwQFBgcICQ==\n"
+            + "--outer--\n"
+            + "epilogue\n";
+
+    private int mOpenCount;
+
+    private final DeferredBody.Source mSource = new DeferredBody.Source() {
+        @Override
+        public InputStream open() throws IOException {
+            mOpenCount++;
+            return new ByteArrayInputStream(MESSAGE.getBytes("US-ASCII"));
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TempDirectory.setTempDirectory(getContext());
+    }
+
+    public void testStructureMatchesFullParse() throws Exception {
+        final MimeMessage structure = new MimeMessage(mSource, 0);
+        assertEquals(1, mOpenCount);
+        assertEquals("test", structure.getSubject());
+
+        final MimeMessage full = new MimeMessage(mSource.open());
+        assertPartsEqual(full, structure);
+        // One more open for each leaf part read
+        assertEquals(2 + 4, mOpenCount);
+    }
+
+    public void testPreview() throws Exception {
+        final MimeMessage message = new MimeMessage(mSource, 6);
+        final Multipart mixed = (Multipart) message.getBody();
+        final Multipart alternative = (Multipart) mixed.getBodyPart(0).getBody();
+
+        final DeferredBody text = (DeferredBody) alternative.getBodyPart(0).getBody();
+        assertEquals("plain ", new String(text.getPreview(), "US-ASCII"));
+        assertEquals("plain text\r\nsecond line".length(), text.getLength());
+
+        final DeferredBody html = (DeferredBody) alternative.getBodyPart(1).getBody();
+        assertEquals("<p>htm", new String(html.getPreview(), "US-ASCII"));
+
+        // Cut in the middle of the encoded data
+        final DeferredBody binary = (DeferredBody) mixed.getBodyPart(2).getBody();
+        final byte[] preview = binary.getPreview();
+        assertTrue(preview.length > 0 && preview.length < 10);
+        for (int i = 0; i < preview.length; i++) {
+            assertEquals(i, preview[i]);
+        }
+
+        // Parsing doesn't read the bodies again
+        assertEquals(1, mOpenCount);
+    }
+
+    private static void assertPartsEqual(Part expected, Part actual) throws Exception {
+        assertEquals(expected.getMimeType(), actual.getMimeType());
+        final Body expectedBody = expected.getBody();
+        final Body actualBody = actual.getBody();
+        if (expectedBody instanceof Multipart) {
+            final Multipart expectedMultipart = (Multipart) expectedBody;
+            final Multipart actualMultipart = (Multipart) actualBody;
+            assertEquals(expectedMultipart.getCount(), actualMultipart.getCount());
+            for (int i = 0; i < expectedMultipart.getCount(); i++) {
+                assertPartsEqual(expectedMultipart.getBodyPart(i), actualMultipart.getBodyPart(i));
+            }
+        } else if (expectedBody instanceof Part) {
+            assertPartsEqual((Part) expectedBody, (Part) actualBody);
+        } else {
+            assertTrue(actualBody instanceof DeferredBody);
+            final byte[] expectedBytes = IOUtils.toByteArray(expectedBody.getInputStream());
+            final byte[] actualBytes = IOUtils.toByteArray(actualBody.getInputStream());
+            assertEquals(new String(expectedBytes, "ISO-8859-1"),
+                    new String(actualBytes, "ISO-8859-1"));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import static com.android.emailcommon.internet.BodyTestUtils.filledArray;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.emailcommon.TempDirectory;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+@SmallTest
+public class MimePartInputStreamTest extends AndroidTestCase {
+    private BodyStore mBodyStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TempDirectory.setTempDirectory(getContext());
+        // Everything goes to a temp file, which reading doesn't delete
+        mBodyStore = new BodyStore(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBodyStore.release();
+        super.tearDown();
+    }
+
+    public void testMatchesWriteTo() throws Exception {
+        final MimeMultipart alternative = new MimeMultipart();
+        alternative.setSubType("alternative");
+        alternative.addBodyPart(new MimeBodyPart(new TextBody("plain \u00e9"), "text/plain"));
+        alternative.addBodyPart(new MimeBodyPart(new TextBody("<b>html</b>"), "text/html"));
+
+        final MimeMultipart mixed = new MimeMultipart();
+        mixed.setPreamble("preamble");
+        mixed.addBodyPart(new MimeBodyPart(alternative, alternative.getContentType()));
+        // Sizes around the encoding chunk
+        final int[] sizes = { 0, 1, 57 * 64 - 1, 57 * 64, 57 * 64 * 3 + 10 };
+        for (int size : sizes) {
+            mixed.addBodyPart(new MimeBodyPart(new BinaryMemoryBody(filledArray(size), size),
+                    "application/octet-stream"));
+        }
+        mixed.addBodyPart(new MimeBodyPart(
+                mBodyStore.decodeBody(new ByteArrayInputStream(filledArray(10000)), null),
+                "image/png"));
+
+        final MimeMessage message = new MimeMessage();
+        message.setSubject("test");
+        message.setBody(mixed);
+        message.setHeader(MimeHeader.HEADER_CONTENT_TYPE, mixed.getContentType());
+
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        message.writeTo(written);
+
+        assertTrue(Arrays.equals(written.toByteArray(),
+                IOUtils.toByteArray(message.getInputStream())));
+
+        // One byte at a time
+        final InputStream in = message.getInputStream();
+        final ByteArrayOutputStream read = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            read.write(b);
+        }
+        assertTrue(Arrays.equals(written.toByteArray(), read.toByteArray()));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import static com.android.emailcommon.internet.BodyTestUtils.filledArray;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.TransferableBody;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+@SmallTest
+public class MimeUtilityTest extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TempDirectory.setTempDirectory(getContext());
+    }
+
+    public void testDecodeBodyKeepsSmallPartsInMemory() throws Exception {
+        final Body body = MimeUtility.decodeBody(
+                new ByteArrayInputStream("aGVsbG8=".getBytes("US-ASCII")), "base64");
+        assertTrue(body instanceof BinaryMemoryBody);
+        assertEquals("hello", new String(IOUtils.toByteArray(body.getInputStream()), "US-ASCII"));
+        assertEquals(5, ((TransferableBody) body).getSize());
+
+        final byte[] full = filledArray(BodyStore.DEFAULT_MEMORY_THRESHOLD);
+        final Body fullBody = MimeUtility.decodeBody(new ByteArrayInputStream(full), null);
+        assertTrue(fullBody instanceof BinaryMemoryBody);
+        assertTrue(Arrays.equals(full, IOUtils.toByteArray(fullBody.getInputStream())));
+    }
+
+    public void testDecodeBodySpillsLargePartsToFile() throws Exception {
+        final byte[] data = filledArray(BodyStore.DEFAULT_MEMORY_THRESHOLD + 1);
+        final Body body = MimeUtility.decodeBody(new ByteArrayInputStream(data), "7bit");
+        assertTrue(body instanceof BinaryTempFileBody);
+
+        final TransferableBody transferable = (TransferableBody) body;
+        assertEquals(data.length, transferable.getSize());
+        final ByteBuffer mapped = transferable.getByteBuffer();
+        final byte[] mappedBytes = new byte[mapped.remaining()];
+        mapped.get(mappedBytes);
+        assertTrue(Arrays.equals(data, mappedBytes));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, transferable.transferTo(Channels.newChannel(out)));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+
+        // Still readable as a stream, which disposes of the file
+        assertTrue(Arrays.equals(data, IOUtils.toByteArray(body.getInputStream())));
+    }
+}
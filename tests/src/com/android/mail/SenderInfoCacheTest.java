@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.PackageManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+@SmallTest
+public class SenderInfoCacheTest extends AndroidTestCase {
+    /** Long enough that the entries aren't dropped while a test runs. */
+    private static final long NEVER_MS = 60 * 60 * 1000;
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "sender_info_test");
+        FileUtils.deleteDirectory(mDirectory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(mDirectory);
+        super.tearDown();
+    }
+
+    public void testServesContactsWithoutPhotosAndUnknownSenders() {
+        final SenderInfoCache cache = new SenderInfoCache(mDirectory, NEVER_MS);
+        final int generation = cache.getGeneration();
+        cache.put(generation, "news@example.com", SenderInfoCache.NO_CONTACT,
+                SenderInfoCache.NO_PHOTO, null);
+        cache.put(generation, "friend@example.com", 7, SenderInfoCache.NO_PHOTO, null);
+
+        assertEquals(SenderInfoCache.NO_CONTACT, cache.get("news@example.com").contactId);
+        final SenderInfoCache.Entry entry = cache.get("friend@example.com");
+        assertEquals(7, entry.contactId);
+        assertNull(entry.photoHash);
+        assertNull(cache.get("stranger@example.com"));
+    }
+
+    public void testEntriesAndPhotosAreKeptAcrossRuns() {
+        final byte[] photo = new byte[] { 1, 2, 3 };
+        final SenderInfoCache cache = new SenderInfoCache(mDirectory, NEVER_MS);
+        cache.put(cache.getGeneration(), "friend@example.com", 7, 70, photo);
+        cache.save();
+
+        final SenderInfoCache reloaded = new SenderInfoCache(mDirectory, NEVER_MS);
+        final SenderInfoCache.Entry entry = reloaded.get("friend@example.com");
+        assertEquals(7, entry.contactId);
+        assertEquals(70, entry.photoId);
+        assertTrue(Arrays.equals(photo, reloaded.getPhoto(entry)));
+    }
+
+    public void testContactChangesAreDebounced() throws InterruptedException {
+        final SenderInfoCache cache = new SenderInfoCache(mDirectory, 200);
+        final int generation = cache.getGeneration();
+        cache.put(generation, "friend@example.com", 7, SenderInfoCache.NO_PHOTO, null);
+
+        for (int i = 0; i < 3; i++) {
+            cache.onContactsChanged();
+        }
+        // Looked up before the change, so not cached
+        cache.put(generation, "other@example.com", 8, SenderInfoCache.NO_PHOTO, null);
+        assertNull(cache.get("other@example.com"));
+        // Dropped only once the contacts have stopped changing
+        assertNotNull(cache.get("friend@example.com"));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (cache.get("friend@example.com") != null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertNull(cache.get("friend@example.com"));
+    }
+
+    public void testLosingReadContactsDeletesTheCache() throws IOException {
+        final File cacheDir = new File(getContext().getCacheDir(), "sender_info_test_root");
+        try {
+            final SenderInfoCache cache =
+                    new SenderInfoCache(new File(cacheDir, "sender_info"), NEVER_MS);
+            cache.put(cache.getGeneration(), "friend@example.com", 7, 70, new byte[] { 1 });
+            cache.save();
+            assertTrue(new File(cacheDir, "sender_info").isDirectory());
+
+            final Context denied = new ContextWrapper(getContext()) {
+                @Override
+                public Context getApplicationContext() {
+                    return this;
+                }
+
+                @Override
+                public File getCacheDir() {
+                    return cacheDir;
+                }
+
+                @Override
+                public int checkPermission(String permission, int pid, int uid) {
+                    return PackageManager.PERMISSION_DENIED;
+                }
+            };
+            assertNull(SenderInfoCache.getInstance(denied));
+            assertFalse(new File(cacheDir, "sender_info").exists());
+        } finally {
+            FileUtils.deleteDirectory(cacheDir);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.Contacts;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.util.Arrays;
+
+@SmallTest
+public class SenderInfoLoaderTest extends AndroidTestCase {
+    private static final long NEVER_MS = 60 * 60 * 1000;
+    private static final byte[] PHOTO = new byte[] { 1, 2, 3 };
+
+    /**
+     * Knows a contact with a photo, and a contact whose photo row is missing.
+     */
+    private static class ContactsProvider extends MockContentProvider {
+        int mQueries;
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            mQueries++;
+            if (Arrays.asList(projection).contains(Email.DATA)) {
+                final MatrixCursor cursor = new MatrixCursor(projection);
+                for (String email : selectionArgs) {
+                    if (email.equals("photo@example.com")) {
+                        cursor.addRow(new Object[] { 1, email, 10, 100 });
+                    } else if (email.equals("missing@example.com")) {
+                        cursor.addRow(new Object[] { 2, email, 20, 200 });
+                    }
+                }
+                return cursor;
+            }
+            final MatrixCursor cursor = new MatrixCursor(projection);
+            for (String photoId : selectionArgs) {
+                if (photoId.equals("100")) {
+                    cursor.addRow(new Object[] { 100, PHOTO });
+                }
+            }
+            return cursor;
+        }
+    }
+
+    private File mDirectory;
+    private ContactsProvider mProvider;
+    private MockContentResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "sender_info_loader_test");
+        FileUtils.deleteDirectory(mDirectory);
+        mProvider = new ContactsProvider();
+        mResolver = new MockContentResolver();
+        mResolver.addProvider(ContactsContract.AUTHORITY, mProvider);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(mDirectory);
+        super.tearDown();
+    }
+
+    public void testCachesContactsWithoutPhotosAndUnknownSenders() {
+        final SenderInfoCache cache = new SenderInfoCache(mDirectory, NEVER_MS);
+        final ImmutableSet<String> emails = ImmutableSet.of("photo@example.com",
+                "missing@example.com", "stranger@example.com");
+
+        assertLoaded(SenderInfoLoader.loadContactPhotos(mResolver, cache, emails, false));
+        assertEquals(2, mProvider.mQueries);
+
+        // Everything was found out the first time
+        assertLoaded(SenderInfoLoader.loadContactPhotos(mResolver, cache, emails, false));
+        assertEquals(2, mProvider.mQueries);
+    }
+
+    private static void assertLoaded(ImmutableMap<String, ContactInfo> infos) {
+        final ContactInfo photo = infos.get("photo@example.com");
+        assertEquals(ContentUris.withAppendedId(Contacts.CONTENT_URI, 10), photo.contactUri);
+        assertTrue(Arrays.equals(PHOTO, photo.photoBytes));
+
+        final ContactInfo missing = infos.get("missing@example.com");
+        assertEquals(ContentUris.withAppendedId(Contacts.CONTENT_URI, 20), missing.contactUri);
+        assertNull(missing.photoBytes);
+
+        final ContactInfo stranger = infos.get("stranger@example.com");
+        assertNull(stranger.contactUri);
+        assertNull(stranger.photoBytes);
+    }
+}
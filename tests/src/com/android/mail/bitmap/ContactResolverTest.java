@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.bitmap;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.bitmap.RequestKey;
+import com.android.bitmap.ReusableBitmap;
+import com.android.mail.bitmap.ContactResolver.ContactDrawableInterface;
+import com.android.mail.bitmap.ContactResolver.ContactResolverTask;
+import com.android.mail.bitmap.ContactResolver.DecodeJob;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@SmallTest
+public class ContactResolverTest extends AndroidTestCase {
+
+    /**
+     * Records the emails of each batch instead of querying the contacts provider.
+     */
+    private static class RecordingResolver extends ContactResolver {
+        final BlockingQueue<List<String>> mBatches = new ArrayBlockingQueue<List<String>>(10);
+
+        RecordingResolver() {
+            super(null, null);
+        }
+
+        @Override
+        protected ContactResolverTask getContactResolverTask(List<DecodeJob> batch) {
+            final List<String> emails = Lists.newArrayList();
+            for (DecodeJob job : batch) {
+                emails.add(job.getEmail());
+            }
+            mBatches.add(emails);
+            return new ContactResolverTask(batch, null, null, this) {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    return null;
+                }
+            };
+        }
+
+        List<String> takeBatch() throws InterruptedException {
+            return mBatches.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class TestDrawable implements ContactDrawableInterface {
+        @Override
+        public void onDecodeComplete(RequestKey key, ReusableBitmap result) {
+        }
+
+        @Override
+        public int getDecodeWidth() {
+            return 48;
+        }
+
+        @Override
+        public int getDecodeHeight() {
+            return 48;
+        }
+    }
+
+    /**
+     * Runs on the UI thread, where the resolver is used.
+     */
+    private static void runOnUiThread(Runnable runnable) {
+        new Handler(Looper.getMainLooper()).post(runnable);
+    }
+
+    public void testBatchKeepsRequestOrder() throws InterruptedException {
+        final RecordingResolver resolver = new RecordingResolver();
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                resolver.add(new ContactRequest("C", "c@example.com"), new TestDrawable());
+                resolver.add(new ContactRequest("A", "a@example.com"), new TestDrawable());
+                // Shown twice, decoded once
+                resolver.add(new ContactRequest("C", "c@example.com"), new TestDrawable());
+                resolver.add(new ContactRequest("B", "b@example.com"), new TestDrawable());
+            }
+        });
+        assertEquals(Lists.newArrayList("c@example.com", "a@example.com", "b@example.com"),
+                resolver.takeBatch());
+    }
+
+    public void testRemovedRequestsAreNotLookedUp() throws InterruptedException {
+        final RecordingResolver resolver = new RecordingResolver();
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final ContactRequest recycled = new ContactRequest("A", "a@example.com");
+                final TestDrawable drawable = new TestDrawable();
+                resolver.add(recycled, drawable);
+                resolver.add(new ContactRequest("B", "b@example.com"), new TestDrawable());
+                resolver.remove(recycled, drawable);
+            }
+        });
+        assertEquals(Lists.newArrayList("b@example.com"), resolver.takeBatch());
+    }
+}
@@ -20,18 +20,26 @@ package com.android.mail.browse;
 import android.app.Activity;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
+import android.content.pm.ProviderInfo;
 import android.net.Uri;
+import android.os.Handler;
 import android.os.Looper;
 import android.os.RemoteException;
 import android.test.ProviderTestCase2;
 import android.test.mock.MockContentResolver;
 import android.test.suitebuilder.annotation.SmallTest;
 
+import com.android.mail.browse.ConversationCursor.ConversationProvider;
+import com.android.mail.providers.Conversation;
+import com.android.mail.providers.UIProvider;
+import com.android.mail.providers.UIProvider.ConversationColumns;
+
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @SmallTest
 public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
@@ -43,18 +51,24 @@ public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
     Activity mActivity;
     Context mMockContext;
     MockContentResolver mMockResolver;
+    ConversationProvider mSavedProvider;
+    ConversationCursor mCursor;
 
     private static final String CONVO_TABLE = "convo";
+    private static final String CONVERSATIONS_TABLE = "conversations";
+
+    /**
+     * Forwards the operations of the cursors under test to the mock resolver.
+     */
+    public static class TestConversationProvider extends ConversationProvider {
+        @Override
+        protected String getAuthority() {
+            return "com.android.mail.browse.test.conversations";
+        }
+    }
 
     public ConversationCursorTests() {
         super(TestProvider.class, TestProvider.AUTHORITY);
-        Looper.prepare();
-        mActivity = new Activity() {
-            @Override
-            public ContentResolver getContentResolver() {
-                return mMockResolver;
-            }
-        };
     }
 
     @Override
@@ -62,13 +76,177 @@ public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
         super.setUp();
         mMockContext = getMockContext();
         mMockResolver = (MockContentResolver)mMockContext.getContentResolver();
+        mSavedProvider = ConversationCursor.sProvider;
+        final TestConversationProvider conversationProvider = new TestConversationProvider();
+        final ProviderInfo info = new ProviderInfo();
+        info.authority = conversationProvider.getAuthority();
+        conversationProvider.attachInfo(mMockContext, info);
+        // Activities need a looper, and ConversationCursor expects to be used on the UI thread
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mActivity = new Activity() {
+                    @Override
+                    public Context getApplicationContext() {
+                        return mMockContext;
+                    }
+
+                    @Override
+                    public Object getSystemService(String name) {
+                        return null;
+                    }
+                };
+            }
+        });
     }
 
     @Override
     public void tearDown() throws Exception {
+        if (mCursor != null) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    mCursor.close();
+                }
+            });
+        }
+        ConversationCursor.sProvider = mSavedProvider;
         super.tearDown();
     }
 
+    private static void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final RuntimeException[] exception = new RuntimeException[1];
+        final Error[] error = new Error[1];
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    exception[0] = e;
+                } catch (Error e) {
+                    error[0] = e;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        if (exception[0] != null) {
+            throw exception[0];
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    /**
+     * Inserts an unread, unstarred conversation and returns it.
+     */
+    private Conversation insertConversation() {
+        final Uri table = new Uri.Builder().scheme("content").authority(TestProvider.AUTHORITY)
+                .path(CONVERSATIONS_TABLE).build();
+        final ContentValues values = new ContentValues();
+        values.put(ConversationColumns.READ, 0);
+        values.put(ConversationColumns.STARRED, 0);
+        final Uri uri = mMockResolver.insert(table, values);
+        values.clear();
+        values.put(ConversationColumns.URI, uri.toString());
+        mMockResolver.update(uri, values, null, null);
+        return new Conversation.Builder()
+                .setId(Long.parseLong(uri.getLastPathSegment()))
+                .setUri(uri)
+                .build();
+    }
+
+    /**
+     * Creates and loads a cursor over the inserted conversations, and forgets about the updates
+     * made while inserting them.
+     */
+    private void loadCursor() throws InterruptedException {
+        final Uri table = new Uri.Builder().scheme("content").authority(TestProvider.AUTHORITY)
+                .path(CONVERSATIONS_TABLE).build();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mCursor = new ConversationCursor(mActivity, table, false, "test");
+                mCursor.load();
+            }
+        });
+        getProvider().mUpdateUris.clear();
+        getProvider().mUpdateValues.clear();
+    }
+
+    private static Uri withSequence(Uri uri, int sequence) {
+        return uri.buildUpon().appendQueryParameter(UIProvider.SEQUENCE_QUERY_PARAMETER,
+                Integer.toString(sequence)).build();
+    }
+
+    public void testMergesConsecutiveUpdates() throws InterruptedException {
+        final Conversation conversation = insertConversation();
+        loadCursor();
+
+        final int[] sequences = new int[2];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                sequences[0] = mCursor.updateBoolean(conversation, ConversationColumns.STARRED,
+                        true);
+                sequences[1] = mCursor.updateBoolean(conversation, ConversationColumns.READ,
+                        true);
+            }
+        });
+        ConversationCursor.sProvider.flushPendingOperations();
+
+        final TestProvider provider = getProvider();
+        assertEquals(1, provider.mUpdateUris.size());
+        assertEquals(withSequence(conversation.uri, sequences[1]), provider.mUpdateUris.get(0));
+        final ContentValues values = provider.mUpdateValues.get(0);
+        assertEquals(Boolean.TRUE, values.getAsBoolean(ConversationColumns.STARRED));
+        assertEquals(Boolean.TRUE, values.getAsBoolean(ConversationColumns.READ));
+    }
+
+    public void testDropsUpdateThatRestoresOriginalValue() throws InterruptedException {
+        final Conversation conversation = insertConversation();
+        loadCursor();
+
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mCursor.updateBoolean(conversation, ConversationColumns.STARRED, true);
+                mCursor.updateBoolean(conversation, ConversationColumns.STARRED, false);
+            }
+        });
+        ConversationCursor.sProvider.flushPendingOperations();
+
+        assertTrue(getProvider().mUpdateUris.isEmpty());
+    }
+
+    public void testKeepsColumnsThatChanged() throws InterruptedException {
+        final Conversation conversation = insertConversation();
+        loadCursor();
+
+        final int[] sequence = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mCursor.updateBoolean(conversation, ConversationColumns.READ, true);
+                mCursor.updateBoolean(conversation, ConversationColumns.STARRED, true);
+                sequence[0] = mCursor.updateBoolean(conversation, ConversationColumns.READ,
+                        false);
+            }
+        });
+        ConversationCursor.sProvider.flushPendingOperations();
+
+        final TestProvider provider = getProvider();
+        assertEquals(1, provider.mUpdateUris.size());
+        assertEquals(withSequence(conversation.uri, sequence[0]), provider.mUpdateUris.get(0));
+        final ContentValues values = provider.mUpdateValues.get(0);
+        assertEquals(1, values.size());
+        assertEquals(Boolean.TRUE, values.getAsBoolean(ConversationColumns.STARRED));
+    }
+
     private static final String SUBJECT_COLUMN = "subject";
     private static final String FOLDER_COLUMN = "folder";
     private static final String READ_COLUMN = "read";
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SmallTest
+public class ConversationOperationBatcherTest extends AndroidTestCase {
+    /** Long enough that nothing is flushed by the deadline while a test runs. */
+    private static final long NEVER_MS = 60 * 60 * 1000;
+
+    /**
+     * Records the batches instead of sending them to a provider.
+     */
+    private static class RecordingBatcher extends ConversationOperationBatcher {
+        final List<String> mAuthorities = Lists.newArrayList();
+        final List<ArrayList<ContentProviderOperation>> mBatches = Lists.newArrayList();
+
+        RecordingBatcher() {
+            super(null, NEVER_MS);
+        }
+
+        @Override
+        synchronized void applyBatch(String authority,
+                ArrayList<ContentProviderOperation> operations) {
+            mAuthorities.add(authority);
+            mBatches.add(operations);
+            notifyAll();
+        }
+
+        synchronized void waitForBatches(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (mBatches.size() < count && System.currentTimeMillis() < deadline) {
+                wait(deadline - System.currentTimeMillis());
+            }
+        }
+    }
+
+    private static Uri key(long id) {
+        return Uri.parse("content://test/conversation/" + id);
+    }
+
+    private static Uri uri(long id, int sequence) {
+        return Uri.parse("content://test/conversation/" + id + "?seq=" + sequence);
+    }
+
+    private static ContentValues values(String column, int value) {
+        final ContentValues values = new ContentValues();
+        values.put(column, value);
+        return values;
+    }
+
+    private static ContentValues getValues(ContentProviderOperation operation) {
+        return operation.resolveValueBackReferences(new ContentProviderResult[0], 0);
+    }
+
+    public void testMergesUpdatesAcrossSequences() {
+        final RecordingBatcher batcher = new RecordingBatcher();
+        batcher.enqueueUpdate("test", key(1), uri(1, 1), values("read", 1), null);
+        batcher.enqueueUpdate("test", key(1), uri(1, 2), values("starred", 1), null);
+        batcher.enqueueUpdate("test", key(1), uri(1, 3), values("read", 0), null);
+        batcher.flush();
+
+        final List<ContentProviderOperation> ops = batcher.mBatches.get(0);
+        assertEquals(1, ops.size());
+        assertEquals(uri(1, 3), ops.get(0).getUri());
+        final ContentValues values = getValues(ops.get(0));
+        assertEquals(Integer.valueOf(0), values.getAsInteger("read"));
+        assertEquals(Integer.valueOf(1), values.getAsInteger("starred"));
+    }
+
+    public void testDropsUpdateThatRestoresOriginals() {
+        final RecordingBatcher batcher = new RecordingBatcher();
+        batcher.enqueueUpdate("test", key(1), uri(1, 1), values("read", 1),
+                values("read", 0));
+        batcher.enqueueUpdate("test", key(1), uri(1, 2), values("read", 0),
+                values("read", 1));
+        batcher.flush();
+
+        assertTrue(batcher.mBatches.isEmpty());
+    }
+
+    public void testDoesNotCoalescePastOtherOperations() {
+        final RecordingBatcher batcher = new RecordingBatcher();
+        batcher.enqueueUpdate("test", key(1), uri(1, 1), values("read", 1), null);
+        batcher.enqueue("test", key(1), ContentProviderOperation.newDelete(uri(1, 1)).build());
+        batcher.enqueueUpdate("test", key(1), uri(1, 1), values("read", 0), null);
+        batcher.flush();
+
+        final List<ContentProviderOperation> ops = batcher.mBatches.get(0);
+        assertEquals(3, ops.size());
+        assertTrue(ops.get(0).isUpdate());
+        assertTrue(ops.get(1).isDelete());
+        assertTrue(ops.get(2).isUpdate());
+    }
+
+    public void testKeepsOrderAcrossUris() {
+        final RecordingBatcher batcher = new RecordingBatcher();
+        batcher.enqueueUpdate("first", key(3), uri(3, 1), values("read", 1), null);
+        batcher.enqueueUpdate("second", key(1), uri(1, 1), values("read", 1), null);
+        batcher.enqueueUpdate("first", key(2), uri(2, 1), values("read", 1), null);
+        batcher.enqueueUpdate("first", key(3), uri(3, 1), values("seen", 1), null);
+        batcher.flush();
+
+        assertEquals(Lists.newArrayList("first", "second"), batcher.mAuthorities);
+        final List<ContentProviderOperation> first = batcher.mBatches.get(0);
+        assertEquals(2, first.size());
+        // The merged update moves behind the ones queued before it
+        assertEquals(uri(2, 1), first.get(0).getUri());
+        assertEquals(uri(3, 1), first.get(1).getUri());
+        assertEquals(uri(1, 1), batcher.mBatches.get(1).get(0).getUri());
+    }
+
+    public void testFlushesWhenFull() throws InterruptedException {
+        final RecordingBatcher batcher = new RecordingBatcher();
+        for (int i = 1; i < ConversationOperationBatcher.MAX_PENDING_OPERATIONS; i++) {
+            batcher.enqueueUpdate("test", key(i), uri(i, 1), values("read", 1), null);
+        }
+        batcher.enqueueUpdate("test", key(0), uri(0, 1), values("read", 1), null);
+        batcher.waitForBatches(1);
+
+        synchronized (batcher) {
+            assertEquals(1, batcher.mBatches.size());
+            assertEquals(ConversationOperationBatcher.MAX_PENDING_OPERATIONS,
+                    batcher.mBatches.get(0).size());
+        }
+        // Nothing left to send
+        batcher.flush();
+        assertEquals(1, batcher.mBatches.size());
+    }
+}
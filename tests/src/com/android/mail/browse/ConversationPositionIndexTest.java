@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class ConversationPositionIndexTest extends AndroidTestCase {
+
+    private static String uri(long id) {
+        return "content://test/conversation/" + id;
+    }
+
+    public void testLookups() {
+        final long[] ids = { 40L, 7L, 1000L, -3L, 12L };
+        final ConversationPositionIndex.Builder builder =
+                new ConversationPositionIndex.Builder(ids.length);
+        for (long id : ids) {
+            builder.add(id, uri(id));
+        }
+        final ConversationPositionIndex index = builder.build();
+
+        for (int position = 0; position < ids.length; position++) {
+            assertEquals(position, index.getPosition(ids[position]));
+            assertEquals(position, index.getPosition(uri(ids[position])));
+        }
+        assertEquals(-1, index.getPosition(8L));
+        assertEquals(-1, index.getPosition(uri(8L)));
+        assertEquals(-1, index.getPosition((String) null));
+        assertFalse(index.contains(uri(8L)));
+        assertEquals(ids.length, index.idCount());
+        assertEquals(ids.length, index.uriCount());
+    }
+
+    public void testDuplicatesKeepLastRow() {
+        final ConversationPositionIndex.Builder builder = new ConversationPositionIndex.Builder(4);
+        builder.add(1L, uri(1L));
+        builder.add(2L, uri(2L));
+        builder.add(1L, uri(1L));
+        builder.add(3L, uri(3L));
+        final ConversationPositionIndex index = builder.build();
+
+        assertEquals(2, index.getPosition(1L));
+        assertEquals(2, index.getPosition(uri(1L)));
+        assertEquals(3, index.idCount());
+        assertEquals(3, index.uriCount());
+    }
+
+    public void testHashCollisions() {
+        // "Aa" and "BB" have the same String.hashCode()
+        final ConversationPositionIndex.Builder builder = new ConversationPositionIndex.Builder(2);
+        builder.add(1L, "Aa");
+        builder.add(2L, "BB");
+        final ConversationPositionIndex index = builder.build();
+
+        assertEquals(0, index.getPosition("Aa"));
+        assertEquals(1, index.getPosition("BB"));
+        assertEquals(2, index.uriCount());
+    }
+
+    public void testEmpty() {
+        assertEquals(-1, ConversationPositionIndex.EMPTY.getPosition(1L));
+        assertEquals(-1, ConversationPositionIndex.EMPTY.getPosition(uri(1L)));
+    }
+}
@@ -85,6 +85,9 @@ public class TestProvider extends ContentProvider {
     private HashMap<String, ContentValues> mMockStore = new HashMap<String, ContentValues>();
     // And we'll generate new id's from here
     long mMockId = 1;
+    // The uri and values of every update, in the order they were made
+    final ArrayList<Uri> mUpdateUris = new ArrayList<Uri>();
+    final ArrayList<ContentValues> mUpdateValues = new ArrayList<ContentValues>();
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
@@ -172,6 +175,8 @@ public class TestProvider extends ContentProvider {
         if (selection != null || selectionArgs != null) {
             throw new UnsupportedOperationException();
         }
+        mUpdateUris.add(uri);
+        mUpdateValues.add(new ContentValues(newValues));
         final int match = sURIMatcher.match(uri);
         ArrayList<ContentValues> updateValuesList = new ArrayList<ContentValues>();
         String path = uri.getPath();
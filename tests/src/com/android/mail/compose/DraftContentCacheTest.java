@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.compose;
+
+import android.content.ContentValues;
+import android.graphics.Typeface;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+@SmallTest
+public class DraftContentCacheTest extends AndroidTestCase {
+
+    public void testQuotedTextConvertedOnce() {
+        final DraftContentCache cache = new DraftContentCache();
+        assertNull(cache.getQuotedText(null));
+        assertNull(cache.getQuotedText(""));
+
+        final StringBuilder quoted = new StringBuilder("<div>On Monday, a wrote:<br>hi</div>");
+        final DraftContentCache.QuotedText first = cache.getQuotedText(quoted);
+        assertSame(first, cache.getQuotedText(quoted));
+        assertSame(first.getPlainText(), first.getPlainText());
+
+        // New quoted text is converted again
+        assertNotSame(first, cache.getQuotedText(quoted.toString()));
+    }
+
+    public void testBodyHtmlFollowsTextAndSpans() {
+        final DraftContentCache cache = new DraftContentCache();
+        final SpannableString body = new SpannableString("hello world");
+        assertNull(cache.getBodyHtml(body, body.toString()));
+
+        cache.putBodyHtml(body, body.toString(), "<p>hello world</p>");
+        assertEquals("<p>hello world</p>", cache.getBodyHtml(body, body.toString()));
+        final SpannableString copy = new SpannableString(body);
+        assertEquals("<p>hello world</p>", cache.getBodyHtml(copy, copy.toString()));
+
+        final SpannableString edited = new SpannableString("hello there");
+        assertNull(cache.getBodyHtml(edited, edited.toString()));
+
+        body.setSpan(new StyleSpan(Typeface.BOLD), 0, 5, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertNull(cache.getBodyHtml(body, body.toString()));
+    }
+
+    public void testSavedValues() {
+        final DraftContentCache cache = new DraftContentCache();
+        final ContentValues values = new ContentValues();
+        values.put("subject", "hi");
+        assertFalse(cache.isSaved(values));
+
+        cache.setSaved(new ContentValues(values));
+        assertTrue(cache.isSaved(values));
+        values.put("subject", "hi again");
+        assertFalse(cache.isSaved(values));
+
+        cache.setSaved(null);
+        assertFalse(cache.isSaved(values));
+    }
+}
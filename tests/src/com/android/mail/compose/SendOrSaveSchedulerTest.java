@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.compose;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SmallTest
+public class SendOrSaveSchedulerTest extends AndroidTestCase {
+    private static final String ACCOUNT = "account";
+
+    private final SendOrSaveScheduler mScheduler = new SendOrSaveScheduler();
+    private final List<String> mEvents = Collections.synchronizedList(Lists.<String>newArrayList());
+
+    /**
+     * Records when it runs or is superseded.
+     */
+    private class RecordingTask extends SendOrSaveScheduler.Task {
+        final String mName;
+
+        RecordingTask(String name, Object draft, boolean send) {
+            super(draft, ACCOUNT, send);
+            mName = name;
+        }
+
+        @Override
+        public void run() {
+            mEvents.add("run " + mName);
+        }
+
+        @Override
+        void onSuperseded() {
+            mEvents.add("superseded " + mName);
+        }
+    }
+
+    /**
+     * Keeps the account's thread busy until {@link #finish()} is called.
+     */
+    private class BlockingTask extends RecordingTask {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mFinish = new CountDownLatch(1);
+
+        BlockingTask() {
+            super("blocking", "blocking draft", true);
+        }
+
+        @Override
+        public void run() {
+            mStarted.countDown();
+            try {
+                mFinish.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.run();
+        }
+
+        void finish() {
+            mFinish.countDown();
+        }
+    }
+
+    private BlockingTask block() throws InterruptedException {
+        final BlockingTask blocking = new BlockingTask();
+        mScheduler.schedule(blocking);
+        assertTrue(blocking.mStarted.await(5, TimeUnit.SECONDS));
+        return blocking;
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (mScheduler.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // The last task may still be running
+        final CountDownLatch done = new CountDownLatch(1);
+        mScheduler.schedule(new RecordingTask("idle", "idle draft", false) {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testSaveSupersedesEarlierSaveOfSameDraft() throws InterruptedException {
+        final BlockingTask blocking = block();
+        // Drafts are matched by equality, not identity
+        mScheduler.schedule(new RecordingTask("first", new Long(1), false));
+        mScheduler.schedule(new RecordingTask("other", new Long(2), false));
+        mScheduler.schedule(new RecordingTask("second", new Long(1), false));
+        assertEquals(Lists.newArrayList("superseded first"), Lists.newArrayList(mEvents));
+        assertEquals(2, mScheduler.getQueueDepth());
+
+        blocking.finish();
+        waitForIdle();
+        assertEquals(Lists.newArrayList("superseded first", "run blocking", "run other",
+                "run second"), Lists.newArrayList(mEvents));
+    }
+
+    public void testSendSupersedesSaveButNotSend() throws InterruptedException {
+        final BlockingTask blocking = block();
+        mScheduler.schedule(new RecordingTask("save", 1L, false));
+        mScheduler.schedule(new RecordingTask("send", 1L, true));
+        mScheduler.schedule(new RecordingTask("send again", 1L, true));
+
+        blocking.finish();
+        waitForIdle();
+        assertEquals(Lists.newArrayList("superseded save", "run blocking", "run send",
+                "run send again"), Lists.newArrayList(mEvents));
+    }
+
+    public void testSendsRunBeforeSaves() throws InterruptedException {
+        final BlockingTask blocking = block();
+        mScheduler.schedule(new RecordingTask("save 1", 1L, false));
+        mScheduler.schedule(new RecordingTask("save 2", 2L, false));
+        mScheduler.schedule(new RecordingTask("send 3", 3L, true));
+        mScheduler.schedule(new RecordingTask("send 4", 4L, true));
+
+        blocking.finish();
+        waitForIdle();
+        assertEquals(Lists.newArrayList("run blocking", "run send 3", "run send 4", "run save 1",
+                "run save 2"), Lists.newArrayList(mEvents));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.perf;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@SmallTest
+public class MetricsTest extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Metrics.reset();
+    }
+
+    public void testBucketsCoverAllDurations() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.getBucket(LatencyHistogram.MAX_MICROS);
+                bucket++) {
+            final long lowest = LatencyHistogram.getBucketLowest(bucket);
+            final long highest = LatencyHistogram.getBucketHighest(bucket);
+            assertEquals(previousHighest + 1, lowest);
+            assertEquals(bucket, LatencyHistogram.getBucket(lowest));
+            assertEquals(bucket, LatencyHistogram.getBucket(highest));
+            // Within about 6% of any duration in the bucket
+            assertTrue(highest - lowest <= lowest / 16);
+            previousHighest = highest;
+        }
+    }
+
+    public void testPercentiles() {
+        final LatencyHistogram.Snapshot empty = Metrics.SANITIZE_HTML.getSnapshot();
+        assertEquals(0, empty.count);
+        assertEquals(0, empty.getPercentileMicros(50));
+
+        for (int i = 1; i <= 100; i++) {
+            Metrics.SANITIZE_HTML.record(i * 1000);
+        }
+        Metrics.SANITIZE_HTML.record(-5);
+        final LatencyHistogram.Snapshot snapshot = Metrics.SANITIZE_HTML.getSnapshot();
+        assertEquals(101, snapshot.count);
+        assertEquals(5050 * 1000, snapshot.totalMicros);
+        assertEquals(100 * 1000, snapshot.maxMicros);
+        assertEquals(0, snapshot.getPercentileMicros(0));
+        assertEquals(50 * 1000, snapshot.getPercentileMicros(50), 50 * 1000 / 16);
+        assertEquals(99 * 1000, snapshot.getPercentileMicros(99), 99 * 1000 / 16);
+        assertEquals(100 * 1000, snapshot.getPercentileMicros(100));
+    }
+
+    public void testCountsFromManyThreads() throws InterruptedException {
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        Metrics.NOTIFICATIONS_POSTED.increment();
+                        Metrics.UPDATE_NOTIFICATIONS.record(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Long.valueOf(4000), Metrics.getCounts().get("notifications_posted"));
+        assertEquals(4000, Metrics.getSnapshots().get("update_notifications").count);
+    }
+
+    public void testDump() {
+        Metrics.CONVERSATION_CURSOR_REFRESHES_SKIPPED.add(3);
+        final StringWriter out = new StringWriter();
+        Metrics.dump("", new PrintWriter(out, true));
+        assertTrue(out.toString().contains("conversation_cursor_refreshes_skipped 3"));
+        assertTrue(out.toString().contains("sanitize_html [count=0"));
+    }
+
+    public void testNamesAreUnique() {
+        try {
+            Metrics.counter("sanitize_html");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.net.Uri;
+import android.test.IsolatedContext;
+import android.test.LoaderTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.browse.TestProvider;
+import com.android.mail.providers.UIProvider.FolderColumns;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class InboxUnreadLoaderTest extends LoaderTestCase {
+    private TestProvider mProvider;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final MockContentResolver resolver = new MockContentResolver();
+        final IsolatedContext context = new IsolatedContext(resolver, getContext());
+        final Context wrappedContext = new ContextWrapper(context) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+        };
+        setContext(wrappedContext);
+        mProvider = new TestProvider(wrappedContext);
+        resolver.addProvider(TestProvider.AUTHORITY, mProvider);
+    }
+
+    private Uri insertInbox(String name, int unreadCount) {
+        final Uri table = new Uri.Builder().scheme("content").authority(TestProvider.AUTHORITY)
+                .path("folder").build();
+        final ContentValues values = new ContentValues();
+        values.put(FolderColumns.NAME, name);
+        values.put(FolderColumns.UNREAD_COUNT, unreadCount);
+        final Uri uri = mProvider.insert(table, values);
+        final ContentValues uriValues = new ContentValues();
+        uriValues.put(FolderColumns.URI, uri.toString());
+        mProvider.update(uri, uriValues, null, null);
+        return uri;
+    }
+
+    @SmallTest
+    public void testLoadsInboxesInOrder() {
+        final Uri first = insertInbox("first", 3);
+        final Uri second = insertInbox("second", 5);
+
+        final InboxUnreadLoader.Result result = getLoaderResultSynchronously(
+                new InboxUnreadLoader(getContext(), ImmutableList.of(second, first)));
+        assertEquals(Lists.newArrayList(second, first),
+                Lists.newArrayList(result.inboxes.keySet()));
+        assertEquals(5, result.inboxes.get(second).unreadCount);
+        assertEquals(3, result.inboxes.get(first).unreadCount);
+    }
+
+    @SmallTest
+    public void testSharedInboxIsLoadedOnce() {
+        final Uri shared = insertInbox("shared", 2);
+        final Uri other = insertInbox("other", 7);
+
+        final InboxUnreadLoader.Result result = getLoaderResultSynchronously(
+                new InboxUnreadLoader(getContext(), ImmutableList.of(shared, other, shared)));
+        assertEquals(Lists.newArrayList(shared, other),
+                Lists.newArrayList(result.inboxes.keySet()));
+        assertEquals(2, result.inboxes.get(shared).unreadCount);
+    }
+}
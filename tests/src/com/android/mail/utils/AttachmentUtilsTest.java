@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.providers.Attachment;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+@SmallTest
+public class AttachmentUtilsTest extends AndroidTestCase {
+    private File mSource;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mSource != null) {
+            mSource.delete();
+        }
+        super.tearDown();
+    }
+
+    private Attachment createAttachment(byte[] data) throws IOException {
+        mSource = File.createTempFile("source", ".bin", getContext().getFilesDir());
+        FileUtils.writeByteArrayToFile(mSource, data);
+        final Attachment attachment = new Attachment();
+        attachment.contentUri = Uri.fromFile(mSource);
+        attachment.size = data.length;
+        return attachment;
+    }
+
+    private static byte[] filledArray(int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    public void testEachAttachmentGetsItsOwnFile() throws IOException {
+        final byte[] data = filledArray(1000);
+        final Attachment attachment = createAttachment(data);
+        final String first = AttachmentUtils.cacheAttachmentUri(getContext(), attachment, null);
+        final String second = AttachmentUtils.cacheAttachmentUri(getContext(), attachment, null);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertFalse(first.equals(second));
+
+        // The owner of one file may delete it without affecting the other
+        assertTrue(new File(first).delete());
+        assertTrue(Arrays.equals(data, FileUtils.readFileToByteArray(new File(second))));
+        new File(second).delete();
+    }
+
+    public void testCopiesMoreThanOneBuffer() throws IOException {
+        final byte[] data = filledArray(600 * 1024 + 7);
+        final String cached = AttachmentUtils.cacheAttachmentUri(getContext(),
+                createAttachment(data), null);
+        assertNotNull(cached);
+        assertTrue(Arrays.equals(data, FileUtils.readFileToByteArray(new File(cached))));
+        new File(cached).delete();
+    }
+
+    public void testFailureLeavesNoFile() {
+        final File cacheDir = getContext().getCacheDir();
+        final int before = cacheDir.list().length;
+        final Attachment attachment = new Attachment();
+        attachment.contentUri = Uri.fromFile(new File(cacheDir, "missing"));
+        assertNull(AttachmentUtils.cacheAttachmentUri(getContext(), attachment, null));
+        assertEquals(before, cacheDir.list().length);
+    }
+}
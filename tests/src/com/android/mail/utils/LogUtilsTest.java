@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.os.Debug;
+import android.util.Log;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class LogUtilsTest extends AndroidTestCase {
+    /** Loggable at INFO and above only. */
+    private static final String DISABLED_TAG = "LogUtilsTest";
+    /** Loggable at every level. */
+    private static final String ENABLED_TAG = "LogUtilsTestEnabled";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LogUtils.setLowestLoggableLevelForTests(DISABLED_TAG, LogUtils.INFO);
+        LogUtils.setLowestLoggableLevelForTests(ENABLED_TAG, LogUtils.VERBOSE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        LogUtils.clearLoggableLevelForTests(DISABLED_TAG);
+        LogUtils.clearLoggableLevelForTests(ENABLED_TAG);
+        super.tearDown();
+    }
+
+    public void testFormatMessageMatchesStringFormat() {
+        assertFormattedLikeString("no arguments");
+        assertFormattedLikeString("100%% done");
+        assertFormattedLikeString("%s of %d", "row", 5);
+        assertFormattedLikeString("%d, %d, %s", 7L, (short) -3, null);
+        assertFormattedLikeString("trailing %s", "text", "ignored");
+        // Handled by String.format
+        assertFormattedLikeString("%5d|%-3s|%.2f|%b", 5, "a", 1.5, true);
+        assertFormattedLikeString("%2$s %1$s", "a", "b");
+        assertFormattedLikeString("%d", "not a number", null);
+    }
+
+    public void testFormatMessageFailsLikeStringFormat() {
+        try {
+            LogUtils.formatMessage("%s and %s", "one");
+            fail();
+        } catch (java.util.MissingFormatArgumentException expected) {
+        }
+    }
+
+    private static void assertFormattedLikeString(String format, Object... args) {
+        String expected;
+        try {
+            expected = String.format(format, args);
+        } catch (RuntimeException e) {
+            expected = e.getClass().getName();
+        }
+        String actual;
+        try {
+            actual = LogUtils.formatMessage(format, args);
+        } catch (RuntimeException e) {
+            actual = e.getClass().getName();
+        }
+        assertEquals(format, expected, actual);
+    }
+
+    /**
+     * Int arguments of the fixed-arity methods are boxed as Integer, not widened to long. The
+     * number of bytes logged shows which message was logged.
+     */
+    public void testIntArgumentsFormatAsInts() {
+        assertEquals(Log.d(ENABLED_TAG, "ffffffff"), LogUtils.d(ENABLED_TAG, "%x", -1));
+        assertEquals(Log.d(ENABLED_TAG, "row ffffffff of 5"),
+                LogUtils.d(ENABLED_TAG, "row %x of %d", -1, 5L));
+        assertEquals(Log.d(ENABLED_TAG, "row ffffffff of 5"),
+                LogUtils.d(ENABLED_TAG, "%s %x of %d", "row", -1, 5L));
+        assertEquals(Log.d(ENABLED_TAG, "a"), LogUtils.d(ENABLED_TAG, "%c", 'a'));
+        assertEquals(Log.d(ENABLED_TAG, "ffffffffffffffff"),
+                LogUtils.d(ENABLED_TAG, "%x", -1L));
+    }
+
+    /**
+     * Byte, short and char arguments are widened to int, as documented, unless passed as objects.
+     */
+    public void testNarrowArgumentsFormatAsInts() {
+        assertEquals(Log.d(ENABLED_TAG, "97"), LogUtils.d(ENABLED_TAG, "%s", 'a'));
+        assertEquals(Log.d(ENABLED_TAG, "a"),
+                LogUtils.d(ENABLED_TAG, "%s", Character.valueOf('a')));
+        assertEquals(Log.d(ENABLED_TAG, "ffffffff"), LogUtils.d(ENABLED_TAG, "%x", (short) -1));
+        assertEquals(Log.d(ENABLED_TAG, "ffff"),
+                LogUtils.d(ENABLED_TAG, "%x", Short.valueOf((short) -1)));
+    }
+
+    /**
+     * Logging at a disabled level allocates nothing: no varargs array, no boxed numbers and no
+     * message. This holds for up to two arguments of any kind, and for an object followed by
+     * two numbers.
+     */
+    public void testDisabledLoggingDoesNotAllocate() {
+        assertFalse(LogUtils.isLoggable(DISABLED_TAG, LogUtils.DEBUG));
+        // Loads whatever the calls need
+        logRows("name");
+
+        Debug.startAllocCounting();
+        try {
+            // Allocations are counted, so that nothing counted means nothing allocated
+            Debug.resetThreadAllocCount();
+            logRows(new StringBuilder("name").toString());
+            assertTrue(Debug.getThreadAllocCount() > 0);
+
+            Debug.resetThreadAllocCount();
+            logRows("name");
+            assertEquals(0, Debug.getThreadAllocCount());
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private static void logRows(String name) {
+        for (int i = 0; i < 1000; i++) {
+            LogUtils.v(DISABLED_TAG, "row %d of %s", i, name);
+            LogUtils.d(DISABLED_TAG, "%s: %d bytes", name, (long) i);
+            LogUtils.d(DISABLED_TAG, "%d", i);
+            LogUtils.d(DISABLED_TAG, "%x of %d", i, (long) i);
+            LogUtils.d(DISABLED_TAG, "%s %s %s", name, name, name);
+            LogUtils.d(DISABLED_TAG, "%s wall: %d cpu: %d", name, i * 1000L, i * 1000L);
+            LogUtils.v(DISABLED_TAG, "%s %dx%d", name, i, i);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+@SmallTest
+public class LongHashCollectionsTest extends AndroidTestCase {
+
+    public void testLongObjectHashMapAgainstHashMap() {
+        final Random random = new Random(42);
+        final LongObjectHashMap<Integer> map = new LongObjectHashMap<Integer>(4);
+        final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            // A small key range forces plenty of collisions, replacements and removals, which
+            // move values around the table along with their keys
+            final long key = random.nextInt(2000) * 31L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 2000 * 31L; key += 31) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        final long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(expected.size(), keys.length);
+        for (long key : keys) {
+            assertTrue(expected.containsKey(key));
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(keys[0]));
+    }
+
+    public void testLongObjectHashMap() {
+        final LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        for (long i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+        assertEquals(100, map.size());
+        assertEquals("v42", map.get(42L));
+        assertEquals("v42", map.remove(42L));
+        assertNull(map.get(42L));
+        assertNull(map.remove(42L));
+        assertEquals(99, map.values().size());
+
+        final LongObjectHashMap<String> other = new LongObjectHashMap<String>();
+        other.put(42L, "x");
+        other.put(1L, "y");
+        map.putAll(other);
+        assertEquals(100, map.size());
+        assertEquals("x", map.get(42L));
+        assertEquals("y", map.get(1L));
+    }
+
+    public void testLongHashSet() {
+        final LongHashSet set = new LongHashSet();
+        assertTrue(set.add(3L));
+        assertFalse(set.add(3L));
+        assertTrue(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertFalse(set.contains(1L));
+        assertTrue(set.remove(3L));
+        assertFalse(set.contains(3L));
+        assertTrue(Arrays.equals(new long[] { 0L }, set.toArray()));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+@SmallTest
+public class WeightedLruCacheTest extends AndroidTestCase {
+
+    private static class FakeClock extends Clock {
+        long mTime;
+
+        @Override
+        public long getTime() {
+            return mTime;
+        }
+    }
+
+    private static final WeightedLruCache.Weigher<String, String> LENGTH_WEIGHER =
+            new WeightedLruCache.Weigher<String, String>() {
+                @Override
+                public int weigh(String key, String value) {
+                    return value.length();
+                }
+            };
+
+    public void testEvictsLeastRecentlyUsedByCount() {
+        final WeightedLruCache<String, String> cache =
+                new WeightedLruCache.Builder<String, String>().maxWeight(2).build();
+        cache.put("a", "1");
+        cache.put("b", "2");
+        // Touch "a" so that "b" becomes the eldest
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().evictionCount);
+    }
+
+    public void testEvictsByWeight() {
+        final List<String> evicted = Lists.newArrayList();
+        final WeightedLruCache<String, String> cache =
+                new WeightedLruCache.Builder<String, String>()
+                        .maxWeight(10)
+                        .weigher(LENGTH_WEIGHER)
+                        .evictionListener(new WeightedLruCache.EvictionListener<String, String>() {
+                            @Override
+                            public void onEntryEvicted(String key, String value,
+                                    boolean expired) {
+                                assertFalse(expired);
+                                evicted.add(key);
+                            }
+                        })
+                        .build();
+        cache.put("a", "12345");
+        cache.put("b", "1234");
+        assertEquals(9, cache.weight());
+        cache.put("c", "123");
+
+        assertEquals(Lists.newArrayList("a"), evicted);
+        assertEquals(7, cache.weight());
+
+        // Heavier than the whole cache: dropped right away
+        cache.put("d", "12345678901");
+        assertNull(cache.get("d"));
+        assertEquals(7, cache.weight());
+    }
+
+    public void testOversizedPutKeepsOtherEntries() {
+        final List<String> evicted = Lists.newArrayList();
+        final WeightedLruCache<String, String> cache =
+                new WeightedLruCache.Builder<String, String>()
+                        .maxWeight(10)
+                        .weigher(LENGTH_WEIGHER)
+                        .evictionListener(new WeightedLruCache.EvictionListener<String, String>() {
+                            @Override
+                            public void onEntryEvicted(String key, String value,
+                                    boolean expired) {
+                                evicted.add(key);
+                            }
+                        })
+                        .build();
+        cache.put("a", "123");
+        cache.put("b", "1234");
+
+        // Replacing "b" with an oversized value drops both, but not "a"
+        assertEquals("1234", cache.put("b", "12345678901"));
+        assertEquals(Lists.newArrayList("b"), evicted);
+        assertNull(cache.get("b"));
+        assertEquals("123", cache.get("a"));
+        assertEquals(3, cache.weight());
+        assertEquals(1, cache.size());
+    }
+
+    public void testReplaceAdjustsWeight() {
+        final WeightedLruCache<String, String> cache =
+                new WeightedLruCache.Builder<String, String>()
+                        .maxWeight(10)
+                        .weigher(LENGTH_WEIGHER)
+                        .build();
+        cache.put("a", "12345");
+        assertEquals("12345", cache.put("a", "12"));
+        assertEquals(2, cache.weight());
+        assertEquals("12", cache.remove("a"));
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.size());
+    }
+
+    public void testExpireAfterWrite() {
+        final FakeClock clock = new FakeClock();
+        final WeightedLruCache<String, String> cache =
+                new WeightedLruCache.Builder<String, String>()
+                        .maxWeight(10)
+                        .expireAfterWrite(1000)
+                        .clock(clock)
+                        .build();
+        cache.put("a", "1");
+        clock.mTime = 500;
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+
+        clock.mTime = 1000;
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+
+        clock.mTime = 1500;
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+
+        final WeightedLruCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hitCount);
+        assertEquals(1, stats.missCount);
+        assertEquals(2, stats.expirationCount);
+        assertEquals(0, stats.evictionCount);
+    }
+
+    public void testValuesInAccessOrder() {
+        final WeightedLruCache<String, String> cache =
+                new WeightedLruCache.Builder<String, String>().maxWeight(10).build();
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        assertEquals(Lists.newArrayList("2", "3", "1"), cache.values());
+        cache.clear();
+        assertTrue(cache.values().isEmpty());
+    }
+}
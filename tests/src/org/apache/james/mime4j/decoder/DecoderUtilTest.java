@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class DecoderUtilTest extends AndroidTestCase {
+
+    public void testSeparators() {
+        assertEquals("Re: J\u00f6rg M\u00fcller <jm@example.com>", DecoderUtil.decodeEncodedWords(
+                "Re: =?ISO-8859-1?Q?J=F6rg_M=FCller?= <jm@example.com>"));
+        // Whitespace between encoded words is dropped, anything else is kept
+        assertEquals("ab", DecoderUtil.decodeEncodedWords("=?utf-8?q?a?= \r\n =?utf-8?q?b?="));
+        assertEquals("a - b", DecoderUtil.decodeEncodedWords("=?utf-8?q?a?= - =?utf-8?q?b?="));
+        assertEquals("ab", DecoderUtil.decodeEncodedWords("=?utf-8?q?a?= =?iso-8859-1?b?Yg==?="));
+        // Words that can't be decoded are kept as they are, with their separators
+        assertEquals("a =?bogus?q?b?= c", DecoderUtil.decodeEncodedWords(
+                "=?utf-8?q?a?= =?bogus?q?b?= =?utf-8?q?c?="));
+        assertEquals("x =?utf-8?q?a", DecoderUtil.decodeEncodedWords("x =?utf-8?q?a"));
+
+        final StringBuilder sb = new StringBuilder("Subject: ");
+        DecoderUtil.decodeEncodedWords("=?utf-8?b?aGk=?=", sb);
+        assertEquals("Subject: hi", sb.toString());
+    }
+
+    public void testCharacterSplitAcrossWords() {
+        // U+672C is E6 9C AC in UTF-8, and is split after its second byte
+        assertEquals("\u65e5\u672c", DecoderUtil.decodeEncodedWords(
+                "=?UTF-8?B?5pel5pw=?= =?UTF-8?B?rA==?="));
+        assertEquals("\u65e5\u672c", DecoderUtil.decodeEncodedWords(
+                "=?utf-8?Q?=E6=97=A5=E6?=\r\n =?UTF-8?Q?=9C=AC?="));
+        // Each word carries its own byte order mark
+        assertEquals("ab", DecoderUtil.decodeEncodedWords(
+                "=?UTF-16?B?/v8AYQ==?= =?UTF-16?B?/v8AYg==?="));
+    }
+
+    public void testMalformedQ() {
+        // Same results as QuotedPrintableInputStream
+        assertEquals("a=b =\r=G", decodeEncodedWord("=?utf-8?q?a=3Db_=\r=G?="));
+        assertEquals("== ", decodeEncodedWord("=?utf-8?q?==_?="));
+        assertEquals("a", decodeEncodedWord("=?utf-8?q?a  ?="));
+    }
+
+    private static String decodeEncodedWord(String word) {
+        return DecoderUtil.decodeEncodedWord(word, 0, word.length());
+    }
+}
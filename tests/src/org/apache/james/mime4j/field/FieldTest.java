@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class FieldTest extends AndroidTestCase {
+
+    public void testSplitsAndUnfolds() {
+        final Field field = Field.parse("Received: from a\r\n\tby b");
+        assertTrue(field instanceof UnstructuredField);
+        assertEquals("Received", field.getName());
+        assertEquals("from a\tby b", field.getBody());
+        assertEquals("Received: from a\r\n\tby b", field.getRaw());
+
+        // Whitespace before the colon, and only one space after it is dropped
+        final Field spaced = Field.parse("X-Custom \t:  value");
+        assertEquals("X-Custom", spaced.getName());
+        assertEquals(" value", spaced.getBody());
+
+        assertEquals("", Field.parse("Subject:").getBody());
+    }
+
+    public void testDispatchIgnoresCase() {
+        final Field field = Field.parse("content-type: text/plain; charset=utf-8");
+        assertTrue(field instanceof ContentTypeField);
+        // The original spelling is kept
+        assertEquals("content-type", field.getName());
+        assertTrue(field.isContentType());
+
+        final Field date = Field.parse("RESENT-DATE: 1 Jan 2000 00:00 GMT");
+        assertTrue(date instanceof DateTimeField);
+        assertNotNull(((DateTimeField) date).getDate());
+    }
+
+    public void testKnownNamesAreShared() {
+        assertSame(Field.TO, Field.parse("To: a@b.com").getName());
+        assertSame(Field.CONTENT_TYPE, Field.parse("Content-Type: text/html").getName());
+    }
+
+    public void testInvalidFields() {
+        final String[] invalid = { "", ":", "no colon", "To", "Bad Name: x", "\u00e9: x" };
+        for (String raw : invalid) {
+            try {
+                Field.parse(raw);
+                fail(raw);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    public void testCustomParser() {
+        final DelegatingFieldParser parser = new DelegatingFieldParser();
+        final FieldParser dateParser = new DateTimeField.Parser();
+        parser.setFieldParser("Delivery-Date", dateParser);
+        parser.setFieldParser("X-Sent", dateParser);
+        assertSame(dateParser, parser.getParser("delivery-date"));
+        assertSame(dateParser, parser.getParser("x-sent"));
+        assertTrue(parser.getParser("To") instanceof UnstructuredField.Parser);
+    }
+}
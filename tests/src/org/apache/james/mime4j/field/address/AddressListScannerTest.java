@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field.address;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.apache.james.mime4j.field.address.parser.AddressListParser;
+import org.apache.james.mime4j.field.address.parser.ParseException;
+
+import java.io.StringReader;
+
+@SmallTest
+public class AddressListScannerTest extends AndroidTestCase {
+
+    private static final String[] SIMPLE = {
+            "a@b.com",
+            "John Doe <john@doe.com>",
+            "\"Doe, John\" <john@doe.com>, c@d.org",
+            " <x@y.z> ,, \"\" <q@r.s>,",
+            "=?utf-8?Q?J=C3=B6rg?= <j@x.de>",
+            "John  Q.  Public <jqp@x.com>",
+            "a+tag@sub.example.co.uk, \"Big, Boss\" <boss@corp.com>",
+            "",
+    };
+
+    private static final String[] NOT_SIMPLE = {
+            "Group: a@b.c, d@e.f;",
+            "a (comment) <b@c.d>",
+            "<@route:a@b.c>",
+            "\"a\\\"b\" <c@d.e>",
+            "a@[1.2.3.4]",
+            "\"x\"@b.com",
+            "a @ b.com",
+            "a@b.com\t",
+            "x.@y.com",
+            "\"\u65E5\u672C\" <a@co.jp>",
+            "bad@@x.com",
+            "John Doe",
+    };
+
+    private static String describe(AddressList list) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < list.size(); i++) {
+            final Address address = list.get(i);
+            sb.append(address.getClass().getSimpleName()).append('|');
+            if (address instanceof NamedMailbox) {
+                sb.append(((NamedMailbox) address).getName()).append('|');
+            }
+            final Mailbox mailbox = (Mailbox) address;
+            sb.append(mailbox.getRoute()).append('|').append(mailbox.getLocalPart())
+                    .append('|').append(mailbox.getDomain()).append(';');
+        }
+        return sb.toString();
+    }
+
+    public void testMatchesGrammar() throws ParseException {
+        for (String text : SIMPLE) {
+            assertNotNull(text, AddressListScanner.scan(text));
+            final AddressList slow = Builder.getInstance().buildAddressList(
+                    new AddressListParser(new StringReader(text)).parse());
+            assertEquals(text, describe(slow), describe(AddressList.parse(text)));
+        }
+    }
+
+    public void testLeavesUnusualFormsToGrammar() {
+        for (String text : NOT_SIMPLE) {
+            assertNull(text, AddressListScanner.scan(text));
+        }
+    }
+
+    public void testOffsets() {
+        final AddressListScanner scanner = AddressListScanner.scan(
+                "\"Doe, John\" <john@doe.com>, c@d.org, Jane  Roe <j@r.net>");
+        assertEquals(3, scanner.size());
+
+        assertTrue(scanner.isQuotedName(0));
+        assertEquals("Doe, John", scanner.getName(0));
+        assertEquals("john", scanner.getLocalPart(0));
+        assertEquals("doe.com", scanner.getDomain(0));
+        assertEquals("john@doe.com", scanner.getAddress(0));
+
+        assertFalse(scanner.hasName(1));
+        assertNull(scanner.getName(1));
+        assertEquals("c@d.org", scanner.getAddress(1));
+
+        assertFalse(scanner.isQuotedName(2));
+        assertEquals("Jane  Roe", scanner.getName(2));
+        assertEquals("j@r.net", scanner.getAddress(2));
+    }
+}
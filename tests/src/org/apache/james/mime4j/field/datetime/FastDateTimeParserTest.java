@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field.datetime;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.utils.LogUtils;
+
+import org.apache.james.mime4j.field.DateTimeField;
+import org.apache.james.mime4j.field.datetime.parser.DateTimeParser;
+import org.apache.james.mime4j.field.datetime.parser.ParseException;
+
+import java.io.StringReader;
+import java.util.Locale;
+
+@SmallTest
+public class FastDateTimeParserTest extends AndroidTestCase {
+
+    private static final String[] HANDLED = {
+            "Mon, 10 Dec 2009 15:08:08 +0700",
+            "10 Dec 09 15:08 GMT",
+            "Thu, 1 Jan 1970 00:00:00 -0000 (UTC)",
+            "Sun, 29 Feb 2004 23:59:60 EST",
+            "Tue, 31 Feb 1999 25:61:61 PDT",
+            " Fri ,  3  Mar  2014  1 : 2 : 3  -1234  ( hello ) ",
+            "Sat, 3 Mar 51 01:02:03 MDT",
+            "Sat, 3 Mar 151 01:02:03 UT",
+    };
+
+    private static final String[] NOT_HANDLED = {
+            "Mon, 10 Dec 2009 15:08:08 Z",
+            "Mon, 10 Dec 2009 15:08:08 +07",
+            "Mon, 10 Dec 2009 15:08:08 +0700 (a (nested) comment)",
+            "mon, 10 dec 2009 15:08:08 +0700",
+            "Monday, 10 Dec 2009 15:08:08 +0700",
+            "Mon, 10 Dec 02009 15:08:08 +0700",
+            "Mon, 10 Dec 0099 15:08:08 +0700",
+            "Mon, 10 Dec 2009 15:08:08",
+            "",
+    };
+
+    private static DateTime parseWithGrammar(String text) throws ParseException {
+        return new DateTimeParser(new StringReader(text)).parseAll();
+    }
+
+    public void testMatchesGrammar() throws ParseException {
+        for (String text : HANDLED) {
+            final DateTime fast = FastDateTimeParser.parse(text);
+            assertNotNull(text, fast);
+            final DateTime slow = parseWithGrammar(text);
+            assertEquals(text, slow.getDate(), fast.getDate());
+            assertEquals(text, slow.getYear(), fast.getYear());
+            assertEquals(text, slow.getMonth(), fast.getMonth());
+            assertEquals(text, slow.getDay(), fast.getDay());
+            assertEquals(text, slow.getHour(), fast.getHour());
+            assertEquals(text, slow.getMinute(), fast.getMinute());
+            assertEquals(text, slow.getSecond(), fast.getSecond());
+            assertEquals(text, slow.getTimeZone(), fast.getTimeZone());
+        }
+    }
+
+    public void testLeavesUnusualFormsToGrammar() {
+        for (String text : NOT_HANDLED) {
+            assertNull(text, FastDateTimeParser.parse(text));
+        }
+    }
+
+    public void testGmtOffset() throws ParseException {
+        final DateTime fast = FastDateTimeParser.parse("Thu, 10 Dec 09 15:08:08 GMT-0700");
+        assertEquals(parseWithGrammar("Thu, 10 Dec 09 15:08:08 -0700").getDate(), fast.getDate());
+        // Only accepted at the very end, like LogUtils.cleanUpMimeDate()
+        assertNull(FastDateTimeParser.parse("Thu, 10 Dec 09 15:08:08 GMT-0700 "));
+    }
+
+    public void testParseDate() throws ParseException {
+        final String text = "Mon, 10 Dec 2009 15:08:08 Z";
+        assertEquals(parseWithGrammar(text).getDate(), DateTimeField.parseDate(text));
+        // Cached results are copied, callers may modify them
+        DateTimeField.parseDate(text).setTime(0);
+        assertEquals(parseWithGrammar(text).getDate(), DateTimeField.parseDate(text));
+        // Left to the grammar, once cleaned up
+        assertEquals(parseWithGrammar("Mon, 10 Dec 02009 15:08:08 -0700").getDate(),
+                DateTimeField.parseDate("Mon, 10 Dec 02009 15:08:08 GMT-0700"));
+
+        try {
+            DateTimeField.parseDate("Mon, 10 Dec 2009");
+            fail();
+        } catch (ParseException expected) {
+        }
+        try {
+            DateTimeField.parseDate("Mon, 10 Dec 99999999999 15:08:08 Z");
+            fail();
+        } catch (ParseException expected) {
+        }
+    }
+
+    /**
+     * Compares distinct dates through the grammar and the fast path, and repeated dates through
+     * {@link DateTimeField#parseDate}. Results are only logged.
+     */
+    @LargeTest
+    public void testBenchmark() throws ParseException {
+        final int count = 5000;
+        final String[] dates = new String[count];
+        for (int i = 0; i < count; i++) {
+            dates[i] = String.format(Locale.US, "Tue, %d Mar %d %02d:%02d:%02d %s", 1 + i % 28,
+                    2000 + i % 14, i % 24, i % 60, (i * 7) % 60,
+                    i % 2 == 0 ? "+0100" : "-0800 (PST)");
+        }
+        long sum = 0;
+        final long start = System.nanoTime();
+        for (String date : dates) {
+            sum += parseWithGrammar(date).getDate().getTime();
+        }
+        final long grammarDone = System.nanoTime();
+        for (String date : dates) {
+            sum -= FastDateTimeParser.parse(date).getDate().getTime();
+        }
+        final long fastDone = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            DateTimeField.parseDate(dates[i & 31]);
+        }
+        final long cachedDone = System.nanoTime();
+
+        assertEquals(0, sum);
+        LogUtils.i(LogUtils.TAG, "Date parsing per call: grammar %dns, fast %dns, repeated %dns",
+                (grammarDone - start) / count, (fastDone - grammarDone) / count,
+                (cachedDone - fastDone) / count);
+    }
+}